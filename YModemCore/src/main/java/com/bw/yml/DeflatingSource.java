@@ -0,0 +1,96 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Packages of the zlib (deflate) stream of a file, compressed on the fly while they are read.
+ * The blocks are filled completely, only the last one is padded with CPMEOF, which the receiver
+ * ignores behind the end of the stream. The deflate window keeps it at 32 KB of history on
+ * either side however large the file is.
+ * <p>
+ * The offsets of the compressed stream don't match the ones of the file, a deflated file can't
+ * be resumed in the middle.
+ */
+class DeflatingSource implements PackageSource {
+
+    private final PackageSource plain;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final byte[] input = new byte[8 * 1024];
+    //compressed bytes read so far
+    private long position = 0;
+
+    DeflatingSource(PackageSource plain) {
+        this.plain = plain;
+    }
+
+    /**
+     * @return size of the file itself, as it is announced in the header
+     */
+    @Override
+    public long getFileSize() {
+        return plain.getFileSize();
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long align(long offset) {
+        return 0;
+    }
+
+    @Override
+    public void seek(long offset) throws IOException {
+        if (offset != position) {
+            throw new IOException("A deflated stream can't seek to " + offset);
+        }
+    }
+
+    @Override
+    public byte[] next(int blockSize, byte sequence, PackagePool pool) throws IOException {
+        byte[] pack = PackagePool.acquire(pool, PackageEncoder.packageLength(blockSize));
+        int dataLength = 0;
+        int read;
+        while (dataLength < blockSize && (read = read(pack, 3 + dataLength, blockSize - dataLength)) > 0) {
+            dataLength += read;
+        }
+        if (dataLength == 0) {
+            PackagePool.release(pool, pack);
+            return null;
+        }
+        PackageEncoder.encodeInPlace(pack, 0, dataLength, blockSize, sequence);
+        return pack;
+    }
+
+    /**
+     * Read the compressed stream
+     */
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length && !deflater.finished()) {
+            int deflated = deflater.deflate(dst, offset + total, length - total);
+            total += deflated;
+            if (deflated == 0 && deflater.needsInput()) {
+                int read = plain.read(input, 0, input.length);
+                if (read < 0) {
+                    deflater.finish();
+                } else {
+                    deflater.setInput(input, 0, read);
+                }
+            }
+        }
+        position += total;
+        return total == 0 && deflater.finished() ? -1 : total;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+        plain.close();
+    }
+
+}
@@ -0,0 +1,570 @@
+package com.bw.yml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Binary patch turning the image installed on the terminal (the base) into a new one (the target),
+ * for updates changing a few percent of the firmware. Send it with
+ * {@link YModemFile#YModemFile(String, String, String, File)}, a {@link YModemReceiver} with
+ * {@link YModemReceiver.Builder#acceptDelta(boolean)} applies it while it comes in.
+ * <p>
+ * Layout of a patch (big endian):
+ * <pre>
+ * int magic, int version, long base size, int base CRC32, long target size, int target CRC32,
+ * operations until END:
+ *   COPY  1, zigzag varint offset - end of the previous COPY, varint length: bytes of the base
+ *   ADD   2, varint length, the bytes: data not found in the base
+ *   END   0
+ * </pre>
+ * The matches are found with a rolling hash over the blocks of the base. The target is split
+ * into chunks searched on all the cores, the patch is the same whatever the number of threads.
+ */
+public class DeltaPatch {
+
+    private static final int MAGIC = 0x594D4450;//"YMDP"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 32;
+    private static final int END = 0;
+    private static final int COPY = 1;
+    private static final int ADD = 2;
+    //the base is indexed in blocks of this size, shorter matches are sent as data
+    private static final int BLOCK = 32;
+    private static final int HASH_MULTIPLIER = 0x01000193;
+    //blocks of the base with the same hash kept in the index, runs of padding have many of them
+    private static final int MAX_CANDIDATES = 8;
+    //the target is searched in chunks of this size, a match doesn't cross their borders
+    private static final int CHUNK = 256 * 1024;
+
+    private DeltaPatch() {
+    }
+
+    /**
+     * Create the patch of two files on all the cores
+     *
+     * @return length of the patch
+     */
+    public static long create(File base, File target, File patch) throws IOException {
+        byte[] patchData = create(readFully(base), readFully(target), Runtime.getRuntime().availableProcessors());
+        try (FileOutputStream out = new FileOutputStream(patch)) {
+            out.write(patchData);
+        }
+        return patchData.length;
+    }
+
+    /**
+     * @param threads number of threads searching the target
+     */
+    public static byte[] create(byte[] base, byte[] target, int threads) throws IOException {
+        BlockIndex index = new BlockIndex(base);
+        int chunkCount = (target.length + CHUNK - 1) / CHUNK;
+        List<long[]> chunks = new ArrayList<>();
+        if (threads <= 1 || chunkCount <= 1) {
+            for (int start = 0; start < target.length; start += CHUNK) {
+                chunks.add(index.search(target, start, Math.min(start + CHUNK, target.length)));
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunkCount));
+            List<Future<long[]>> tasks = new ArrayList<>();
+            try {
+                for (int start = 0; start < target.length; start += CHUNK) {
+                    tasks.add(executor.submit(index.searchTask(target, start, Math.min(start + CHUNK, target.length))));
+                }
+                for (Future<long[]> task : tasks) {
+                    chunks.add(task.get());
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Failed to create the patch", e);
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(base.length);
+        out.writeInt(crc32(base, base.length));
+        out.writeLong(target.length);
+        out.writeInt(crc32(target, target.length));
+        PatchWriter writer = new PatchWriter(out, target);
+        for (long[] chunk : chunks) {
+            for (int i = 1; i < chunk[0]; i += 3) {
+                writer.add(chunk[i], chunk[i + 1], chunk[i + 2]);
+            }
+        }
+        writer.finish();
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Apply a patch to the base, reading only a few KB of it at a time
+     *
+     * @throws IOException if the base or the result doesn't match the checksums of the patch
+     */
+    public static void apply(File base, InputStream patch, OutputStream target) throws IOException {
+        try (RandomAccessFile baseFile = new RandomAccessFile(base, "r")) {
+            Applier applier = new Applier(baseFile, target);
+            applier.checkBase();
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while (!applier.isFinished() && (read = patch.read(buffer)) != -1) {
+                applier.write(buffer, 0, read);
+            }
+            if (!applier.isFinished()) {
+                throw new IOException("The patch is incomplete");
+            }
+        }
+    }
+
+    /**
+     * @return "size:crc32" of the base the patch applies to, the "D" header field announcing it
+     */
+    static String baseMarker(File patch) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(patch))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a delta patch " + patch);
+            }
+            long size = in.readLong();
+            return size + ":" + Integer.toHexString(in.readInt());
+        }
+    }
+
+    /**
+     * @return "size:crc32" of a file, to be compared with {@link #baseMarker(File)}
+     */
+    static String marker(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8 * 1024];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return file.length() + ":" + Integer.toHexString((int) crc.getValue());
+    }
+
+    private static int crc32(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        if (file.length() > Integer.MAX_VALUE) {
+            throw new IOException("File too large for a patch " + file);
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        return data;
+    }
+
+    /**
+     * Hash of the blocks of the base at every BLOCK bytes, open addressing in two int arrays
+     */
+    private static class BlockIndex {
+        private final byte[] base;
+        private final int[] hashes;
+        //block number + 1 of a slot, 0 if empty
+        private final int[] blocks;
+        private final int mask;
+        //HASH_MULTIPLIER ^ (BLOCK - 1), takes the leaving byte out of the rolling hash
+        private final int leaving;
+
+        BlockIndex(byte[] base) {
+            this.base = base;
+            int count = base.length / BLOCK;
+            int capacity = Integer.highestOneBit(Math.max(count, 8) * 2 - 1) << 1;
+            hashes = new int[capacity];
+            blocks = new int[capacity];
+            mask = capacity - 1;
+            int power = 1;
+            for (int i = 1; i < BLOCK; i++) {
+                power *= HASH_MULTIPLIER;
+            }
+            leaving = power;
+            for (int block = 0; block < count; block++) {
+                insert(hash(base, block * BLOCK), block);
+            }
+        }
+
+        private void insert(int hash, int block) {
+            int slot = mix(hash) & mask;
+            int same = 0;
+            while (blocks[slot] != 0) {
+                if (hashes[slot] == hash && ++same >= MAX_CANDIDATES) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            blocks[slot] = block + 1;
+        }
+
+        static int hash(byte[] data, int offset) {
+            int hash = 0;
+            for (int i = offset; i < offset + BLOCK; i++) {
+                hash = hash * HASH_MULTIPLIER + (data[i] & 0xFF);
+            }
+            return hash;
+        }
+
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+            return hash ^ (hash >>> 13);
+        }
+
+        Callable<long[]> searchTask(final byte[] target, final int start, final int end) {
+            return new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    return search(target, start, end);
+                }
+            };
+        }
+
+        /**
+         * Cover target[start, end) with COPY and ADD operations
+         *
+         * @return count + 1 in the first element, then type, offset (of the base for COPY,
+         * of the target for ADD) and length of every operation
+         */
+        long[] search(byte[] target, int start, int end) {
+            long[] ops = new long[16];
+            ops[0] = 1;
+            int position = start;
+            int literal = start;
+            int hash = position + BLOCK <= end ? hash(target, position) : 0;
+            while (position + BLOCK <= end) {
+                int matchOffset = -1;
+                int matchLength = 0;
+                int slot = mix(hash) & mask;
+                while (blocks[slot] != 0) {
+                    if (hashes[slot] == hash) {
+                        int offset = (blocks[slot] - 1) * BLOCK;
+                        int length = matchLength(target, position, end, offset);
+                        if (length > matchLength) {
+                            matchOffset = offset;
+                            matchLength = length;
+                        }
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (matchLength >= BLOCK) {
+                    //Take the matching bytes before the block back from the data
+                    while (position > literal && matchOffset > 0 && target[position - 1] == base[matchOffset - 1]) {
+                        position--;
+                        matchOffset--;
+                        matchLength++;
+                    }
+                    if (position > literal) {
+                        ops = append(ops, ADD, literal, position - literal);
+                    }
+                    ops = append(ops, COPY, matchOffset, matchLength);
+                    position += matchLength;
+                    literal = position;
+                    if (position + BLOCK <= end) {
+                        hash = hash(target, position);
+                    }
+                } else {
+                    if (position + BLOCK < end) {
+                        hash = (hash - (target[position] & 0xFF) * leaving) * HASH_MULTIPLIER
+                                + (target[position + BLOCK] & 0xFF);
+                    }
+                    position++;
+                }
+            }
+            if (end > literal) {
+                ops = append(ops, ADD, literal, end - literal);
+            }
+            return ops;
+        }
+
+        private int matchLength(byte[] target, int position, int end, int offset) {
+            int length = 0;
+            int max = Math.min(end - position, base.length - offset);
+            while (length < max && target[position + length] == base[offset + length]) {
+                length++;
+            }
+            return length;
+        }
+
+        private static long[] append(long[] ops, int type, long offset, long length) {
+            int count = (int) ops[0];
+            if (count + 3 > ops.length) {
+                ops = Arrays.copyOf(ops, ops.length * 2);
+            }
+            ops[count] = type;
+            ops[count + 1] = offset;
+            ops[count + 2] = length;
+            ops[0] = count + 3;
+            return ops;
+        }
+    }
+
+    /**
+     * Writes the operations of the chunks one after another, merging the ones continuing each other
+     * across the chunk borders
+     */
+    private static class PatchWriter {
+        private final DataOutputStream out;
+        private final byte[] target;
+        private int type = END;
+        private long offset;
+        private long length;
+        //end of the previous COPY in the base
+        private long copyEnd = 0;
+
+        PatchWriter(DataOutputStream out, byte[] target) {
+            this.out = out;
+            this.target = target;
+        }
+
+        void add(long type, long offset, long length) throws IOException {
+            if (type == this.type && offset == this.offset + this.length) {
+                this.length += length;
+                return;
+            }
+            flush();
+            this.type = (int) type;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        void finish() throws IOException {
+            flush();
+            out.write(END);
+        }
+
+        private void flush() throws IOException {
+            if (type == COPY) {
+                out.write(COPY);
+                long delta = offset - copyEnd;
+                writeVarint(out, (delta << 1) ^ (delta >> 63));
+                writeVarint(out, length);
+                copyEnd = offset + length;
+            } else if (type == ADD) {
+                out.write(ADD);
+                writeVarint(out, length);
+                out.write(target, (int) offset, (int) length);
+            }
+            type = END;
+        }
+
+        private static void writeVarint(DataOutputStream out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    /**
+     * Applies a patch handed in in pieces of any size, like the payload of the packages. Memory
+     * stays at a copy buffer whatever the size of the images, the data of ADD is passed through.
+     */
+    public static class Applier {
+
+        private static final int STATE_HEADER = 0;
+        private static final int STATE_OP = 1;
+        private static final int STATE_VARINT = 2;
+        private static final int STATE_DATA = 3;
+        private static final int STATE_DONE = 4;
+
+        private final RandomAccessFile base;
+        private final OutputStream target;
+        private boolean checkBase = false;
+        private final byte[] buffer = new byte[8 * 1024];
+        private final CRC32 crc = new CRC32();
+        private final byte[] header = new byte[HEADER_LENGTH];
+        private int headerLength = 0;
+        private long baseSize;
+        private int baseCrc;
+        private long targetSize;
+        private int targetCrc;
+
+        private int state = STATE_HEADER;
+        private int op;
+        //varints of the current operation, COPY has two of them
+        private final long[] values = new long[2];
+        private int valueIndex;
+        private int shift;
+        private long remaining;
+        private long copyEnd = 0;
+        private long written = 0;
+
+        /**
+         * @param base   the image the patch was made against
+         * @param target the new image is written into it
+         */
+        public Applier(RandomAccessFile base, OutputStream target) {
+            this.base = base;
+            this.target = target;
+        }
+
+        /**
+         * Read the whole base once and compare it with the checksum in the header of the patch
+         */
+        void checkBase() {
+            checkBase = true;
+        }
+
+        public void write(byte[] data, int offset, int length) throws IOException {
+            int end = offset + length;
+            int i = offset;
+            while (i < end && state != STATE_DONE) {
+                switch (state) {
+                    case STATE_HEADER:
+                        int count = Math.min(HEADER_LENGTH - headerLength, end - i);
+                        System.arraycopy(data, i, header, headerLength, count);
+                        headerLength += count;
+                        i += count;
+                        if (headerLength == HEADER_LENGTH) {
+                            readHeader();
+                        }
+                        break;
+                    case STATE_OP:
+                        op = data[i++] & 0xFF;
+                        if (op == END) {
+                            finish();
+                        } else if (op == COPY || op == ADD) {
+                            valueIndex = 0;
+                            values[0] = 0;
+                            values[1] = 0;
+                            shift = 0;
+                            state = STATE_VARINT;
+                        } else {
+                            throw new IOException("Bad patch operation " + op);
+                        }
+                        break;
+                    case STATE_VARINT:
+                        int b = data[i++] & 0xFF;
+                        values[valueIndex] |= (long) (b & 0x7F) << shift;
+                        shift += 7;
+                        if ((b & 0x80) == 0) {
+                            shift = 0;
+                            valueIndex++;
+                            onValue();
+                        } else if (shift > 63) {
+                            throw new IOException("Bad patch varint");
+                        }
+                        break;
+                    case STATE_DATA:
+                        int dataLength = (int) Math.min(remaining, end - i);
+                        output(data, i, dataLength);
+                        i += dataLength;
+                        remaining -= dataLength;
+                        if (remaining == 0) {
+                            state = STATE_OP;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        /**
+         * @return true once END has been read and the result matched its checksum, anything
+         * after it (like the CPMEOF padding) is ignored
+         */
+        public boolean isFinished() {
+            return state == STATE_DONE;
+        }
+
+        private void readHeader() throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a delta patch");
+            }
+            baseSize = in.readLong();
+            baseCrc = in.readInt();
+            targetSize = in.readLong();
+            targetCrc = in.readInt();
+            if (base.length() != baseSize) {
+                throw new IOException("The base has " + base.length() + " bytes instead of " + baseSize);
+            }
+            if (checkBase) {
+                CRC32 baseCheck = new CRC32();
+                base.seek(0);
+                int read;
+                while ((read = base.read(buffer)) != -1) {
+                    baseCheck.update(buffer, 0, read);
+                }
+                if ((int) baseCheck.getValue() != baseCrc) {
+                    throw new IOException("The patch doesn't belong to this base");
+                }
+            }
+            state = STATE_OP;
+        }
+
+        private void onValue() throws IOException {
+            if (op == ADD) {
+                remaining = values[0];
+                state = remaining > 0 ? STATE_DATA : STATE_OP;
+            } else if (valueIndex == 2) {
+                long delta = (values[0] >>> 1) ^ -(values[0] & 1);
+                long offset = copyEnd + delta;
+                long length = values[1];
+                if (offset < 0 || offset + length > baseSize) {
+                    throw new IOException("Patch copies outside of the base");
+                }
+                copy(offset, length);
+                copyEnd = offset + length;
+                state = STATE_OP;
+            }
+        }
+
+        private void copy(long offset, long length) throws IOException {
+            base.seek(offset);
+            while (length > 0) {
+                int count = (int) Math.min(buffer.length, length);
+                base.readFully(buffer, 0, count);
+                output(buffer, 0, count);
+                length -= count;
+            }
+        }
+
+        private void output(byte[] data, int offset, int length) throws IOException {
+            if (written + length > targetSize) {
+                throw new IOException("Patch writes beyond the target size");
+            }
+            crc.update(data, offset, length);
+            target.write(data, offset, length);
+            written += length;
+        }
+
+        private void finish() throws IOException {
+            if (written != targetSize || (int) crc.getValue() != targetCrc) {
+                throw new IOException("The patched image doesn't match the checksum of the patch");
+            }
+            state = STATE_DONE;
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.bw.yml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Digests of the files sent before, keyed by path, size and modification time, so sending a
+ * file again digests nothing and its md5 is in the header from the start. The files of the
+ * assets have no modification time, but they don't change while the process runs, which is as
+ * long as the digests are kept.
+ */
+public class DigestCache {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static DigestCache defaultCache;
+
+    private final int capacity;
+    //digests in access order, guarded by this
+    private final LinkedHashMap<String, FileDigest> digests;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param capacity files the cache keeps the digests of at most
+     */
+    public DigestCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.digests = new LinkedHashMap<String, FileDigest>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileDigest> eldest) {
+                return size() > DigestCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * The cache of the process for 64 files
+     */
+    public static synchronized DigestCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new DigestCache(DEFAULT_CAPACITY);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * @param fingerprint see {@link ResumeJournal#fingerprint(String, long)}
+     * @return null unless there is a digest with all the algorithms
+     */
+    synchronized FileDigest get(String fingerprint, int algorithms) {
+        FileDigest digest = digests.get(fingerprint);
+        if (digest != null && digest.has(algorithms)) {
+            hits++;
+            return digest;
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(String fingerprint, FileDigest digest) {
+        digests.put(fingerprint, digest);
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        digests.clear();
+    }
+
+}
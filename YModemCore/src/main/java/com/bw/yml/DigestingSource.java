@@ -0,0 +1,81 @@
+package com.bw.yml;
+
+import java.io.IOException;
+
+/**
+ * Digests the file data of a source on its way into the packages, under a {@link DeflatingSource}
+ * the data it reads. The digest only covers the file if it was read from the beginning to the end.
+ */
+class DigestingSource implements PackageSource {
+
+    private final PackageSource plain;
+    private final FileDigest.Hasher hasher;
+    private final String fingerprint;
+    //skipped some of the file, the digest would be of a part of it
+    private boolean skipped = false;
+
+    DigestingSource(PackageSource plain, int algorithms, String fingerprint) {
+        this.plain = plain;
+        this.hasher = new FileDigest.Hasher(algorithms);
+        this.fingerprint = fingerprint;
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return null if the file data hasn't been read completely in order
+     */
+    FileDigest finish() {
+        return !skipped && hasher.getLength() == plain.getFileSize() ? hasher.finish() : null;
+    }
+
+    @Override
+    public long getFileSize() {
+        return plain.getFileSize();
+    }
+
+    @Override
+    public long getPosition() {
+        return plain.getPosition();
+    }
+
+    @Override
+    public long align(long offset) {
+        return plain.align(offset);
+    }
+
+    @Override
+    public void seek(long offset) throws IOException {
+        if (offset != plain.getPosition()) {
+            skipped = true;
+        }
+        plain.seek(offset);
+    }
+
+    @Override
+    public byte[] next(int blockSize, byte sequence, PackagePool pool) throws IOException {
+        long position = plain.getPosition();
+        byte[] pack = plain.next(blockSize, sequence, pool);
+        if (pack != null) {//The payload without the CPMEOF padding
+            hasher.update(pack, 3, (int) (plain.getPosition() - position));
+        }
+        return pack;
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        int read = plain.read(dst, offset, length);
+        if (read > 0) {
+            hasher.update(dst, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() {
+        plain.close();
+    }
+
+}
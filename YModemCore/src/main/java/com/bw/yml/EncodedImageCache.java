@@ -0,0 +1,306 @@
+package com.bw.yml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encoded packages of files shared by the transmissions of the process, for sending the same
+ * firmware to several devices at once. Give it to {@link YModem.Builder#encodedImageCache}.
+ * <p>
+ * The encodings are keyed by the SHA-256 of the file content and the block size, so a copy of
+ * a file under another path still hits. The content hash of a path is remembered as long as
+ * its size and modification time don't change. Least recently used encodings are evicted when
+ * the budget is exceeded, sessions still sending one keep their read-only view of it.
+ */
+public class EncodedImageCache {
+
+    private static final long DEFAULT_BUDGET = 16 * 1024 * 1024;
+    private static EncodedImageCache defaultCache;
+
+    private final long budget;
+    //encodings in access order, guarded by this
+    private final LinkedHashMap<String, Encoding> encodings = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+    //key of the encoding of a file by its path, size, modification time and the block size
+    private final Map<String, String> contentHashes = new HashMap<>();
+    //one lock per file and block size being read, concurrent sessions of a file wait for one encoding
+    private final Map<String, Object> loading = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param budget bytes of encoded packages the cache keeps at most
+     */
+    public EncodedImageCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * The cache of the process with a budget of 16 MB
+     */
+    public static synchronized EncodedImageCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new EncodedImageCache(DEFAULT_BUDGET);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * @return null if the file doesn't fit into the budget, it has to be read the usual way
+     */
+    PackageSource newSource(SourceOpener opener, String filePath, int blockSize) throws IOException {
+        long fileSize = fileSize(opener, filePath, blockSize);
+        long encodedSize = (fileSize + blockSize - 1) / blockSize * PackageEncoder.packageLength(blockSize);
+        if (fileSize < 0 || encodedSize > budget || encodedSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        //Sessions of a file wait for the one reading it, the others don't read at all
+        String loadingKey = ResumeJournal.fingerprint(filePath, fileSize) + "/" + blockSize;
+        Object lock;
+        synchronized (this) {
+            PackageSource source = cachedSource(loadingKey);
+            if (source != null) {
+                return source;
+            }
+            lock = loading.get(loadingKey);
+            if (lock == null) {
+                lock = new Object();
+                loading.put(loadingKey, lock);
+            }
+        }
+        synchronized (lock) {
+            try {
+                synchronized (this) {//Encoded by another session meanwhile
+                    PackageSource source = cachedSource(loadingKey);
+                    if (source != null) {
+                        return source;
+                    }
+                }
+                //Read once, the bytes which were hashed are the ones encoded
+                byte[] content = readFully(opener, filePath, blockSize, (int) fileSize);
+                String key = sha256(content) + "/" + blockSize;
+                synchronized (this) {
+                    contentHashes.put(loadingKey, key);
+                    Encoding encoding = encodings.get(key);
+                    if (encoding != null) {//A copy of a file which is in the cache already
+                        hits.incrementAndGet();
+                        return encoding.newSource();
+                    }
+                }
+                misses.incrementAndGet();
+                Encoding encoding = new Encoding(content, blockSize);
+                synchronized (this) {
+                    encodings.put(key, encoding);
+                    cachedBytes += encoding.data.length;
+                    evict();
+                }
+                return encoding.newSource();
+            } finally {
+                synchronized (this) {
+                    loading.remove(loadingKey);
+                }
+            }
+        }
+    }
+
+    //A hit for a file whose content hash is known, null if it has to be read
+    private PackageSource cachedSource(String loadingKey) {
+        String key = contentHashes.get(loadingKey);
+        Encoding encoding = key != null ? encodings.get(key) : null;
+        if (encoding == null) {
+            return null;
+        }
+        hits.incrementAndGet();
+        return encoding.newSource();
+    }
+
+    //Files on the file system by their length, -1 if there is none; assets can't be over 2 GB
+    private static long fileSize(SourceOpener opener, String filePath, int blockSize) throws IOException {
+        SourceScheme scheme = SourceScheme.ofUri(filePath);
+        if (scheme == SourceScheme.ASSETS) {
+            InputStream inputStream = YModemUtil.getInputStream(opener, filePath, blockSize);
+            try {
+                return inputStream.available();
+            } finally {
+                inputStream.close();
+            }
+        }
+        File file = new File(scheme == SourceScheme.FILE ? scheme.crop(filePath) : filePath);
+        return file.isFile() ? file.length() : -1;
+    }
+
+    private void evict() {
+        Iterator<Encoding> eldest = encodings.values().iterator();
+        while (cachedBytes > budget && eldest.hasNext()) {
+            cachedBytes -= eldest.next().data.length;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return bytes of encoded packages in the cache
+     */
+    public synchronized long getSize() {
+        return cachedBytes;
+    }
+
+    public synchronized void clear() {
+        encodings.clear();
+        contentHashes.clear();
+        cachedBytes = 0;
+    }
+
+    private static byte[] readFully(SourceOpener opener, String filePath, int blockSize, int fileSize)
+            throws IOException {
+        byte[] content = new byte[fileSize];
+        int read = 0;
+        int n;
+        InputStream inputStream = YModemUtil.getInputStream(opener, filePath, blockSize);
+        try {
+            while (read < content.length && (n = inputStream.read(content, read, content.length - read)) != -1) {
+                read += n;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return read == content.length ? content : Arrays.copyOf(content, read);
+    }
+
+    private static String sha256(byte[] content) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The packages of a file back to back, all of them blockSize + 5 bytes
+     */
+    private static class Encoding {
+        final byte[] data;
+        final int blockSize;
+        final long fileSize;
+
+        Encoding(byte[] content, int blockSize) {
+            this.blockSize = blockSize;
+            this.fileSize = content.length;
+            int packageCount = (content.length + blockSize - 1) / blockSize;
+            data = new byte[packageCount * PackageEncoder.packageLength(blockSize)];
+            PacketImage.encodeChunk(content, content.length, blockSize, 1, ByteBuffer.wrap(data));
+        }
+
+        PackageSource newSource() {
+            return new EncodingSource(ByteBuffer.wrap(data).asReadOnlyBuffer(), blockSize, fileSize);
+        }
+    }
+
+    /**
+     * Packages of one session, copied out of a read-only view of the shared encoding
+     */
+    private static class EncodingSource implements PackageSource {
+
+        private final ByteBuffer view;
+        private final int blockSize;
+        private final long fileSize;
+        private int index = 0;
+        //payload bytes of the package at index already read by read()
+        private int within = 0;
+
+        EncodingSource(ByteBuffer view, int blockSize, long fileSize) {
+            this.view = view;
+            this.blockSize = blockSize;
+            this.fileSize = fileSize;
+        }
+
+        @Override
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        @Override
+        public long getPosition() {
+            return Math.min((long) index * blockSize + within, fileSize);
+        }
+
+        @Override
+        public long align(long offset) {
+            return offset - offset % blockSize;
+        }
+
+        @Override
+        public void seek(long offset) {
+            index = (int) (offset / blockSize);
+            within = (int) (offset % blockSize);
+        }
+
+        @Override
+        public byte[] next(int size, byte sequence, PackagePool pool) {
+            int packageLength = blockSize + 5;
+            if ((long) index * packageLength >= view.capacity()) {
+                return null;
+            }
+            byte[] pack = PackagePool.acquire(pool, packageLength);
+            view.position(index * packageLength);
+            view.get(pack);
+            index++;
+            if (pack[1] != sequence) {//Resumed, the sequence numbers start from 1 again
+                pack[1] = sequence;
+                pack[2] = (byte) ~sequence;
+            }
+            return pack;
+        }
+
+        @Override
+        public int read(byte[] dst, int offset, int length) {
+            long start = (long) index * blockSize;
+            if (start >= fileSize) {
+                return -1;
+            }
+            int payload = (int) Math.min(blockSize, fileSize - start);
+            int dataLength = Math.min(length, payload - within);
+            view.position(index * (blockSize + 5) + 3 + within);
+            view.get(dst, offset, dataLength);
+            within += dataLength;
+            if (within == payload) {
+                index++;
+                within = 0;
+            }
+            return dataLength;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.bw.yml;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts on a {@link ScheduledExecutorService}, no Looper needed. One daemon thread of the
+ * default instance serves the timeouts of all the transmissions of the process.
+ * <p>
+ * Every package starts and stops a timeout, the default instance removes the cancelled ones
+ * from the queue right away (by their heap index, O(log n)) so they don't pile up on fast links.
+ */
+public class ExecutorTimeoutScheduler implements TimeoutScheduler {
+
+    private static ExecutorTimeoutScheduler defaultScheduler;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param executor the timeout tasks are short, but they must not be blocked by other work
+     */
+    public ExecutorTimeoutScheduler(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * The scheduler shared by every transmission which has not been given its own one
+     */
+    public static synchronized ExecutorTimeoutScheduler getDefault() {
+        if (defaultScheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "YModem-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            defaultScheduler = new ExecutorTimeoutScheduler(executor);
+        }
+        return defaultScheduler;
+    }
+
+    @Override
+    public Cancellable schedule(Runnable task, long delay) {
+        final ScheduledFuture<?> future = executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+        return new Cancellable() {
+            @Override
+            public void cancel() {
+                future.cancel(false);
+            }
+        };
+    }
+
+}
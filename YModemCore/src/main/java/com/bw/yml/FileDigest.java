@@ -0,0 +1,147 @@
+package com.bw.yml;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Digests of the data of a file, computed while its packages are read ({@link YModem}) or
+ * written ({@link YModemReceiver}), never in a pass of its own. Only the algorithms asked for
+ * are there, see {@link #has(int)}.
+ */
+public class FileDigest {
+
+    public static final int MD5 = 1;
+    public static final int SHA256 = 2;
+    public static final int CRC32 = 4;
+
+    private final int algorithms;
+    private final long length;
+    private final String md5;
+    private final String sha256;
+    private final long crc32;
+
+    private FileDigest(int algorithms, long length, String md5, String sha256, long crc32) {
+        this.algorithms = algorithms;
+        this.length = length;
+        this.md5 = md5;
+        this.sha256 = sha256;
+        this.crc32 = crc32;
+    }
+
+    /**
+     * @return true if all the algorithms (MD5, SHA256, CRC32 or'ed together) are there
+     */
+    public boolean has(int algorithms) {
+        return (this.algorithms & algorithms) == algorithms;
+    }
+
+    /**
+     * @return bytes of file data digested
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return lower case hex, null if not computed
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * @return lower case hex, null if not computed
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return -1 if not computed
+     */
+    public long getCrc32() {
+        return crc32;
+    }
+
+    /**
+     * @return true if the md5 is there and it is md5 (in hex of either case)
+     */
+    public boolean matchesMd5(String md5) {
+        return this.md5 != null && md5 != null && this.md5.equalsIgnoreCase(md5.trim());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder().append(length).append(" bytes");
+        if (md5 != null) {
+            builder.append(" md5=").append(md5);
+        }
+        if (sha256 != null) {
+            builder.append(" sha256=").append(sha256);
+        }
+        if (crc32 >= 0) {
+            builder.append(" crc32=").append(String.format("%08x", crc32));
+        }
+        return builder.toString();
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Digests the data fed to it in order, one block after another
+     */
+    static class Hasher {
+        private final MessageDigest md5;
+        private final MessageDigest sha256;
+        private final CRC32 crc32;
+        private long length = 0;
+
+        Hasher(int algorithms) {
+            md5 = (algorithms & MD5) != 0 ? newDigest("MD5") : null;
+            sha256 = (algorithms & SHA256) != 0 ? newDigest("SHA-256") : null;
+            crc32 = (algorithms & CRC32) != 0 ? new CRC32() : null;
+        }
+
+        private static MessageDigest newDigest(String algorithm) {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {//Every platform has both, left out if not
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        void update(byte[] data, int offset, int length) {
+            if (md5 != null) {
+                md5.update(data, offset, length);
+            }
+            if (sha256 != null) {
+                sha256.update(data, offset, length);
+            }
+            if (crc32 != null) {
+                crc32.update(data, offset, length);
+            }
+            this.length += length;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        FileDigest finish() {
+            int algorithms = (md5 != null ? MD5 : 0) | (sha256 != null ? SHA256 : 0) | (crc32 != null ? CRC32 : 0);
+            return new FileDigest(algorithms, length,
+                    md5 != null ? hex(md5.digest()) : null,
+                    sha256 != null ? hex(sha256.digest()) : null,
+                    crc32 != null ? crc32.getValue() : -1);
+        }
+    }
+
+}
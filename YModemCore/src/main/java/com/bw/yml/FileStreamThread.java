@@ -0,0 +1,428 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread for reading input Stream and encapsulating into a ymodem package
+ * <p>
+ * The next package is read and encoded while the previous one is in flight, then the thread
+ * waits until {@link #keepReading()} frees a slot of the window and hands it out right away.
+ */
+
+public class FileStreamThread extends Thread {
+
+    private final SourceOpener opener;
+    private PackageSource source = null;
+    private DataRaderListener listener;
+    private final YModemFile file;
+    //encodings shared with other transmissions, null to encode the file for this one only
+    private final EncodedImageCache cache;
+    //buffers of the packages for a YModemBufferListener, null for a new array per package
+    private final PackagePool pool;
+    private final int blockSize;
+    //size of the blocks read from now on, changed by the adaptive block size
+    private volatile int readSize;
+    //packages handed out from the oldest unacknowledged one on, at most windowSize of them, guarded by flowLock
+    private final Object flowLock = new Object();
+    private int unacknowledged = 0;
+    private volatile int windowSize = 1;
+    private volatile boolean isKeepRunning = false;
+    //YModem-G: blocks are sent back-to-back without waiting for an ACK
+    private volatile boolean isStreaming = false;
+    //the packages carry the deflated file data
+    private volatile boolean compressed = false;
+    //the packages carry the delta patch of the file instead of the file
+    private volatile boolean patched = false;
+    private long fileByteSize = 0;
+    //FileDigest algorithms of the file data, 0 for none
+    private int digestAlgorithms = 0;
+    private DigestCache digestCache;
+    //digest of the file data, from the cache or once it has been read completely
+    private volatile FileDigest digest;
+    //digests the file data while it is read, null if the digest is known or not wanted
+    private DigestingSource digesting;
+    //packages encoded by prefetch() before the thread was started
+    private final Object prefetchLock = new Object();
+    private final ConcurrentLinkedQueue<byte[]> prefetched = new ConcurrentLinkedQueue<>();
+    private byte nextSequence = 1;//The data package of a file is actually started from 1 文件的数据包实际上是从1开始的。
+
+    /**
+     * @param blockSize block size of the session, a file with a {@link PacketImage} has the one of the image
+     * @param pool      the packages handed out hold a reference of the pool, null if not pooled
+     */
+    FileStreamThread(SourceOpener opener, YModemFile file, int blockSize, EncodedImageCache cache,
+                     PackagePool pool, DataRaderListener listener) {
+        this.opener = opener;
+        this.file = file;
+        this.cache = cache;
+        this.pool = pool;
+        this.blockSize = file.getPacketImage() != null ? file.getPacketImage().getBlockSize() : blockSize;
+        this.readSize = blockSize;
+        this.listener = listener;
+    }
+
+    long getFileByteSize(){
+        if (fileByteSize == 0 || source == null) {
+            initStream();
+        }
+        return fileByteSize;
+    }
+
+    @Override
+    public void run() {
+        try {
+            prepareData();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Open the stream and encode the first packages ahead of time, so that the next file of
+     * a batch is ready while the current one is still on the wire
+     */
+    void prefetch(int packages) {
+        synchronized (prefetchLock) {
+            initStream();
+            try {
+                byte[] pack;
+                while (prefetched.size() < packages && source != null
+                        && (pack = source.next(blockSize, nextSequence, pool)) != null) {
+                    prefetched.add(pack);
+                    nextSequence++;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the largest offset not above offset that {@link #seek(long)} can start at
+     */
+    long alignOffset(long offset) {
+        synchronized (prefetchLock) {
+            initStream();
+            return source != null ? source.align(offset) : offset;
+        }
+    }
+
+    /**
+     * Start reading at offset instead of the beginning of the file, for resuming a transmission.
+     * The sequence numbers still start from 1.
+     */
+    void seek(long offset) {
+        synchronized (prefetchLock) {
+            clearPrefetched();
+            nextSequence = 1;
+            if (source != null && source.getPosition() > offset) {
+                onReadFinished();
+            }
+            initStream();
+            try {
+                if (source != null) {
+                    source.seek(offset);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Deflate the file data into the packages, set before the thread is started. Switching over
+     * drops the packages prefetched so far.
+     */
+    void setCompressed(boolean compressed) {
+        synchronized (prefetchLock) {
+            if (this.compressed != compressed) {
+                this.compressed = compressed;
+                clearPrefetched();
+                nextSequence = 1;
+                onReadFinished();
+            }
+        }
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Digest the file data while it is read unless the cache has the digest already, set before
+     * the stream is opened
+     *
+     * @param algorithms FileDigest algorithms, 0 for none
+     * @param cache      digests of the files read before, null to always digest
+     */
+    void setDigest(int algorithms, DigestCache cache) {
+        synchronized (prefetchLock) {
+            digestAlgorithms = algorithms;
+            digestCache = cache;
+        }
+    }
+
+    /**
+     * @return the digest of the file data, null until the file has been read completely unless it was cached
+     */
+    FileDigest getDigest() {
+        return digest;
+    }
+
+    /**
+     * Send the delta patch of the file instead of the file, set before the thread is started.
+     * Switching over drops the packages prefetched so far.
+     */
+    void setPatched(boolean patched) {
+        synchronized (prefetchLock) {
+            if (this.patched != patched && (!patched || file.getDeltaPatch() != null)) {
+                this.patched = patched;
+                clearPrefetched();
+                nextSequence = 1;
+                onReadFinished();
+            }
+        }
+    }
+
+    private void prepareData() throws IOException {
+        byte blockSequence;
+        synchronized (prefetchLock) {
+            initStream();
+            blockSequence = nextSequence;
+        }
+        synchronized (flowLock) {
+            unacknowledged = 0;
+        }
+        isKeepRunning = true;
+        while (isKeepRunning) {
+
+            //Encode the next package first, it is ready by the time the window opens
+            byte[] pack = prefetched.poll();
+            if (pack == null) {
+                //1024 修改为 n
+                if ((pack = source.next(readSize, blockSequence, pool)) == null) {
+                    Lg.f("The file data has all been read...");
+                    finishDigest();
+                    //The last package may still be in flight, EOT must not overtake it
+                    if (!awaitAcknowledged()) {
+                        break;
+                    }
+                    if (listener != null) {
+                        onStop();
+                        listener.onFinish();
+                    }
+                    break;
+                }
+                blockSequence++;
+            }
+
+            //Count the package before handing it out, the ACK may arrive on another
+            //thread before onDataReady returns
+            if (!awaitWindow()) {
+                PackagePool.release(pool, pack);
+                break;
+            }
+
+            DataRaderListener dataListener = listener;
+            if (dataListener != null) {
+                dataListener.onDataReady(pack);
+            } else {
+                PackagePool.release(pool, pack);
+            }
+        }
+
+    }
+
+    /**
+     * Wait for a free slot of the window and take it, YModem-G doesn't wait at all
+     *
+     * @return false if the thread has been stopped meanwhile
+     */
+    private boolean awaitWindow() {
+        synchronized (flowLock) {
+            while (isKeepRunning && !isStreaming && unacknowledged >= windowSize) {
+                try {
+                    flowLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            unacknowledged++;
+            return isKeepRunning;
+        }
+    }
+
+    /**
+     * Wait until every package handed out has been acknowledged, YModem-G doesn't wait at all
+     *
+     * @return false if the thread has been stopped meanwhile
+     */
+    private boolean awaitAcknowledged() {
+        synchronized (flowLock) {
+            while (isKeepRunning && !isStreaming && unacknowledged > 0) {
+                try {
+                    flowLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return isKeepRunning;
+        }
+    }
+
+    /**
+     * When received response from the terminal ,we should keep the thread keep going
+     */
+    void keepReading() {
+        keepReading(1);
+    }
+
+    /**
+     * The window moved by several packages at once
+     */
+    void keepReading(int packages) {
+        synchronized (flowLock) {
+            unacknowledged = Math.max(0, unacknowledged - packages);
+            flowLock.notifyAll();
+        }
+    }
+
+    /**
+     * Number of packages allowed in flight before waiting for {@link #keepReading()}, 1 for stop-and-wait
+     */
+    void setWindowSize(int windowSize) {
+        synchronized (flowLock) {
+            this.windowSize = Math.max(1, windowSize);
+            flowLock.notifyAll();
+        }
+    }
+
+    /**
+     * Switch to YModem-G streaming, the thread no longer waits for {@link #keepReading()}
+     */
+    void setStreaming(boolean streaming) {
+        synchronized (flowLock) {
+            isStreaming = streaming;
+            flowLock.notifyAll();
+        }
+    }
+
+    /**
+     * Size of the blocks read from now on, 128 or up to the block size the thread was created with
+     */
+    void setBlockSize(int size) {
+        readSize = Math.min(size, blockSize);
+    }
+
+    void release() {
+        onStop();
+        listener = null;
+    }
+
+    private void onStop() {
+        synchronized (flowLock) {
+            isKeepRunning = false;
+            unacknowledged = 0;
+            flowLock.notifyAll();
+        }
+        clearPrefetched();
+        fileByteSize = 0;
+        onReadFinished();
+    }
+
+    private void clearPrefetched() {
+        byte[] pack;
+        while ((pack = prefetched.poll()) != null) {
+            PackagePool.release(pool, pack);
+        }
+    }
+
+    private void initStream() {
+        if (source == null) {
+            try {
+                source = patched ? openSource(opener, file.getDeltaPatch().getAbsolutePath(), blockSize)
+                        : digest(openSource(opener, file, blockSize, cache));
+                if (compressed) {
+                    source = new DeflatingSource(source);
+                }
+                fileByteSize = source.getFileSize();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //Hash the file data on its way into the packages, unless the digest is known already
+    private PackageSource digest(PackageSource plain) {
+        digesting = null;
+        if (digestAlgorithms == 0 || digest != null) {
+            return plain;
+        }
+        String fingerprint = ResumeJournal.fingerprint(file.getFilePath(), plain.getFileSize());
+        if (digestCache != null && (digest = digestCache.get(fingerprint, digestAlgorithms)) != null) {
+            return plain;
+        }
+        digesting = new DigestingSource(plain, digestAlgorithms, fingerprint);
+        return digesting;
+    }
+
+    private void finishDigest() {
+        if (digesting != null) {
+            FileDigest result = digesting.finish();
+            if (result != null) {
+                Lg.f("Digest of " + file.getFileName() + ": " + result);
+                if (digestCache != null) {
+                    digestCache.put(digesting.getFingerprint(), result);
+                }
+                digest = result;
+            }
+            digesting = null;
+        }
+    }
+
+    /**
+     * The packet image of the file if it has one, else the encodings of the cache (may be null)
+     * if the file fits into it, else the file itself
+     */
+    static PackageSource openSource(SourceOpener opener, YModemFile file, int blockSize,
+                                    EncodedImageCache cache) throws IOException {
+        PacketImage image = file.getPacketImage();
+        if (image != null) {
+            return image.newSource();
+        }
+        PackageSource source = cache != null ? cache.newSource(opener, file.getFilePath(), blockSize) : null;
+        return source != null ? source : openSource(opener, file.getFilePath(), blockSize);
+    }
+
+    //Files on the file system are mapped, the assets are read as a stream
+    private static PackageSource openSource(SourceOpener opener, String filePath, int blockSize) throws IOException {
+        SourceScheme scheme = SourceScheme.ofUri(filePath);
+        switch (scheme) {
+            case ASSETS:
+                return new StreamPackageSource(opener, filePath, blockSize);
+            case FILE:
+                return new MappedFileSource(scheme.crop(filePath));
+            case UNKNOWN:
+            default:
+                return new MappedFileSource(filePath);
+        }
+    }
+
+    private void onReadFinished() {
+        digesting = null;
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+    }
+
+    public interface DataRaderListener {
+        /* the package holds a reference of the pool, if any, which the listener has to release */
+        void onDataReady(byte[] data);
+        void onFinish();
+    }
+
+}
@@ -1,27 +1,33 @@
 package com.bw.yml;
 
-import android.content.Context;
 import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Get InputStream from different source, files from sd card/assets supported.
+ * Get InputStream from different source, files from sd card/assets supported, the assets through
+ * a {@link SourceOpener}.
  */
 
 class InputStreamSource {
     //文件容量大小改为 32*n
-    private static final int BUFFER_SIZE = 32 * YModem.mSize;
+    private static final int BUFFER_BLOCKS = 32;
     //private static final String ERROR_UNSUPPORTED_SCHEME = "Unsupported file source";
 
-    InputStream getStream(Context context, String imageUri) throws IOException {
+    private final int bufferSize;
+
+    InputStreamSource(int blockSize) {
+        this.bufferSize = BUFFER_BLOCKS * blockSize;
+    }
+
+    InputStream getStream(SourceOpener opener, String imageUri) throws IOException {
         switch (SourceScheme.ofUri(imageUri)) {
             case FILE:
                 return getStreamFromFile(imageUri);
 
             case ASSETS:
-                return getStreamFromAssets(context, imageUri);
+                return getStreamFromAssets(opener, imageUri);
 
             case UNKNOWN:
             default:
@@ -31,19 +37,22 @@ class InputStreamSource {
 
     private InputStream getStreamFromFile(String fileUri) throws IOException {
         String filePath = SourceScheme.FILE.crop(fileUri);
-        return new BufferedInputStream(new FileInputStream(filePath), BUFFER_SIZE);
+        return new BufferedInputStream(new FileInputStream(filePath), bufferSize);
     }
 
-    private InputStream getStreamFromAssets(Context context, String fileUri) throws IOException {
-        String filePath = SourceScheme.ASSETS.crop(fileUri);
-        return context.getAssets().open(filePath);
+    //assets only exist on Android, the app hands in an opener for them
+    private InputStream getStreamFromAssets(SourceOpener opener, String fileUri) throws IOException {
+        if (opener == null) {
+            throw new IOException("No SourceOpener for " + fileUri);
+        }
+        return opener.open(fileUri);
     }
 
     /**
      * 从其它的地方获取数据
      */
     private InputStream getStreamFromOtherSource(String fileUri) throws IOException{
-        return new BufferedInputStream(new FileInputStream(fileUri), BUFFER_SIZE);
+        return new BufferedInputStream(new FileInputStream(fileUri), bufferSize);
         //throw new UnsupportedOperationException(String.format(ERROR_UNSUPPORTED_SCHEME, fileUri));
     }
 
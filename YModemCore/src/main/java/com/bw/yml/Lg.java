@@ -0,0 +1,129 @@
+package com.bw.yml;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class Lg{
+
+    private static final String TAG = "YMODEM";
+
+    //Priorities of android.util.Log
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    //logcat when the Android module is there, java.util.logging otherwise
+    private static final String ANDROID_PRINTER = "com.bw.yml.LogcatPrinter";
+
+    private static volatile Printer printer = defaultPrinter();
+
+    private Lg() {
+        /* cannot be instantiated */
+        throw new UnsupportedOperationException("cannot be instantiated");
+    }
+
+    private static final boolean DEBUGGING = true;
+
+    /**
+     * Where the lines of the library go
+     */
+    public interface Printer {
+        void print(int priority, String tag, String msg, Throwable throwable);
+    }
+
+    /**
+     * Replace the printer, e.g. with the log of a flashing station. Null restores the default.
+     */
+    public static void setPrinter(Printer printer) {
+        Lg.printer = printer != null ? printer : defaultPrinter();
+    }
+
+    private static Printer defaultPrinter() {
+        try {
+            return (Printer) Class.forName(ANDROID_PRINTER).newInstance();
+        } catch (Exception e) {
+            return new JulPrinter();
+        }
+    }
+
+    private static void print(int priority, String tag, String msg, Throwable throwable) {
+        if (DEBUGGING) {
+            printer.print(priority, tag, msg, throwable);
+        }
+    }
+
+    public static void f(String msg) {
+        print(ERROR, TAG, msg, null);
+    }
+
+    // 下面四个是默认tag的函数
+    public static void i(String msg) {
+        print(INFO, TAG, msg, null);
+    }
+
+    public static void d(String msg) {
+        print(DEBUG, TAG, msg, null);
+    }
+
+    public static void e(String msg) {
+        print(ERROR, TAG, msg, null);
+    }
+
+    public static void v(String msg) {
+        print(VERBOSE, TAG, msg, null);
+    }
+
+    public static void w(String msg) {
+        print(WARN, TAG, msg, null);
+    }
+
+    // 下面是传入自定义tag的函数
+    public static void i(String tag, String msg) {
+        print(INFO, tag, msg, null);
+    }
+
+    public static void d(String tag, String msg) {
+        print(DEBUG, tag, msg, null);
+    }
+
+    public static void e(String tag, String msg) {
+        print(ERROR, tag, msg, null);
+    }
+
+    public static void v(String tag, String msg) {
+        print(VERBOSE, tag, msg, null);
+    }
+
+    public static void w(String tag, String msg) {
+        print(WARN, tag, msg, null);
+    }
+
+    public static void e(String tag, String msg, Throwable throwable) {
+        print(ERROR, tag, msg, throwable);
+    }
+
+    public static void wtf(String tag, String msg) {
+        print(ASSERT, tag, msg, null);
+    }
+
+    /**
+     * Off device: a logger per tag, the engine's chatter at FINE so a station only sees it when asked for
+     */
+    private static class JulPrinter implements Printer {
+        @Override
+        public void print(int priority, String tag, String msg, Throwable throwable) {
+            Level level = priority >= ASSERT ? Level.SEVERE
+                    : priority >= WARN ? Level.WARNING
+                    : priority >= INFO ? Level.INFO : Level.FINE;
+            if (TAG.equals(tag) && priority == ERROR && throwable == null) {
+                //f() is the protocol trace, not an error
+                level = Level.FINE;
+            }
+            Logger.getLogger(tag).log(level, msg, throwable);
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Packages of a file on the file system, read through a memory mapping of its FileChannel.
+ * The size is exact and any offset can be started at without reading up to it. The file is
+ * mapped in windows of {@link #WINDOW} bytes, so files over 2 GB work as well.
+ * <p>
+ * A mapping can't be unmapped explicitly, it is released when the garbage collector collects its
+ * buffer. So only the current window is referenced, a window left behind or a closed source
+ * holds no address space beyond the next collection.
+ */
+class MappedFileSource implements PackageSource {
+
+    private static final long WINDOW = 64 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    //offset of the file the window starts at
+    private long windowStart = 0;
+    private long position = 0;
+
+    MappedFileSource(String filePath) throws IOException {
+        file = new RandomAccessFile(filePath, "r");
+        channel = file.getChannel();
+        fileSize = channel.size();
+    }
+
+    @Override
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long align(long offset) {
+        return offset;
+    }
+
+    @Override
+    public void seek(long offset) {
+        position = Math.min(offset, fileSize);
+    }
+
+    @Override
+    public byte[] next(int blockSize, byte sequence, PackagePool pool) throws IOException {
+        if (position >= fileSize) {
+            return null;
+        }
+        int dataLength = (int) Math.min(blockSize, fileSize - position);
+        map(dataLength);
+        //Straight from the mapping into the package, the header and CRC are added around it
+        byte[] pack = PackagePool.acquire(pool, PackageEncoder.packageLength(blockSize));
+        window.position((int) (position - windowStart));
+        window.get(pack, 3, dataLength);
+        position += dataLength;
+        PackageEncoder.encodeInPlace(pack, 0, dataLength, blockSize, sequence);
+        return pack;
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        if (position >= fileSize) {
+            return -1;
+        }
+        int dataLength = (int) Math.min(Math.min(length, WINDOW), fileSize - position);
+        map(dataLength);
+        window.position((int) (position - windowStart));
+        window.get(dst, offset, dataLength);
+        position += dataLength;
+        return dataLength;
+    }
+
+    //Move the window if the next length bytes are not in it
+    private void map(int length) throws IOException {
+        if (window == null || position < windowStart
+                || position + length > windowStart + window.capacity()) {
+            //Let go of the old window before the next one is mapped
+            window = null;
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    Math.min(WINDOW, fileSize - windowStart));
+        }
+    }
+
+    @Override
+    public void close() {
+        window = null;
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
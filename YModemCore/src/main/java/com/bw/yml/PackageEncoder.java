@@ -0,0 +1,236 @@
+package com.bw.yml;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encoder of ymodem packages into buffers given by the caller: header, payload, CPMEOF padding
+ * and CRC are written in place, nothing is allocated per package. {@link YModemUtil} returns
+ * new arrays built the same way.
+ * <p>
+ * A package takes {@link #packageLength(int)} bytes: SOH/STX, sequence, its complement,
+ * blockSize bytes of payload and the CRC16 (big endian).
+ */
+public final class PackageEncoder {
+
+    public static final int OVERHEAD = 5;
+    //What the file name package is written in, a receiver has to decode it with the same one
+    static final Charset FILE_NAME_CHARSET = Charset.forName("UTF-8");
+    private static final byte SOH = 0x01; /* Start Of Header with data size :128*/
+    private static final byte STX = 0x02; /* Start Of Header with data size : 1024*/
+    private static final byte CPMEOF = 0x1A;/* Fill the last package if not long enough */
+    private static final byte SEPARATOR = 0x0;
+    private static final int HEADER_BLOCK_SIZE = 128;
+    private static final CRC16 crc16 = new CRC16();
+
+    private PackageEncoder() {
+    }
+
+    public static int packageLength(int blockSize) {
+        return blockSize + OVERHEAD;
+    }
+
+    /**
+     * Encode a package whose payload is already in place at dst[offset + 3], so data read straight
+     * into the package buffer needs no copy
+     *
+     * @param dataLength bytes of payload, the rest of the block is padded with CPMEOF
+     * @return length of the package
+     */
+    public static int encodeInPlace(byte[] dst, int offset, int dataLength, int blockSize, byte sequence) {
+        dst[offset] = blockSize == 1024 ? STX : SOH;
+        dst[offset + 1] = sequence;
+        dst[offset + 2] = (byte) ~sequence;
+        int payload = offset + 3;
+        for (int i = payload + dataLength; i < payload + blockSize; i++) {
+            dst[i] = CPMEOF;
+        }
+        int crc = crc16.calcCRC(dst, payload, blockSize);
+        dst[payload + blockSize] = (byte) (crc >> 8);
+        dst[payload + blockSize + 1] = (byte) crc;
+        return blockSize + OVERHEAD;
+    }
+
+    /**
+     * Encode dataLength bytes of block starting at blockOffset into dst at dstOffset
+     *
+     * @return length of the package
+     */
+    public static int encode(byte[] block, int blockOffset, int dataLength, int blockSize, byte sequence,
+                             byte[] dst, int dstOffset) {
+        System.arraycopy(block, blockOffset, dst, dstOffset + 3, dataLength);
+        return encodeInPlace(dst, dstOffset, dataLength, blockSize, sequence);
+    }
+
+    /**
+     * Encode dataLength bytes of block starting at blockOffset at the position of dst, which is
+     * advanced past the package
+     *
+     * @return length of the package
+     */
+    public static int encode(byte[] block, int blockOffset, int dataLength, int blockSize, byte sequence,
+                             ByteBuffer dst) {
+        int start = dst.position();
+        if (dst.hasArray()) {
+            encode(block, blockOffset, dataLength, blockSize, sequence, dst.array(), dst.arrayOffset() + start);
+            dst.position(start + blockSize + OVERHEAD);
+            return blockSize + OVERHEAD;
+        }
+        dst.put(blockSize == 1024 ? STX : SOH);
+        dst.put(sequence);
+        dst.put((byte) ~sequence);
+        dst.put(block, blockOffset, dataLength);
+        for (int i = dataLength; i < blockSize; i++) {
+            dst.put(CPMEOF);
+        }
+        dst.putShort((short) crc16.calcCRC(dst, start + 3, blockSize));
+        return blockSize + OVERHEAD;
+    }
+
+    /**
+     * Encode the file name package (SOH, sequence 0) into dst at offset
+     *
+     * @param extensions optional fields after the md5, see {@link YModemUtil#getFileNamePackage}
+     * @return length of the package
+     */
+    public static int encodeFileName(String fileName, long fileSize, String fileMd5, String[] extensions,
+                                     byte[] dst, int offset) {
+        int payload = offset + 3;
+        int end = payload + HEADER_BLOCK_SIZE;
+        int i = putString(fileName, dst, payload, end);
+        //The other fields are left out unless they fit whole, a cut off size, md5 or offset
+        //would be taken for another one ("R204800" arriving as "R2048")
+        if (fits(i, decimalLength(fileSize), end)) {
+            i = putByte(SEPARATOR, dst, i, end);
+            i = putDecimal(fileSize, dst, i, end);
+            String md5 = fileMd5 == null ? "" : fileMd5;
+            if (!fits(i, utf8Length(md5), end)) {//Keep the position of the md5 for the extensions
+                md5 = "";
+            }
+            i = putByte(SEPARATOR, dst, i, end);
+            i = putString(md5, dst, i, end);
+            if (extensions != null) {
+                for (String extension : extensions) {
+                    if (fits(i, utf8Length(extension), end)) {
+                        i = putByte(SEPARATOR, dst, i, end);
+                        i = putString(extension, dst, i, end);
+                    }
+                }
+            }
+        }
+        for (; i < end; i++) {
+            dst[i] = 0;
+        }
+        //The name package is padded with NUL, the payload is the whole block
+        return encodeInPlace(dst, offset, HEADER_BLOCK_SIZE, HEADER_BLOCK_SIZE, (byte) 0);
+    }
+
+    /**
+     * Encode the null file name package closing the session into dst at offset
+     *
+     * @return length of the package
+     */
+    public static int encodeEnd(byte[] dst, int offset) {
+        for (int i = offset + 3; i < offset + 3 + HEADER_BLOCK_SIZE; i++) {
+            dst[i] = 0;
+        }
+        return encodeInPlace(dst, offset, HEADER_BLOCK_SIZE, HEADER_BLOCK_SIZE, (byte) 0);
+    }
+
+    /**
+     * @return true if a field of the given length fits whole into the header of the file name package
+     * after the fields already encoded
+     */
+    static boolean fitsFileName(String fileName, long fileSize, String fileMd5, String[] extensions,
+                                String field) {
+        int length = utf8Length(fileName) + 1 + decimalLength(fileSize) + 1;
+        if (length - 1 > HEADER_BLOCK_SIZE) {
+            return false;
+        }
+        if (fileMd5 != null && length + utf8Length(fileMd5) <= HEADER_BLOCK_SIZE) {
+            length += utf8Length(fileMd5);
+        }
+        if (extensions != null) {
+            for (String extension : extensions) {
+                if (length + 1 + utf8Length(extension) <= HEADER_BLOCK_SIZE) {
+                    length += 1 + utf8Length(extension);
+                }
+            }
+        }
+        return length + 1 + utf8Length(field) <= HEADER_BLOCK_SIZE;
+    }
+
+    //A separator and length bytes after position i
+    private static boolean fits(int i, int length, int end) {
+        return i + 1 + length <= end;
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int c = 0; c < value.length(); c++) {
+            int code = value.codePointAt(c);
+            if (Character.isSupplementaryCodePoint(code)) {
+                c++;
+            }
+            length += code < 0x80 ? 1 : code < 0x800 ? 2 : code < 0x10000 ? 3 : 4;
+        }
+        return length;
+    }
+
+    private static int decimalLength(long value) {
+        int length = value < 0 ? 2 : 1;
+        for (long rest = Math.abs(value / 10); rest > 0; rest /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int putByte(byte value, byte[] dst, int i, int end) {
+        if (i < end) {
+            dst[i] = value;
+        }
+        return i + 1;
+    }
+
+    //UTF-8 without a CharsetEncoder, the default charset of String.getBytes() on Android
+    private static int putString(String value, byte[] dst, int i, int end) {
+        for (int c = 0; c < value.length(); c++) {
+            int code = value.codePointAt(c);
+            if (Character.isSupplementaryCodePoint(code)) {
+                c++;
+            }
+            if (code < 0x80) {
+                i = putByte((byte) code, dst, i, end);
+            } else if (code < 0x800) {
+                i = putByte((byte) (0xC0 | (code >> 6)), dst, i, end);
+                i = putByte((byte) (0x80 | (code & 0x3F)), dst, i, end);
+            } else if (code < 0x10000) {
+                i = putByte((byte) (0xE0 | (code >> 12)), dst, i, end);
+                i = putByte((byte) (0x80 | ((code >> 6) & 0x3F)), dst, i, end);
+                i = putByte((byte) (0x80 | (code & 0x3F)), dst, i, end);
+            } else {
+                i = putByte((byte) (0xF0 | (code >> 18)), dst, i, end);
+                i = putByte((byte) (0x80 | ((code >> 12) & 0x3F)), dst, i, end);
+                i = putByte((byte) (0x80 | ((code >> 6) & 0x3F)), dst, i, end);
+                i = putByte((byte) (0x80 | (code & 0x3F)), dst, i, end);
+            }
+        }
+        return i;
+    }
+
+    private static int putDecimal(long value, byte[] dst, int i, int end) {
+        if (value < 0) {
+            i = putByte((byte) '-', dst, i, end);
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            i = putByte((byte) ('0' + (value / divisor) % 10), dst, i, end);
+        }
+        return i;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.bw.yml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Bounded pool of package buffers for a {@link YModemBufferListener} or a {@link YModemTransport}.
+ * A buffer goes back to the pool when its last reference is released. When all of them are taken,
+ * new buffers are handed out which are dropped once released, so a transport holding on to
+ * packages never blocks the reading.
+ */
+class PackagePool {
+
+    //buffers of each package length the pool creates at most
+    private final int capacity;
+    //a shelf per package length, there are two or three of them
+    private final List<Shelf> shelves = new ArrayList<>();
+    //every buffer created by the pool, to find the package of an array
+    private final IdentityHashMap<byte[], PooledPackage> owned = new IdentityHashMap<>();
+
+    PackagePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return null pool means nothing is pooled, the array is new
+     */
+    static byte[] acquire(PackagePool pool, int length) {
+        return pool != null ? pool.acquire(length) : new byte[length];
+    }
+
+    static void release(PackagePool pool, byte[] data) {
+        if (pool != null) {
+            pool.release(data);
+        }
+    }
+
+    /**
+     * @return data if it is a buffer of the pool (or there is no pool), else a copy of it in one,
+     * with one reference owned by the caller
+     */
+    static byte[] own(PackagePool pool, byte[] data) {
+        if (pool == null || data == null) {
+            return data;
+        }
+        synchronized (pool) {
+            if (pool.owned.containsKey(data)) {
+                return data;
+            }
+            byte[] copy = pool.acquire(data.length);
+            System.arraycopy(data, 0, copy, 0, data.length);
+            return copy;
+        }
+    }
+
+    /**
+     * @return a buffer of length bytes with one reference, owned by the caller
+     */
+    synchronized byte[] acquire(int length) {
+        Shelf shelf = shelf(length);
+        PooledPackage pooled = shelf.free.poll();
+        if (pooled == null) {
+            boolean overflow = shelf.created >= capacity;
+            pooled = new PooledPackage(new byte[length], this, overflow);
+            owned.put(pooled.array(), pooled);
+            if (!overflow) {
+                shelf.created++;
+            }
+        }
+        pooled.references = 1;
+        return pooled.array();
+    }
+
+    /**
+     * Take one more reference to data
+     *
+     * @return null if data is not a buffer of the pool
+     */
+    synchronized PooledPackage retain(byte[] data) {
+        PooledPackage pooled = owned.get(data);
+        if (pooled != null) {
+            pooled.references++;
+        }
+        return pooled;
+    }
+
+    /**
+     * Drop one reference to data, arrays not created by the pool are ignored
+     */
+    synchronized void release(byte[] data) {
+        PooledPackage pooled = owned.get(data);
+        if (pooled != null) {
+            release(pooled);
+        }
+    }
+
+    synchronized void release(PooledPackage pooled) {
+        if (pooled.references > 0 && --pooled.references == 0) {
+            if (pooled.overflow) {
+                owned.remove(pooled.array());
+            } else {
+                shelf(pooled.length()).free.push(pooled);
+            }
+        }
+    }
+
+    private Shelf shelf(int length) {
+        for (int i = 0; i < shelves.size(); i++) {
+            if (shelves.get(i).length == length) {
+                return shelves.get(i);
+            }
+        }
+        Shelf shelf = new Shelf(length);
+        shelves.add(shelf);
+        return shelf;
+    }
+
+    private static class Shelf {
+        final int length;
+        final ArrayDeque<PooledPackage> free = new ArrayDeque<>();
+        int created = 0;
+
+        Shelf(int length) {
+            this.length = length;
+        }
+    }
+
+}
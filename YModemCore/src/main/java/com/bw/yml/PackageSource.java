@@ -0,0 +1,49 @@
+package com.bw.yml;
+
+import java.io.IOException;
+
+/**
+ * Where the reading thread takes the encoded data packages of a file from. {@link #read} gives
+ * the plain file data instead, for protocols framing it themselves like {@link ZModem}.
+ */
+interface PackageSource {
+
+    /**
+     * @return size of the file data in bytes
+     */
+    long getFileSize();
+
+    /**
+     * @return the offset of the file data the next package starts at
+     */
+    long getPosition();
+
+    /**
+     * @return the largest offset not above offset this source can start reading at
+     */
+    long align(long offset);
+
+    /**
+     * Skip forward to offset, which has to be aligned by {@link #align(long)} for {@link #next},
+     * {@link #read} starts at any offset
+     */
+    void seek(long offset) throws IOException;
+
+    /**
+     * @param blockSize block size the package should have, a source may only have one block size
+     * @param sequence  sequence number of the package
+     * @param pool      pool the package buffer is taken from, null for a new array
+     * @return the next encoded package, null at the end of the file
+     */
+    byte[] next(int blockSize, byte sequence, PackagePool pool) throws IOException;
+
+    /**
+     * Read file data at the position without encoding it
+     *
+     * @return bytes read, at most length, -1 at the end of the file
+     */
+    int read(byte[] dst, int offset, int length) throws IOException;
+
+    void close();
+
+}
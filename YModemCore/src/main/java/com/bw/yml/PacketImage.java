@@ -0,0 +1,290 @@
+package com.bw.yml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A file compiled once into its encoded ymodem packages, for flashing the same image many times.
+ * The image file is memory-mapped and sessions copy the packages out of the mapping, no reading
+ * and no CRC calculation per session any more. Use it with {@link YModemFile#YModemFile(PacketImage)}.
+ * <p>
+ * Layout of the image file:
+ * <pre>
+ * int magic, int version, int blockSize, long fileSize, int packageCount,
+ * UTF fileName, UTF fileMd5, int headerLength, byte[headerLength] file name package,
+ * long[packageCount + 1] offset of every package and the end of the last one,
+ * the packages (STX/SOH, sequence from 1, payload, CRC)
+ * </pre>
+ * The magic is written last, a file left by an interrupted compile can't be opened.
+ */
+public class PacketImage {
+
+    private static final int MAGIC = 0x594D5049;//"YMPI"
+    private static final int VERSION = 1;
+    //packages encoded by one task while compiling
+    private static final int CHUNK_PACKAGES = 64;
+
+    private final File imageFile;
+    private final int blockSize;
+    private final int fileSize;
+    private final int packageCount;
+    private final String fileName;
+    private final String fileMd5;
+    private final byte[] headerPackage;
+    private final int indexPosition;
+    private final MappedByteBuffer mapping;
+
+    private PacketImage(File imageFile, RandomAccessFile file) throws IOException {
+        this.imageFile = imageFile;
+        if (file.length() < 24 || file.readInt() != MAGIC || file.readInt() != VERSION) {
+            throw new IOException("Not a packet image " + imageFile);
+        }
+        blockSize = file.readInt();
+        long size = file.readLong();
+        packageCount = file.readInt();
+        fileName = file.readUTF();
+        fileMd5 = file.readUTF();
+        headerPackage = new byte[file.readInt()];
+        file.readFully(headerPackage);
+        indexPosition = (int) file.getFilePointer();
+        if (size > Integer.MAX_VALUE || file.length() > Integer.MAX_VALUE) {
+            throw new IOException("Packet image too large " + imageFile);
+        }
+        fileSize = (int) size;
+        mapping = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    }
+
+    /**
+     * Open an image compiled before
+     */
+    public static PacketImage open(File imageFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(imageFile, "r")) {
+            return new PacketImage(imageFile, file);
+        }
+    }
+
+    /**
+     * Encode a file into an image, the packages are encoded on all the cores
+     *
+     * @param filePath  absolute path of the file, "assets://" and "file://" are supported
+     * @param fileName  file name for sending to the terminal
+     * @param fileMd5   md5 for terminal checking after transmission finished
+     * @param blockSize 128 (SOH) or 1024 (STX)
+     */
+    public static PacketImage compile(SourceOpener opener, String filePath, String fileName, String fileMd5,
+                                      int blockSize, File imageFile) throws IOException {
+        InputStream inputStream = YModemUtil.getInputStream(opener, filePath, blockSize);
+        try {
+            int fileSize = inputStream.available();
+            int packageCount = (fileSize + blockSize - 1) / blockSize;
+            int packageLength = blockSize + 5;
+
+            ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(metadata);
+            out.writeInt(0);//magic, written when complete
+            out.writeInt(VERSION);
+            out.writeInt(blockSize);
+            out.writeLong(fileSize);
+            out.writeInt(packageCount);
+            out.writeUTF(fileName);
+            out.writeUTF(fileMd5 == null ? "" : fileMd5);
+            byte[] header = YModemUtil.getFileNamePackage(fileName, fileSize, fileMd5);
+            out.writeInt(header.length);
+            out.write(header);
+            out.close();
+            long packagesPosition = metadata.size() + 8L * (packageCount + 1);
+            long length = packagesPosition + (long) packageCount * packageLength;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too large for a packet image " + filePath);
+            }
+
+            try (RandomAccessFile file = new RandomAccessFile(imageFile, "rw")) {
+                file.setLength(length);
+                MappedByteBuffer mapping = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+                mapping.put(metadata.toByteArray());
+                for (int i = 0; i <= packageCount; i++) {
+                    mapping.putLong(packagesPosition + (long) i * packageLength);
+                }
+                encodeAll(inputStream, mapping, (int) packagesPosition, blockSize, packageCount);
+                mapping.force();
+                mapping.putInt(0, MAGIC);
+                mapping.force();
+            }
+        } finally {
+            inputStream.close();
+        }
+        return open(imageFile);
+    }
+
+    //Read chunks of blocks on this thread and encode them into the mapping on all the cores
+    private static void encodeAll(InputStream inputStream, MappedByteBuffer mapping, int position,
+                                  int blockSize, int packageCount) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        //Bounds the chunks read but not encoded yet
+        final Semaphore chunks = new Semaphore(threads * 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int first = 0; first < packageCount; first += CHUNK_PACKAGES) {
+                final int count = Math.min(CHUNK_PACKAGES, packageCount - first);
+                final byte[] chunk = new byte[count * blockSize];
+                int read = 0;
+                int n;
+                while (read < chunk.length && (n = inputStream.read(chunk, read, chunk.length - read)) != -1) {
+                    read += n;
+                }
+                chunks.acquireUninterruptibly();
+                final int dataLength = read;
+                final int sequence = first + 1;
+                final ByteBuffer out = mapping.duplicate();
+                out.position(position + first * (blockSize + 5));
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            encodeChunk(chunk, dataLength, blockSize, sequence, out);
+                        } finally {
+                            chunks.release();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Failed to compile the packet image", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    //Same packages as YModemUtil.getDataPackage(), written straight into the buffer
+    static void encodeChunk(byte[] chunk, int dataLength, int blockSize, int sequence, ByteBuffer out) {
+        for (int offset = 0; offset < dataLength; offset += blockSize) {
+            PackageEncoder.encode(chunk, offset, Math.min(blockSize, dataLength - offset), blockSize,
+                    (byte) sequence++, out);
+        }
+    }
+
+    PackageSource newSource() {
+        return new ImageSource();
+    }
+
+    public File getImageFile() {
+        return imageFile;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getFileMd5() {
+        return fileMd5;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getPackageCount() {
+        return packageCount;
+    }
+
+    /**
+     * @return the file name package without header fields after the md5
+     */
+    byte[] getHeaderPackage() {
+        return headerPackage.clone();
+    }
+
+    /**
+     * Packages of one session, copied out of the shared mapping
+     */
+    private class ImageSource implements PackageSource {
+
+        private final ByteBuffer view = mapping.duplicate();
+        private int index = 0;
+        //payload bytes of the package at index already read by read()
+        private int within = 0;
+
+        @Override
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        @Override
+        public long getPosition() {
+            return Math.min((long) index * blockSize + within, fileSize);
+        }
+
+        @Override
+        public long align(long offset) {
+            return offset - offset % blockSize;
+        }
+
+        @Override
+        public void seek(long offset) {
+            index = (int) (offset / blockSize);
+            within = (int) (offset % blockSize);
+        }
+
+        @Override
+        public byte[] next(int size, byte sequence, PackagePool pool) {
+            if (index >= packageCount) {
+                return null;
+            }
+            int start = (int) view.getLong(indexPosition + 8 * index);
+            int end = (int) view.getLong(indexPosition + 8 * (index + 1));
+            index++;
+            byte[] pack = PackagePool.acquire(pool, end - start);
+            view.position(start);
+            view.get(pack);
+            if (pack[1] != sequence) {//Resumed, the sequence numbers start from 1 again
+                pack[1] = sequence;
+                pack[2] = (byte) ~sequence;
+            }
+            return pack;
+        }
+
+        @Override
+        public int read(byte[] dst, int offset, int length) {
+            if (index >= packageCount) {
+                return -1;
+            }
+            int payload = (int) Math.min(blockSize, (long) fileSize - (long) index * blockSize);
+            int dataLength = Math.min(length, payload - within);
+            view.position((int) view.getLong(indexPosition + 8 * index) + 3 + within);
+            view.get(dst, offset, dataLength);
+            within += dataLength;
+            if (within == payload) {
+                index++;
+                within = 0;
+            }
+            return dataLength;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
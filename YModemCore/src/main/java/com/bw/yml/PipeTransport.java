@@ -0,0 +1,82 @@
+package com.bw.yml;
+
+import java.io.IOException;
+
+/**
+ * Two ends of a link in memory, e.g. a {@link YModem} on one end and a {@link YModemReceiver}
+ * on the other one in the same process. A package is written when the receiver of the other end
+ * has taken it, on the thread of this end.
+ */
+public class PipeTransport implements YModemTransport {
+
+    //no link to fill, just enough to keep the other end busy while the next package is copied
+    private static final int WRITE_CREDITS = 4;
+    private static final int MTU = 64 * 1024;
+
+    private final PipeTransport peer;
+    private final TransportWriter writer;
+    private volatile Receiver receiver;
+
+    /**
+     * One end of a new pipe, the other one is {@link #peer()}
+     */
+    public PipeTransport() {
+        this(null);
+    }
+
+    private PipeTransport(PipeTransport peer) {
+        this.peer = peer != null ? peer : new PipeTransport(this);
+        this.writer = new TransportWriter("YModem-pipe", new TransportWriter.Sink() {
+            @Override
+            public void write(PooledPackage data) throws IOException {
+                PipeTransport.this.peer.deliver(data);
+            }
+        });
+        this.writer.start();
+    }
+
+    public PipeTransport peer() {
+        return peer;
+    }
+
+    //The package is reused once written, the other end gets a copy
+    private void deliver(PooledPackage data) throws IOException {
+        Receiver target = receiver;
+        if (target == null) {
+            throw new IOException("Nothing receiving on the other end");
+        }
+        byte[] copy = new byte[data.length()];
+        data.buffer().get(copy);
+        target.onReceive(copy);
+    }
+
+    @Override
+    public void write(PooledPackage data, WriteCallback callback) {
+        writer.write(data, callback);
+    }
+
+    @Override
+    public int getWriteCredits() {
+        return WRITE_CREDITS;
+    }
+
+    @Override
+    public int getMtu() {
+        return MTU;
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Close both ends
+     */
+    @Override
+    public void close() {
+        writer.close();
+        peer.writer.close();
+    }
+
+}
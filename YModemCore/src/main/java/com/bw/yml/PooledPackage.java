@@ -0,0 +1,59 @@
+package com.bw.yml;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An encoded package lent to a {@link YModemBufferListener}, give it back with {@link #release()}
+ * once it has been written to the transport. Until then its buffer is not reused.
+ */
+public final class PooledPackage {
+
+    private final byte[] data;
+    private final ByteBuffer view;
+    //null for packages which are not pooled, their release does nothing
+    private final PackagePool pool;
+    //taken while all buffers of its length were lent out, the pool drops it when it comes back
+    final boolean overflow;
+    //the engine holds one reference until the package is acknowledged, every delivery another one
+    int references = 0;
+
+    PooledPackage(byte[] data, PackagePool pool, boolean overflow) {
+        this.data = data;
+        this.view = ByteBuffer.wrap(data).asReadOnlyBuffer();
+        this.pool = pool;
+        this.overflow = overflow;
+    }
+
+    //Arrays from outside of a pool, given to the byte[] callback of a YModemBufferListener
+    static PooledPackage wrap(byte[] data) {
+        return new PooledPackage(data, null, false);
+    }
+
+    byte[] array() {
+        return data;
+    }
+
+    /**
+     * Read-only view of the whole package, the same one every time, rewound to position 0 and the
+     * full limit by every call. A package is only delivered again after a timeout or a NAK, a
+     * transport must be done with the view once it has released the package.
+     */
+    public ByteBuffer buffer() {
+        view.clear();
+        return view;
+    }
+
+    public int length() {
+        return data.length;
+    }
+
+    /**
+     * The transport is done with the package, call it exactly once per delivery
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+}
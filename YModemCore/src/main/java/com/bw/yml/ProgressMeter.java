@@ -0,0 +1,105 @@
+package com.bw.yml;
+
+/**
+ * Coalesces the progress of a file into {@link TransferProgress} reports: one when the interval
+ * has passed or enough bytes have been acknowledged since the last one, plus the first and the
+ * last of the file. The instant rate is smoothed over the reports like the RTT (gain 1/4).
+ */
+class ProgressMeter {
+
+    private final long interval;
+    private final long byteInterval;
+
+    private String fileName;
+    private long total = -1;
+    private long startBytes;
+    private long startTime;
+    private long bytes;
+    private long reportedBytes;
+    private long reportedTime;
+    private boolean reported;
+    private boolean completed;
+    //smoothed bytes per second, 0 until the second report
+    private double rate;
+
+    /**
+     * @param interval     ms between the reports at least
+     * @param byteInterval bytes acknowledged which are reported before the interval has passed, 0 for none
+     */
+    ProgressMeter(long interval, long byteInterval) {
+        this.interval = Math.max(0, interval);
+        this.byteInterval = Math.max(0, byteInterval);
+    }
+
+    /**
+     * The data of a file starts at bytes
+     *
+     * @param total -1 if not known yet
+     */
+    void start(String fileName, long bytes, long total) {
+        this.fileName = fileName;
+        this.total = total;
+        this.startBytes = bytes;
+        this.bytes = bytes;
+        this.startTime = now();
+        this.reportedBytes = bytes;
+        this.reportedTime = startTime;
+        this.reported = false;
+        this.completed = false;
+        this.rate = 0;
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    /**
+     * @return the report if one is due, else null
+     */
+    TransferProgress update(long bytes) {
+        this.bytes = total >= 0 ? Math.min(bytes, total) : bytes;
+        long now = now();
+        boolean last = total >= 0 && this.bytes >= total;
+        if (completed || (reported && !last && now - reportedTime < interval
+                && (byteInterval == 0 || this.bytes - reportedBytes < byteInterval))) {
+            return null;
+        }
+        return report(now, last);
+    }
+
+    /**
+     * The file has been acknowledged completely
+     *
+     * @return the last report unless it has been handed out already
+     */
+    TransferProgress finish() {
+        if (completed) {
+            return null;
+        }
+        if (total < 0 || bytes < total) {
+            total = bytes;
+        }
+        return report(now(), true);
+    }
+
+    private TransferProgress report(long now, boolean last) {
+        if (reported && now > reportedTime) {
+            double instant = Math.max(0, bytes - reportedBytes) * 1000.0 / (now - reportedTime);
+            rate = rate == 0 ? instant : rate + (instant - rate) / 4;
+        }
+        long elapsed = now - startTime;
+        long average = elapsed > 0 ? (bytes - startBytes) * 1000 / elapsed : 0;
+        long speed = rate > 0 ? Math.round(rate) : average;
+        long eta = last ? 0 : total >= 0 && speed > 0 ? (total - bytes) * 1000 / speed : -1;
+        reported = true;
+        completed = last;
+        reportedBytes = bytes;
+        reportedTime = now;
+        return new TransferProgress(fileName, bytes, total, elapsed, speed, average, eta);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+}
@@ -0,0 +1,280 @@
+package com.bw.yml;
+
+/**
+ * Cuts the byte stream of the receiver into responses. A notification may carry part of a response
+ * or several of them, the bytes of an unfinished one are kept for the next call.
+ * <p>
+ * What a response looks like depends on the step of the sender, which passes the mode along with
+ * the bytes. Bytes which start no response of the mode are skipped as line noise. Nothing is
+ * allocated per byte.
+ */
+class ResponseDecoder {
+
+    private static final byte ACK = 0x06;
+    private static final byte NAK = 0x15;
+    private static final byte CAN = 0x18;
+    private static final byte ST_C = 'C';
+    private static final byte ST_G = 'G';
+    private static final byte ST_W = 'W';
+    private static final byte ST_R = 'R';
+    private static final byte ST_Z = 'Z';
+    private static final byte ST_D = 'D';
+    private static final byte[] MD5_OK = {'M', 'D', '5', '_', 'O', 'K'};
+    private static final byte[] MD5_ERR = {'M', 'D', '5', '_', 'E', 'R', 'R'};
+
+    //single control bytes: ACK, NAK, CAN, 'C' and 'G'
+    static final int MODE_SINGLE = 0;
+    //answer to the file name package: 'ACK C', 'ACK W', 'ACK G' or 'G', followed by the accepted extensions
+    static final int MODE_HEADER = 1;
+    //sliding window: 'ACK seq' and 'NAK seq'
+    static final int MODE_SEQUENCE = 2;
+    //after the null file name package: ACK, "MD5_OK" and "MD5_ERR"
+    static final int MODE_END = 3;
+    //stop-and-wait file body: like MODE_SINGLE, but 'ACK C' in one piece is the header answer again, not an ACK
+    static final int MODE_BODY = 4;
+
+    //extensions accepted in the header answer, they come in this order
+    static final int FLAG_RESUME = 1;
+    static final int FLAG_DEFLATE = 2;
+    static final int FLAG_DELTA = 4;
+
+    //responses above the byte values, the single control bytes are returned as they are
+    static final int NONE = -1;
+    static final int HEADER_ACK = 0x100;
+    static final int SEQUENCE_ACK = 0x101;
+    static final int SEQUENCE_NAK = 0x102;
+    static final int MD5_CHECKED = 0x103;
+    static final int MD5_FAILED = 0x104;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_HEADER_ACK = 1;
+    private static final int STATE_HEADER_FLAGS = 2;
+    private static final int STATE_SEQUENCE = 3;
+    private static final int STATE_MD5 = 4;
+    private static final int STATE_BODY_ACK = 5;
+    private static final int STATE_REPEATED_HEADER = 6;
+
+    private int state = STATE_IDLE;
+    //extensions offered in the header, the answer may still be followed by one of them
+    private int offered = 0;
+    private int flags = 0;
+    private int argument = 0;
+    private boolean sequenceAck;
+    private byte[] matching;
+    private int matched = 0;
+    private int response = NONE;
+
+    /**
+     * The extensions offered by the file name package just sent
+     */
+    void offer(int flags) {
+        offered = flags;
+    }
+
+    /**
+     * Decode until a response is complete or the bytes run out
+     *
+     * @return the offset following the bytes taken, {@link #takeResponse()} has the response if there is one
+     */
+    int decode(byte[] data, int offset, int length, int mode) {
+        while (offset < length && response == NONE) {
+            if (take(data[offset], mode)) {
+                offset++;
+            }
+        }
+        if (offset == length) {
+            //The ACK of a package can't wait for the next notification
+            if (state == STATE_BODY_ACK) {
+                complete(ACK);
+            } else if (state == STATE_REPEATED_HEADER) {
+                state = STATE_IDLE;
+            }
+        }
+        return offset;
+    }
+
+    //false if the byte ended the pending response without belonging to it, it is looked at again
+    private boolean take(byte b, int mode) {
+        switch (state) {
+            case STATE_HEADER_ACK:
+                if (b == ST_C || b == ST_W || b == ST_G) {
+                    startFlags(b);
+                    return true;
+                }
+                //A lone ACK
+                complete(ACK);
+                return false;
+            case STATE_HEADER_FLAGS:
+                int flag = flagOf(b);
+                if (flag > flags && (flag & offered) != 0) {
+                    flags |= flag;
+                    if (!moreFlags()) {
+                        complete(HEADER_ACK);
+                    }
+                    return true;
+                }
+                complete(HEADER_ACK);
+                return false;
+            case STATE_SEQUENCE:
+                argument = b & 0xFF;
+                complete(sequenceAck ? SEQUENCE_ACK : SEQUENCE_NAK);
+                return true;
+            case STATE_BODY_ACK:
+                if (b == ST_C || b == ST_W || b == ST_G) {//Our header was sent twice, this is the second answer
+                    state = STATE_REPEATED_HEADER;
+                    return true;
+                }
+                complete(ACK);
+                return false;
+            case STATE_REPEATED_HEADER:
+                if (flagOf(b) != 0) {
+                    return true;
+                }
+                state = STATE_IDLE;
+                return false;
+            case STATE_MD5:
+                if (matching[matched] != b) {
+                    //Both words start with "MD5_", they part at the fifth byte
+                    if (matched != 4 || MD5_ERR[matched] != b) {
+                        state = STATE_IDLE;
+                        return false;
+                    }
+                    matching = MD5_ERR;
+                }
+                if (++matched == matching.length) {
+                    complete(matching == MD5_OK ? MD5_CHECKED : MD5_FAILED);
+                }
+                return true;
+            default:
+                start(b, mode);
+                return true;
+        }
+    }
+
+    private void start(byte b, int mode) {
+        switch (mode) {
+            case MODE_HEADER:
+                if (b == ACK) {
+                    state = STATE_HEADER_ACK;
+                } else if (b == ST_G) {
+                    startFlags(b);
+                } else if (b == ST_C || b == NAK || b == CAN) {
+                    complete(b);
+                }
+                break;
+            case MODE_SEQUENCE:
+                if (b == ACK || b == NAK) {
+                    sequenceAck = b == ACK;
+                    state = STATE_SEQUENCE;
+                } else if (b == CAN) {
+                    complete(b);
+                }
+                break;
+            case MODE_END:
+                if (b == MD5_OK[0]) {
+                    matching = MD5_OK;
+                    matched = 1;
+                    state = STATE_MD5;
+                } else if (b == ACK || b == NAK || b == CAN) {
+                    complete(b);
+                }
+                break;
+            case MODE_BODY:
+                if (b == ACK) {
+                    state = STATE_BODY_ACK;
+                } else if (b == NAK || b == CAN || b == ST_C) {
+                    complete(b);
+                }
+                break;
+            default:
+                if (b == ACK || b == NAK || b == CAN || b == ST_C || b == ST_G) {
+                    complete(b);
+                }
+                break;
+        }
+    }
+
+    private void startFlags(byte kind) {
+        argument = kind;
+        flags = 0;
+        if (moreFlags()) {
+            state = STATE_HEADER_FLAGS;
+        } else {
+            complete(HEADER_ACK);
+        }
+    }
+
+    //An offered extension after the last one taken may still come
+    private boolean moreFlags() {
+        int passed = flags == 0 ? 0 : (Integer.highestOneBit(flags) << 1) - 1;
+        return (offered & ~passed) != 0;
+    }
+
+    private static int flagOf(byte b) {
+        switch (b) {
+            case ST_R:
+                return FLAG_RESUME;
+            case ST_Z:
+                return FLAG_DEFLATE;
+            case ST_D:
+                return FLAG_DELTA;
+            default:
+                return 0;
+        }
+    }
+
+    private void complete(int completed) {
+        response = completed;
+        state = STATE_IDLE;
+    }
+
+    /**
+     * @return the decoded response, {@link #NONE} if there is none, it is handed out only once
+     */
+    int takeResponse() {
+        int taken = response;
+        response = NONE;
+        return taken;
+    }
+
+    /**
+     * 'ACK C', 'W' or 'G' for {@link #HEADER_ACK}, the sequence number for {@link #SEQUENCE_ACK}
+     * and {@link #SEQUENCE_NAK}
+     */
+    int argument() {
+        return argument;
+    }
+
+    /**
+     * FLAG_* of the extensions accepted with {@link #HEADER_ACK}
+     */
+    int flags() {
+        return flags;
+    }
+
+    /**
+     * The header answer has come but the bytes ended where an offered extension could follow
+     */
+    boolean isWaitingForFlags() {
+        return state == STATE_HEADER_FLAGS;
+    }
+
+    /**
+     * Take the header answer as it is, no more extensions are coming
+     *
+     * @return true if a response is complete now
+     */
+    boolean flush() {
+        if (state == STATE_HEADER_FLAGS) {
+            complete(HEADER_ACK);
+        }
+        return response != NONE;
+    }
+
+    void reset() {
+        state = STATE_IDLE;
+        response = NONE;
+        offered = 0;
+    }
+
+}
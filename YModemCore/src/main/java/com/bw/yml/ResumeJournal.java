@@ -0,0 +1,188 @@
+package com.bw.yml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * A small on-disk record of how far a file has been acknowledged by the terminal, so a failed
+ * transmission can be resumed at that offset instead of starting over from the first package.
+ * <p>
+ * The record holds a fingerprint of the file (path, size and modification time) and the offset.
+ * The offset is rewritten in place on every acknowledgement, but only forced to the disk every
+ * {@link #SYNC_INTERVAL} ms and when the journal is closed.
+ */
+class ResumeJournal {
+
+    private static final String SUFFIX = ".ymj";
+    private static final long SYNC_INTERVAL = 1000;
+
+    private final File journalFile;
+    private final String fingerprint;
+    private RandomAccessFile record;
+    //position of the offset in the record, right after the fingerprint
+    private long offsetPosition;
+    private long offset = 0;
+    private long lastSync = 0;
+
+    private ResumeJournal(File journalFile, String fingerprint) {
+        this.journalFile = journalFile;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Open the journal of a file, the offset of a previous record is only kept if the
+     * fingerprint still matches
+     *
+     * @param key peer or session the file goes to, e.g. the address of the device, so sessions sending
+     *            the same file to different peers keep their own records. null for a single peer.
+     */
+    static ResumeJournal open(File directory, String key, String fileName, String fingerprint) {
+        ResumeJournal journal = new ResumeJournal(new File(directory, journalName(key, fileName)), fingerprint);
+        try {
+            journal.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            journal.close();
+        }
+        return journal;
+    }
+
+    //<file name>[.<key>].ymj, the key only keeps the characters which are safe in a file name
+    private static String journalName(String key, String fileName) {
+        StringBuilder name = new StringBuilder(new File(fileName).getName());
+        if (key != null && !key.isEmpty()) {
+            name.append('.');
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                boolean safe = c < 0x80 && (Character.isLetterOrDigit(c) || c == '-' || c == '_');
+                name.append(safe ? c : '_');
+            }
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    /**
+     * Fingerprint of a file, the modification time is only known for the files on the file system
+     */
+    static String fingerprint(String filePath, long fileSize) {
+        long lastModified = 0;
+        SourceScheme scheme = SourceScheme.ofUri(filePath);
+        if (scheme == SourceScheme.FILE) {
+            lastModified = new File(scheme.crop(filePath)).lastModified();
+        } else if (scheme == SourceScheme.UNKNOWN) {
+            lastModified = new File(filePath).lastModified();
+        }
+        return filePath + ":" + fileSize + ":" + lastModified;
+    }
+
+    private void load() throws IOException {
+        record = new RandomAccessFile(journalFile, "rw");
+        if (record.length() > 0) {
+            try {
+                if (fingerprint.equals(record.readUTF())) {
+                    offsetPosition = record.getFilePointer();
+                    offset = record.readLong();
+                    return;
+                }
+            } catch (IOException e) {
+                Lg.f("Broken resume journal " + journalFile);
+            }
+        }
+        //No record yet or it belongs to another version of the file
+        record.setLength(0);
+        record.seek(0);
+        record.writeUTF(fingerprint);
+        offsetPosition = record.getFilePointer();
+        record.writeLong(0);
+        offset = 0;
+    }
+
+    /**
+     * @return the acknowledged offset of the previous transmission, 0 if there is nothing to resume
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Record the offset up to which the terminal has acknowledged the file
+     */
+    void update(long acknowledged) {
+        if (record == null || acknowledged == offset) {
+            return;
+        }
+        offset = acknowledged;
+        try {
+            record.seek(offsetPosition);
+            record.writeLong(acknowledged);
+            long now = System.nanoTime() / 1000000;
+            if (now - lastSync >= SYNC_INTERVAL) {
+                record.getFD().sync();
+                lastSync = now;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Record the offset up to which data has been written into a file, the receiving side of
+     * {@link #update(long)}. Every {@link #SYNC_INTERVAL} ms the data is forced to the disk and then
+     * the record, the record never runs ahead of what the file holds.
+     */
+    void updateWritten(long written, FileChannel data) throws IOException {
+        if (record != null && written != offset && System.nanoTime() / 1000000 - lastSync >= SYNC_INTERVAL) {
+            commitWritten(written, data);
+        }
+    }
+
+    /**
+     * Force the data written into a file to the disk, then record the offset up to which it has been written
+     */
+    void commitWritten(long written, FileChannel data) throws IOException {
+        if (record == null) {
+            return;
+        }
+        data.force(false);
+        offset = written;
+        record.seek(offsetPosition);
+        record.writeLong(written);
+        record.getFD().sync();
+        lastSync = System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Force the record to the disk and close it, it stays for the next attempt
+     */
+    void close() {
+        if (record != null) {
+            try {
+                record.getFD().sync();
+                record.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            record = null;
+        }
+    }
+
+    /**
+     * The file has been sent completely, there is nothing to resume any more
+     */
+    void delete() {
+        if (record != null) {
+            try {
+                record.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            record = null;
+        }
+        if (journalFile.exists() && !journalFile.delete()) {
+            Lg.f("Failed to delete resume journal " + journalFile);
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.bw.yml;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * How a {@link YModem} resends: a budget of resends and a minimum timeout for each phase of the
+ * session, the backoff of the timeout while the receiver is silent and a deadline for the whole
+ * session.
+ * <p>
+ * A NAK is answered by resending the package right away, the timeout stays as it is. Only
+ * silence backs the timeout off, multiplied each time and spread by a random jitter so that
+ * senders sharing a link don't retry in step. Both count against the budget of the phase.
+ * <p>
+ * Presets: {@link #DEFAULT} (5 resends everywhere, 6 s outside of the data, doubling, no deadline),
+ * {@link #BLE}, {@link #SERIAL} and {@link #TCP}. Start from one with {@link Builder#Builder(RetryPolicy)}
+ * to change a part of it.
+ */
+public class RetryPolicy {
+
+    public enum Phase {
+        //the hello package, and the 'C' the receiver asks for the next file of a batch with
+        HANDSHAKE,
+        //the file name package, the receiver may create or erase the target before answering
+        HEADER,
+        //the packages of the file
+        DATA,
+        //EOT, the receiver may flush the file before the ACK
+        EOT,
+        //the null file name package, the receiver may check the md5 of the whole image before answering
+        END
+    }
+
+    /**
+     * The resends of the versions before the policy and their 6000 ms wait for everything but the
+     * data packages, so a low RTT measured on the data doesn't hurry the header, EOT and END of
+     * the next file. Unlike those versions, EOT and END are resent when they time out.
+     */
+    public static final RetryPolicy DEFAULT = new Builder()
+            .phase(Phase.HANDSHAKE, Builder.DEFAULT_RETRIES, Builder.DEFAULT_MIN_TIMEOUT)
+            .phase(Phase.HEADER, Builder.DEFAULT_RETRIES, Builder.DEFAULT_MIN_TIMEOUT)
+            .phase(Phase.EOT, Builder.DEFAULT_RETRIES, Builder.DEFAULT_MIN_TIMEOUT)
+            .phase(Phase.END, Builder.DEFAULT_RETRIES, Builder.DEFAULT_MIN_TIMEOUT)
+            .build();
+
+    /**
+     * Notifications get lost around connection parameter updates and the peripheral erases and
+     * verifies flash slowly, so there are more resends and generous phase timeouts. The jitter
+     * keeps phones talking to several devices apart.
+     */
+    public static final RetryPolicy BLE = new Builder()
+            .phase(Phase.HANDSHAKE, 10, 1000)
+            .phase(Phase.HEADER, 8, 3000)
+            .phase(Phase.DATA, 10, 0)
+            .phase(Phase.EOT, 8, 1000)
+            .phase(Phase.END, 8, 5000)
+            .backOff(1.5, 0.25)
+            .sessionDeadline(30 * 60 * 1000)
+            .build();
+
+    /**
+     * Classic xmodem/ymodem numbers: 10 tries per package, the receiver gets a second for the
+     * header and the end. Plain doubling, a UART has nothing to desynchronize.
+     */
+    public static final RetryPolicy SERIAL = new Builder()
+            .phase(Phase.HANDSHAKE, 10, 1000)
+            .phase(Phase.HEADER, 9, 1000)
+            .phase(Phase.DATA, 9, 0)
+            .phase(Phase.EOT, 9, 1000)
+            .phase(Phase.END, 9, 1000)
+            .backOff(2, 0)
+            .build();
+
+    /**
+     * The link itself resends, a silent peer is most likely gone: few resends and a deadline
+     */
+    public static final RetryPolicy TCP = new Builder()
+            .phase(Phase.HANDSHAKE, 3, 0)
+            .phase(Phase.HEADER, 3, 0)
+            .phase(Phase.DATA, 3, 0)
+            .phase(Phase.EOT, 3, 0)
+            .phase(Phase.END, 3, 0)
+            .backOff(2, 0.1)
+            .sessionDeadline(5 * 60 * 1000)
+            .build();
+
+    private final int[] retries;
+    private final long[] minTimeouts;
+    private final double multiplier;
+    private final double jitter;
+    private final long sessionDeadline;
+
+    private RetryPolicy(Builder builder) {
+        this.retries = builder.retries.clone();
+        this.minTimeouts = builder.minTimeouts.clone();
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.sessionDeadline = builder.sessionDeadline;
+    }
+
+    /**
+     * @return how many times a package of the phase is resent before the session fails
+     */
+    public int getRetries(Phase phase) {
+        return retries[phase.ordinal()];
+    }
+
+    /**
+     * @return the least time in ms to wait for an answer in the phase, 0 to go by the RTT alone
+     */
+    public long getMinTimeout(Phase phase) {
+        return minTimeouts[phase.ordinal()];
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @return ms from start() until the session fails unless it is done, 0 for none
+     */
+    public long getSessionDeadline() {
+        return sessionDeadline;
+    }
+
+    /**
+     * The timeout for waiting in the phase: the RTT based one, spread by the jitter if the
+     * package is a resend after silence, and at least the minimum of the phase
+     */
+    long timeout(Phase phase, long rttTimeout, boolean backedOff, Random random) {
+        long timeout = rttTimeout;
+        if (backedOff && jitter > 0) {
+            timeout = Math.round(timeout * (1 + jitter * (2 * random.nextDouble() - 1)));
+        }
+        return Math.max(timeout, getMinTimeout(phase));
+    }
+
+    public static class Builder {
+        //resends of the versions before the policy, they failed at the 6th error
+        private static final int DEFAULT_RETRIES = 5;
+        //the fixed package timeout of the versions before the policy
+        private static final long DEFAULT_MIN_TIMEOUT = 6000;
+
+        private final int[] retries = new int[Phase.values().length];
+        private final long[] minTimeouts = new long[Phase.values().length];
+        private double multiplier = 2;
+        private double jitter = 0;
+        private long sessionDeadline = 0;
+
+        public Builder() {
+            Arrays.fill(retries, DEFAULT_RETRIES);
+        }
+
+        /**
+         * Start from a preset
+         */
+        public Builder(RetryPolicy policy) {
+            System.arraycopy(policy.retries, 0, retries, 0, retries.length);
+            System.arraycopy(policy.minTimeouts, 0, minTimeouts, 0, minTimeouts.length);
+            multiplier = policy.multiplier;
+            jitter = policy.jitter;
+            sessionDeadline = policy.sessionDeadline;
+        }
+
+        /**
+         * @param retries    resends of a package of the phase, 0 fails at the first error
+         * @param minTimeout least ms to wait for an answer, 0 to go by the RTT alone
+         */
+        public Builder phase(Phase phase, int retries, long minTimeout) {
+            this.retries[phase.ordinal()] = Math.max(0, retries);
+            this.minTimeouts[phase.ordinal()] = Math.max(0, minTimeout);
+            return this;
+        }
+
+        /**
+         * @param multiplier the timeout grows by this on every timeout, at least 1
+         * @param jitter     a resent package waits up to this fraction longer or shorter, 0 to 1
+         */
+        public Builder backOff(double multiplier, double jitter) {
+            this.multiplier = Math.max(1, multiplier);
+            this.jitter = Math.min(1, Math.max(0, jitter));
+            return this;
+        }
+
+        /**
+         * Fail the session if it hasn't ended this many ms after start(), 0 for no deadline
+         */
+        public Builder sessionDeadline(long sessionDeadline) {
+            this.sessionDeadline = Math.max(0, sessionDeadline);
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.bw.yml;
+
+/**
+ * Round-trip time estimation for the package timeout, the same way TCP does it (RFC 6298):
+ * a smoothed RTT and its mean deviation are updated with every sample, the timeout is
+ * srtt + 4 * rttvar kept between a floor and a ceiling.
+ * <p>
+ * Only packages which were sent once must be sampled (Karn's algorithm), on a timeout the
+ * timeout is multiplied (doubled by default) until the next valid sample.
+ */
+class RttEstimator {
+
+    //the timer can't be more precise than this anyway
+    private static final long CLOCK_GRANULARITY = 10;
+
+    private final long floor;
+    private final long ceiling;
+    private double smoothedRtt = -1;
+    private double rttVariance = 0;
+    private long timeout;
+
+    /**
+     * @param initial timeout before the first sample
+     */
+    RttEstimator(long initial, long floor, long ceiling) {
+        this.floor = floor;
+        this.ceiling = Math.max(floor, ceiling);
+        this.timeout = clamp(initial);
+    }
+
+    synchronized void sample(long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2.0;
+        } else {
+            rttVariance = 0.75 * rttVariance + 0.25 * Math.abs(smoothedRtt - rtt);
+            smoothedRtt = 0.875 * smoothedRtt + 0.125 * rtt;
+        }
+        timeout = clamp((long) Math.ceil(smoothedRtt + Math.max(CLOCK_GRANULARITY, 4 * rttVariance)));
+    }
+
+    /**
+     * The package timed out, wait longer for the next one
+     *
+     * @param multiplier 2 doubles the timeout like RFC 6298
+     */
+    synchronized void backOff(double multiplier) {
+        timeout = clamp(Math.round(timeout * multiplier));
+    }
+
+    synchronized long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the smoothed RTT in ms, -1 before the first sample
+     */
+    synchronized long getSmoothedRtt() {
+        return Math.round(smoothedRtt);
+    }
+
+    synchronized long getRttVariance() {
+        return Math.round(rttVariance);
+    }
+
+    private long clamp(long value) {
+        return Math.min(Math.max(value, floor), ceiling);
+    }
+
+}
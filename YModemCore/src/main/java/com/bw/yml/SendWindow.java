@@ -0,0 +1,136 @@
+package com.bw.yml;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Packages of a windowed transmission which have been sent but not acknowledged yet.
+ * They are keyed by their sequence number, so ACK/NAK can be matched to a single package
+ * and only that package needs to be resent.
+ */
+class SendWindow {
+
+    private final LinkedHashMap<Integer, Entry> inFlight = new LinkedHashMap<>();
+    private boolean readFinished = false;
+    private boolean drained = false;
+    //packages added since the window was cleared, the index of the next one
+    private long added = 0;
+
+    /**
+     * @param offset offset of the package payload in the file
+     */
+    synchronized void add(byte[] packageData, long now, long offset) {
+        Entry entry = new Entry(packageData, now, offset, added++);
+        inFlight.put(entry.sequence, entry);
+    }
+
+    synchronized Entry get(int sequence) {
+        return inFlight.get(sequence);
+    }
+
+    synchronized Entry remove(int sequence) {
+        return inFlight.remove(sequence);
+    }
+
+    /**
+     * The base of the window is the oldest package in flight. Packages after it may be
+     * acknowledged already, but their slots are only freed when the base moves past them,
+     * so the window never spans more than windowSize sequence numbers.
+     *
+     * @return index of the oldest package in flight, the index of the next one if nothing is in flight
+     */
+    synchronized long base() {
+        Iterator<Entry> oldest = inFlight.values().iterator();
+        return oldest.hasNext() ? oldest.next().index : added;
+    }
+
+    /**
+     * @param handedOut offset up to which packages have been handed out
+     * @return offset up to which every package has been acknowledged
+     */
+    synchronized long acknowledgedOffset(long handedOut) {
+        Iterator<Entry> oldest = inFlight.values().iterator();
+        return oldest.hasNext() ? Math.min(oldest.next().offset, handedOut) : handedOut;
+    }
+
+    /**
+     * @return the packages which have been waiting longer than timeout, oldest first
+     */
+    synchronized List<Entry> expired(long now, long timeout) {
+        List<Entry> expired = new ArrayList<>();
+        for (Entry entry : inFlight.values()) {
+            if (entry.sentAt >= 0 && now - entry.sentAt >= timeout) {
+                expired.add(entry);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return time at which the oldest package times out, -1 if nothing is in flight
+     * (or still waiting for the transport)
+     */
+    synchronized long nextDeadline(long timeout) {
+        long deadline = -1;
+        for (Entry entry : inFlight.values()) {
+            if (entry.sentAt >= 0 && (deadline < 0 || entry.sentAt + timeout < deadline)) {
+                deadline = entry.sentAt + timeout;
+            }
+        }
+        return deadline;
+    }
+
+    /**
+     * The reading thread has no more packages
+     *
+     * @return true if every package has already been acknowledged
+     */
+    synchronized boolean markReadFinished() {
+        readFinished = true;
+        return takeDrained();
+    }
+
+    /**
+     * @return true exactly once, when reading has finished and the last package was acknowledged
+     */
+    synchronized boolean takeDrained() {
+        if (readFinished && inFlight.isEmpty() && !drained) {
+            drained = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the packages which were still in flight
+     */
+    synchronized List<Entry> clear() {
+        List<Entry> dropped = new ArrayList<>(inFlight.values());
+        inFlight.clear();
+        added = 0;
+        readFinished = false;
+        drained = false;
+        return dropped;
+    }
+
+    static class Entry {
+        final byte[] data;
+        final int sequence;
+        final long offset;
+        final long index;
+        //-1 while the transport hasn't written it yet
+        long sentAt;
+        int errorTimes = 0;
+
+        Entry(byte[] data, long sentAt, long offset, long index) {
+            this.data = data;
+            this.sequence = data[1] & 0xFF;
+            this.offset = offset;
+            this.index = index;
+            this.sentAt = sentAt;
+        }
+    }
+
+}
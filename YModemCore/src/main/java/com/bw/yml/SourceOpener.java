@@ -0,0 +1,17 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens the files whose path is not a plain file, e.g. "assets://fw.bin" on Android
+ * ({@link SourceScheme#ASSETS}). Plain paths and "file://" are read by the library itself.
+ */
+public interface SourceOpener {
+
+    /**
+     * @param uri the whole path, scheme included
+     */
+    InputStream open(String uri) throws IOException;
+
+}
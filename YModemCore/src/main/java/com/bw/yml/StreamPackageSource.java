@@ -0,0 +1,74 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Packages read from the stream of a file and encoded one by one
+ */
+class StreamPackageSource implements PackageSource {
+
+    private final InputStream inputStream;
+    private final long fileSize;
+    private long position = 0;
+
+    StreamPackageSource(SourceOpener opener, String filePath, int blockSize) throws IOException {
+        inputStream = YModemUtil.getInputStream(opener, filePath, blockSize);
+        fileSize = inputStream.available();
+    }
+
+    @Override
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long align(long offset) {
+        return offset;
+    }
+
+    @Override
+    public void seek(long offset) throws IOException {
+        long skipped;
+        while (position < offset && (skipped = inputStream.skip(offset - position)) > 0) {
+            position += skipped;
+        }
+    }
+
+    @Override
+    public byte[] next(int blockSize, byte sequence, PackagePool pool) throws IOException {
+        byte[] pack = PackagePool.acquire(pool, PackageEncoder.packageLength(blockSize));
+        int dataLength = inputStream.read(pack, 3, blockSize);
+        if (dataLength == -1) {
+            PackagePool.release(pool, pack);
+            return null;
+        }
+        position += dataLength;
+        PackageEncoder.encodeInPlace(pack, 0, dataLength, blockSize, sequence);
+        return pack;
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        int dataLength = inputStream.read(dst, offset, length);
+        if (dataLength > 0) {
+            position += dataLength;
+        }
+        return dataLength;
+    }
+
+    @Override
+    public void close() {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
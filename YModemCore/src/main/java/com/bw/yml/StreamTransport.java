@@ -0,0 +1,135 @@
+package com.bw.yml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * A link of a stream pair: an RFCOMM socket (RfcommTransport of the Android module), a TCP
+ * {@link Socket} or a serial port.
+ * A thread writes each package in one piece and flushes it, the write completes when the stream
+ * returns. Another thread blocks on the input stream, there is no polling of available().
+ */
+public class StreamTransport implements YModemTransport {
+
+    //one package on the wire, the next one waiting in the writer so the stream never runs dry
+    private static final int WRITE_CREDITS = 2;
+    private static final int TCP_MTU = 1460;
+    //full speed USB bulk packets, the usual serial bridge
+    private static final int SERIAL_MTU = 64;
+    //a write returns once the package is in the send buffer, keep it small so that is close to the wire
+    private static final int TCP_SEND_BUFFER = 4 * 1024;
+    private static final int READ_BUFFER = 2 * 1024;
+
+    private final InputStream input;
+    private final OutputStream output;
+    private final Closeable link;
+    private final int mtu;
+    private final TransportWriter writer;
+    private volatile Receiver receiver;
+    private Thread reader;
+    private volatile boolean closed = false;
+
+    /**
+     * @param link closed with the streams, may be null
+     * @param mtu  the largest piece the link carries in one go
+     */
+    public StreamTransport(InputStream input, OutputStream output, Closeable link, int mtu) {
+        this.input = input;
+        this.output = output;
+        this.link = link;
+        this.mtu = mtu;
+        this.writer = new TransportWriter("YModem-stream-writer", new TransportWriter.Sink() {
+            @Override
+            public void write(PooledPackage data) throws IOException {
+                StreamTransport.this.output.write(data.array(), 0, data.length());
+                StreamTransport.this.output.flush();
+            }
+        });
+        this.writer.start();
+    }
+
+    /**
+     * Connected TCP socket. Nagle is turned off, the responses are single bytes which must not wait
+     * for the next package, and the send buffer is kept small.
+     */
+    public static StreamTransport forSocket(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setSendBufferSize(TCP_SEND_BUFFER);
+        return new StreamTransport(socket.getInputStream(), socket.getOutputStream(), socket, TCP_MTU);
+    }
+
+    /**
+     * Streams of an opened serial port, e.g. of a USB serial driver
+     */
+    public static StreamTransport forSerial(InputStream input, OutputStream output) {
+        return new StreamTransport(input, output, null, SERIAL_MTU);
+    }
+
+    @Override
+    public void write(PooledPackage data, WriteCallback callback) {
+        writer.write(data, callback);
+    }
+
+    @Override
+    public int getWriteCredits() {
+        return WRITE_CREDITS;
+    }
+
+    @Override
+    public int getMtu() {
+        return mtu;
+    }
+
+    @Override
+    public synchronized void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+        //Read from the first receiver on, the bytes before that wait in the stream
+        if (reader == null && !closed) {
+            reader = new Thread("YModem-stream-reader") {
+                @Override
+                public void run() {
+                    readInput();
+                }
+            };
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private void readInput() {
+        byte[] buffer = new byte[READ_BUFFER];
+        try {
+            int read;
+            while (!closed && (read = input.read(buffer)) >= 0) {
+                Receiver target = receiver;
+                if (read > 0 && target != null) {
+                    target.onReceive(Arrays.copyOf(buffer, read));
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                Lg.f("Transport read failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.close();
+        try {
+            input.close();
+            output.close();
+            if (link != null) {
+                link.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.bw.yml;
+
+/**
+ * A timer util for counting the time past after we sent a package to the terminal
+ */
+
+class TimeOutHelper {
+
+    private final TimeoutScheduler scheduler;
+    private ITimeOut listener;
+    //the pending timeout, at most one at a time
+    private Timer timer;
+
+    TimeOutHelper(TimeoutScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    synchronized void startTimer(ITimeOut timeoutListener, long delay) {
+        stopTimer();
+        listener = timeoutListener;
+        timer = new Timer();
+        timer.cancellable = scheduler.schedule(timer, delay);
+    }
+
+    synchronized void stopTimer() {
+        if (timer != null) {
+            timer.cancellable.cancel();
+            timer = null;
+        }
+    }
+
+    synchronized void unRegisterListener() {
+        listener = null;
+    }
+
+    //Fire only if the timer is still the pending one, it may have been stopped while coming due
+    private synchronized ITimeOut takeListener(Timer fired) {
+        if (timer != fired) {
+            return null;
+        }
+        timer = null;
+        return listener;
+    }
+
+    private class Timer implements Runnable {
+        TimeoutScheduler.Cancellable cancellable;
+
+        @Override
+        public void run() {
+            ITimeOut timeoutListener = takeListener(this);
+            if (timeoutListener != null) {
+                timeoutListener.onTimeOut();
+            }
+        }
+    }
+
+    public interface ITimeOut {
+        void onTimeOut();
+    }
+
+}
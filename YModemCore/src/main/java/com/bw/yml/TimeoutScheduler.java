@@ -0,0 +1,21 @@
+package com.bw.yml;
+
+/**
+ * Runs the package timeouts of a transmission. {@link ExecutorTimeoutScheduler#getDefault()}
+ * is used unless the builder is given another one, e.g. a HandlerTimeoutScheduler of the Android module
+ * to get the timeouts on a Looper thread.
+ */
+public interface TimeoutScheduler {
+
+    /**
+     * Run the task once after delay ms
+     *
+     * @return handle for cancelling the task before it runs
+     */
+    Cancellable schedule(Runnable task, long delay);
+
+    interface Cancellable {
+        void cancel();
+    }
+
+}
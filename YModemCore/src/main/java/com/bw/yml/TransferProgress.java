@@ -0,0 +1,96 @@
+package com.bw.yml;
+
+/**
+ * Progress of the file being sent, handed to {@link YModemListener#onTransferProgress} at most
+ * every interval of {@link YModem.Builder#progressInterval}. The bytes are file data acknowledged
+ * by the receiver, without the headers and CRCs of the packages.
+ */
+public class TransferProgress {
+
+    private final String fileName;
+    private final long bytes;
+    private final long total;
+    private final long elapsed;
+    private final long instantRate;
+    private final long averageRate;
+    private final long eta;
+
+    TransferProgress(String fileName, long bytes, long total, long elapsed, long instantRate,
+                     long averageRate, long eta) {
+        this.fileName = fileName;
+        this.bytes = bytes;
+        this.total = total;
+        this.elapsed = elapsed;
+        this.instantRate = instantRate;
+        this.averageRate = averageRate;
+        this.eta = eta;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return bytes acknowledged, a resumed file starts at the offset it was resumed at
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return bytes of the file, -1 while unknown: a deflated file or a delta patch is only
+     * known once it has been read completely
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return 0 to 1, -1 while the total is unknown
+     */
+    public double getFraction() {
+        return total > 0 ? Math.min(1, (double) bytes / total) : total == 0 ? 1 : -1;
+    }
+
+    /**
+     * @return ms since the file data started
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return bytes per second over the last intervals
+     */
+    public long getInstantRate() {
+        return instantRate;
+    }
+
+    /**
+     * @return bytes per second since the file data started, a resumed offset doesn't count
+     */
+    public long getAverageRate() {
+        return averageRate;
+    }
+
+    /**
+     * @return ms left at the instant rate, -1 while unknown
+     */
+    public long getEta() {
+        return eta;
+    }
+
+    /**
+     * @return true for the last report of the file
+     */
+    public boolean isComplete() {
+        return total >= 0 && bytes >= total;
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " " + bytes + "/" + total + " " + instantRate + " B/s (average "
+                + averageRate + " B/s) eta " + eta + " ms";
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.bw.yml;
+
+import java.util.ArrayDeque;
+
+/**
+ * Packages on their way into a {@link YModemTransport}. At most the write credits of the transport
+ * are written at a time, the others wait here in order. Everything runs under the lock of the
+ * engine, the write completions take it as well. A completion coming from inside the write
+ * (a transport failing right away) is handled by the loop instead of going deeper.
+ * <p>
+ * The packages are buffers of the pool and the callbacks of the writes are reused, so a package
+ * goes into the transport without anything being allocated.
+ */
+class TransportQueue {
+
+    interface Written {
+        /* the package has left, or the transport failed to write it */
+        void onWritten(byte[] packageData, boolean success);
+    }
+
+    private final YModemTransport transport;
+    private final PackagePool pool;
+    private final Object lock;
+    //null if the engine doesn't care about the completions
+    private final Written written;
+    private final ArrayDeque<PooledPackage> waiting = new ArrayDeque<>();
+    //callbacks of the writes, one per write credit once the transport is busy
+    private final ArrayDeque<Completion> completions = new ArrayDeque<>();
+    private int pending = 0;
+    private boolean pumping = false;
+    //completions of writes from before clear() don't count any more
+    private int generation = 0;
+
+    TransportQueue(YModemTransport transport, PackagePool pool, Object lock, Written written) {
+        this.transport = transport;
+        this.pool = pool;
+        this.lock = lock;
+        this.written = written;
+    }
+
+    /**
+     * Queue the package, the queue takes a reference of it until it has been written. A package
+     * which is not a buffer of the pool is copied into one.
+     */
+    void write(byte[] packageData) {
+        synchronized (lock) {
+            byte[] owned = PackagePool.own(pool, packageData);
+            waiting.add(pool.retain(owned));
+            if (owned != packageData) {//Only the queue holds the copy
+                pool.release(owned);
+            }
+            pump();
+        }
+    }
+
+    /**
+     * Drop the packages not written yet, the ones in the transport are released when they complete
+     */
+    void clear() {
+        synchronized (lock) {
+            for (PooledPackage pooled : waiting) {
+                pooled.release();
+            }
+            waiting.clear();
+            pending = 0;
+            generation++;
+        }
+    }
+
+    private void pump() {
+        if (pumping) {
+            return;
+        }
+        pumping = true;
+        try {
+            writeWaiting();
+        } finally {
+            pumping = false;
+        }
+    }
+
+    private void writeWaiting() {
+        int credits = Math.max(1, transport.getWriteCredits());
+        while (pending < credits && !waiting.isEmpty()) {
+            Completion completion = completions.poll();
+            if (completion == null) {
+                completion = new Completion();
+            }
+            completion.pooled = waiting.poll();
+            completion.generation = generation;
+            pending++;
+            transport.write(completion.pooled, completion);
+        }
+    }
+
+    private class Completion implements YModemTransport.WriteCallback {
+        PooledPackage pooled;
+        int generation;
+
+        @Override
+        public void onWritten(boolean success) {
+            synchronized (lock) {
+                PooledPackage done = pooled;
+                boolean current = generation == TransportQueue.this.generation;
+                pooled = null;
+                completions.push(this);
+                if (current) {
+                    pending--;
+                    if (written != null) {
+                        written.onWritten(done.array(), success);
+                    }
+                    pump();
+                }
+                done.release();
+            }
+        }
+    }
+
+}
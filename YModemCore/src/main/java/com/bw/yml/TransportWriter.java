@@ -0,0 +1,82 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Thread writing the packages of a {@link YModemTransport} one after another into a blocking sink,
+ * the write completes when the sink returns. After a failed write or close() every write fails.
+ */
+class TransportWriter extends Thread {
+
+    interface Sink {
+        /* blocks until the package has been written */
+        void write(PooledPackage data) throws IOException;
+    }
+
+    private final Sink sink;
+    private final LinkedBlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    private volatile boolean closed = false;
+
+    TransportWriter(String name, Sink sink) {
+        super(name);
+        this.sink = sink;
+        setDaemon(true);
+    }
+
+    void write(PooledPackage data, YModemTransport.WriteCallback callback) {
+        queue.add(new Write(data, callback));
+        if (closed) {//The thread may be gone already
+            failAll();
+        }
+    }
+
+    void close() {
+        closed = true;
+        interrupt();
+        failAll();
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            Write write;
+            try {
+                write = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            boolean success = false;
+            try {
+                sink.write(write.data);
+                success = true;
+            } catch (IOException e) {
+                Lg.f("Transport write failed: " + e.getMessage());
+                closed = true;
+            }
+            write.callback.onWritten(success);
+        }
+        failAll();
+    }
+
+    private void failAll() {
+        List<Write> failed = new ArrayList<>();
+        queue.drainTo(failed);
+        for (Write write : failed) {
+            write.callback.onWritten(false);
+        }
+    }
+
+    private static class Write {
+        final PooledPackage data;
+        final YModemTransport.WriteCallback callback;
+
+        Write(PooledPackage data, YModemTransport.WriteCallback callback) {
+            this.data = data;
+            this.callback = callback;
+        }
+    }
+
+}
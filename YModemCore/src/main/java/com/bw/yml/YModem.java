@@ -0,0 +1,1361 @@
+package com.bw.yml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ========================================================================================
+ * THE YMODEM:
+ * Send 0x05>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>* 发送0x05
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< C
+ * SOH 00 FF "foo.c" "1064'' NUL[118] CRC CRC >>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< ACK
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< C
+ * STX 01 FE data[n] CRC CRC>>>>>>>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+ * ACK STX 02 FD data[n] CRC CRC>>>>>>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<
+ * ACK STX 03 FC data[n] CRC CRC>>>>>>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< ACK
+ * STX 04 FB data[n] CRC CRC>>>>>>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< ACK
+ * SOH 05 FA data[100] 1A[28] CRC CRC>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< ACK
+ * EOT >>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< NAK
+ * EOT>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< ACK
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< C
+ * SOH 00 FF NUL[128] CRC CRC >>>>>>>>>>>>>>>>>>>>>>>
+ * <<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<< ACK
+ * ===========================================================================================
+ *
+ * 传输协议 编辑 ArdWang
+ * 于 2018/6/5 15:49完成
+ *
+ * version v2.0.0
+ * version v2.0.1
+ *
+ * version v2.0.2
+ *
+ */
+
+public class YModem implements FileStreamThread.DataRaderListener {
+
+    private static final int STEP_HELLO = 0x00;
+    private static final int STEP_FILE_NAME = 0x01;
+    private static final int STEP_FILE_BODY = 0x02;
+    private static final int STEP_EOT = 0x03;
+    private static final int STEP_END = 0x04;
+    private int currStep = STEP_HELLO;
+    //between start() and stop(), the responses after a stop are dropped
+    private boolean running = false;
+
+    private static final byte ACK = 0x06; /* ACKnowlege */
+    private static final byte NAK = 0x15; /* Negative AcKnowlege */
+    private static final byte CAN = 0x18; /* CANcel character */
+    private static final byte ST_C = 'C';
+    private static final byte ST_G = 'G';
+    private static final byte ST_W = 'W';
+    private static final byte ST_R = 'R';
+    private static final byte ST_Z = 'Z';
+    private static final byte ST_D = 'D';
+    //header field offering the sliding window, followed by the window size
+    private static final String WINDOW_EXTENSION = "W";
+    //sequence numbers wrap at 256, the window must stay below half of that
+    private static final int MAX_WINDOW_SIZE = 127;
+    //header field offering to resume at the offset that follows, accepted with 'ACK C R' (or 'ACK W R')
+    private static final String RESUME_EXTENSION = "R";
+    //header field offering the file deflated (zlib), accepted with a trailing 'Z'
+    private static final String DEFLATE_EXTENSION = "Z";
+    //header field offering the delta patch of the file against the base "size:crc32", accepted with a trailing 'D'
+    private static final String DELTA_EXTENSION = "D";
+
+    private final SourceOpener opener;
+    //files of the batch, the null file name package is sent after the last one
+    private final List<YModemFile> files;
+    private int fileIndex = 0;
+    private final YModemListener listener;
+
+    private final TimeOutHelper timerHelper;
+    private final EncodedImageCache encodedImageCache;
+    //the file data is digested while it is read, a known md5 goes into a header without one
+    private final int digestAlgorithms;
+    private final DigestCache digestCache;
+    //package buffers lent to a YModemBufferListener or a transport, null for a new array per package
+    private final PackagePool packagePool;
+    //the packages go into the transport instead of onDataReady(), null without one
+    private final YModemTransport transport;
+    private final TransportQueue transportQueue;
+    //the stop-and-wait package whose timer starts once the transport has written it
+    private byte[] awaitingWrite = null;
+    //responses split over notifications or several in one of them
+    private final ResponseDecoder responseDecoder = new ResponseDecoder();
+    //how long an answer to the file name package may wait for an offered extension still on its way
+    private static final int FLAG_SETTLE_TIME = 50;
+    private FileStreamThread streamThread;
+    //the next file of the batch, opened and partly encoded while the current one is sent
+    private FileStreamThread nextStreamThread;
+    private static final int PREFETCH_PACKAGES = 4;
+
+    //file data of the current file acknowledged by the receiver, without the package headers and CRCs
+    private long bytesSent = 0;
+    //size of the current file, taken when its data starts, the reading thread closes the file at its end
+    private long fileTotal = 0;
+    //coalesced reports with the rates for onTransferProgress()
+    private final ProgressMeter progressMeter;
+    //package data of current sending, used for int case of fail
+    private byte[] currSending = null;
+    private int packageErrorTimes = 0;
+    //YModem-G, negotiated when the receiver answers 'G' instead of 'C'
+    private boolean streaming = false;
+    //sliding window, negotiated when the receiver answers 'ACK W' to a header offering it
+    private final int windowSize;
+    private boolean windowed = false;
+    private final SendWindow sendWindow = new SendWindow();
+    //resuming, the acknowledged offset of every file is journaled in this directory
+    private final File journalDirectory;
+    //peer the journals belong to, null for a single one
+    private final String journalKey;
+    private ResumeJournal journal;
+    private long resumeOffset = 0;
+    //deflate the files, each one is sent deflated if the receiver accepts it
+    private final boolean compress;
+    private boolean compressed = false;
+    //the delta patch of the file is sent instead of the file
+    private boolean patched = false;
+    private boolean patchOffered = false;
+    //payload bytes of the current file handed out by the reading thread, including a resumed offset
+    private volatile long payloadHandedOut = 0;
+    //resend budgets, timeouts and backoff of each phase
+    private final RetryPolicy retryPolicy;
+    //a package is being resent because the receiver was silent, its timeout gets the jitter
+    private boolean backedOff = false;
+    private final Random random = new Random();
+    private final TimeoutScheduler scheduler;
+    private TimeoutScheduler.Cancellable sessionDeadline;
+    //the timeout interval for a single package until the RTT has been measured
+    private static final int PACKAGE_TIME_OUT = 6000;
+    private static final long DEFAULT_PROGRESS_INTERVAL = 250;
+    private static final long DEFAULT_TIME_OUT_FLOOR = 200;
+    private static final long DEFAULT_TIME_OUT_CEILING = 20000;
+    //package timeout derived from the measured round-trip time
+    private final RttEstimator rttEstimator;
+    //send time of the stop-and-wait package in flight, -1 if it must not be sampled
+    private long sentAt = -1;
+    private static final int DEFAULT_BLOCK_SIZE = 1024;
+    //block size of this session, 128 (SOH) or 1024 (STX)
+    private final int blockSize;
+    //adaptive block size: 1K packages, 128 after repeated failures and back after a run of clean ACKs
+    private final boolean adaptiveSize;
+    private int currentBlockSize;
+    private int cleanAcks = 0;
+    //packages taken out of the failing 1K package when dropping to 128
+    private final ArrayDeque<byte[]> splitPackages = new ArrayDeque<>();
+    //the split packages took extra sequence numbers, the following packages are renumbered
+    private int sequenceShift = 0;
+    private static final int SMALL_BLOCK_SIZE = 128;
+    private static final int ADAPTIVE_DROP_FAILURES = 2;
+    private static final int ADAPTIVE_RAISE_ACKS = 32;
+
+    /**
+     * Construct of the YModemBLE,you may don't need the fileMD5 checking,remove it
+     * YMODESMLE的构造，您可能不需要FLIMD5检查，删除它
+     *
+     * @param files          files to be sent in one batch session, each one with its path, the file
+     *                       name for the terminal and the md5 for terminal checking 传输结束后的终端检查MD5
+     */
+    private YModem(SourceOpener opener, List<YModemFile> files, Integer size, boolean adaptiveSize,
+                   int windowSize, File journalDirectory, String journalKey, boolean compress, long timeoutFloor, long timeoutCeiling,
+                   TimeoutScheduler scheduler, RetryPolicy retryPolicy, EncodedImageCache encodedImageCache,
+                   int digestAlgorithms, DigestCache digestCache, long progressInterval, long progressBytes,
+                   YModemTransport transport, YModemListener listener) {
+        this.files = files;
+        this.compress = compress;
+        this.journalDirectory = journalDirectory;
+        this.journalKey = journalKey;
+        if (size == null || size == 0 || adaptiveSize) {
+            size = DEFAULT_BLOCK_SIZE;
+        }
+        this.blockSize = size;
+        this.adaptiveSize = adaptiveSize;
+        this.currentBlockSize = size;
+        this.windowSize = Math.min(Math.max(windowSize, 1), MAX_WINDOW_SIZE);
+        this.rttEstimator = new RttEstimator(PACKAGE_TIME_OUT, timeoutFloor, timeoutCeiling);
+        this.scheduler = scheduler != null ? scheduler : ExecutorTimeoutScheduler.getDefault();
+        this.timerHelper = new TimeOutHelper(this.scheduler);
+        this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.DEFAULT;
+        this.encodedImageCache = encodedImageCache;
+        this.digestAlgorithms = digestAlgorithms;
+        this.digestCache = digestCache;
+        this.progressMeter = new ProgressMeter(progressInterval, progressBytes);
+        this.opener = opener;
+        this.listener = listener;
+        this.transport = transport;
+        //The window, the read-ahead, the prefetch of the next file of a batch and the writes of the transport
+        this.packagePool = listener instanceof YModemBufferListener || transport != null
+                ? new PackagePool(this.windowSize + 2 * PREFETCH_PACKAGES + 2
+                + (transport != null ? transport.getWriteCredits() : 0)) : null;
+        this.transportQueue = transport != null
+                ? new TransportQueue(transport, packagePool, this, new TransportQueue.Written() {
+            @Override
+            public void onWritten(byte[] packageData, boolean success) {
+                YModem.this.onWritten(packageData, success);
+            }
+        }) : null;
+        if (transport != null) {
+            transport.setReceiver(new YModemTransport.Receiver() {
+                @Override
+                public void onReceive(byte[] data) {
+                    onReceiveData(data);
+                }
+            });
+        }
+    }
+
+    /**
+     * Start the transmission
+     */
+    public synchronized void start(String data) {
+        running = true;
+        cancelDeadline();
+        if (retryPolicy.getSessionDeadline() > 0) {
+            sessionDeadline = scheduler.schedule(deadlineTask, retryPolicy.getSessionDeadline());
+        }
+        sendData(data);
+    }
+
+    /**
+     * Stop the transmission when you don't need it or shut it down in an accident
+     * 停止传输当你不需要它或关闭它在一次事故
+     */
+    public synchronized void stop() {
+        running = false;
+        cancelDeadline();
+        responseDecoder.reset();
+        bytesSent = 0;
+        dropCurrSending();
+        packageErrorTimes = 0;
+        streaming = false;
+        windowed = false;
+        for (SendWindow.Entry entry : sendWindow.clear()) {
+            releasePackage(entry.data);
+        }
+        splitPackages.clear();
+        sequenceShift = 0;
+        cleanAcks = 0;
+        if (transportQueue != null) {//The transport itself belongs to the caller, it stays open
+            transportQueue.clear();
+        }
+        awaitingWrite = null;
+        if (journal != null) {//Keep the journal for resuming next time
+            journal.close();
+            journal = null;
+        }
+        if (streamThread != null) {
+            streamThread.release();
+        }
+        if (nextStreamThread != null) {
+            nextStreamThread.release();
+            nextStreamThread = null;
+        }
+        timerHelper.stopTimer();
+        timerHelper.unRegisterListener();
+    }
+
+    /**
+     * Method for the outer caller when received data from the terminal
+     * 接收来自终端的数据时外部呼叫者的方法
+     */
+    public synchronized void onReceiveData(byte[] respData) {
+        if (respData == null || respData.length == 0) {
+            Lg.f("The terminal do responsed something, but received nothing??");
+            return;
+        }
+        Lg.f("YModem received " + respData.length + " bytes.");
+        int offset = 0;
+        while (offset < respData.length && running) {
+            offset = responseDecoder.decode(respData, offset, respData.length, responseMode());
+            int response = responseDecoder.takeResponse();
+            if (response != ResponseDecoder.NONE) {
+                onResponse(response);
+            }
+        }
+        if (running && responseDecoder.isWaitingForFlags()) {//'ACK C' came, an offered 'R', 'Z' or 'D' may follow
+            timerHelper.startTimer(settleListener, FLAG_SETTLE_TIME);
+        }
+    }
+
+    //What the receiver may answer in the current step
+    private int responseMode() {
+        switch (currStep) {
+            case STEP_FILE_NAME:
+                return ResponseDecoder.MODE_HEADER;
+            case STEP_FILE_BODY:
+                return windowed ? ResponseDecoder.MODE_SEQUENCE
+                        : streaming ? ResponseDecoder.MODE_SINGLE : ResponseDecoder.MODE_BODY;
+            case STEP_END:
+                return ResponseDecoder.MODE_END;
+            default:
+                return ResponseDecoder.MODE_SINGLE;
+        }
+    }
+
+    //A whole response has come in
+    private void onResponse(int response) {
+        int step = currStep;
+        boolean sampled = sentAt >= 0 && currStep == STEP_FILE_BODY && !windowed;
+        long sent = sentAt;
+        long receivedAt = now();
+        byte[] writing = awaitingWrite;
+        //Stop the package timer, the handler may send the next package
+        timerHelper.stopTimer();
+        awaitingWrite = null;
+        sentAt = -1;
+        boolean handled;
+        switch (currStep) {
+            case STEP_HELLO:
+                handled = handleData(response);
+                break;
+            case STEP_FILE_NAME:
+                handled = handleFileName(response);
+                break;
+            case STEP_FILE_BODY:
+                handled = handleFileBody(response);
+                break;
+            case STEP_EOT:
+                handled = handleEOT(response);
+                break;
+            case STEP_END:
+                handled = handleEnd(response);
+                break;
+            default:
+                handled = false;
+                break;
+        }
+        if (handled) {
+            if (sampled) {
+                sampleRtt(receivedAt - sent);
+            }
+        } else if (running && currStep == step) {//Nothing applied, keep waiting for the package
+            awaitingWrite = writing;
+            sentAt = sent;
+            restartTimer(writing);
+        }
+    }
+
+    //Arm the timer again after a response which didn't apply to the package in flight
+    private void restartTimer(byte[] writing) {
+        if (currStep == STEP_FILE_BODY && windowed) {
+            startWindowTimer();
+        } else if (writing == null && !(currStep == STEP_FILE_BODY && streaming)
+                && (currSending != null || currStep == STEP_HELLO)) {
+            //A package still being written gets its timer from onWritten(), YModem-G has none.
+            //Between two files of a batch the 'C' is waited for.
+            timerHelper.startTimer(timeoutListener, packageTimeout());
+        }
+    }
+
+    /**
+     * ==============================================================================
+     * Methods for sending data begin
+     *
+     * 此方法更改如果没有第一包标注位就不需要发送数据
+     * =》直接发送FileName
+     *
+     * ==============================================================================
+     *
+     */
+    private void sendData(String data) {
+        fileIndex = 0;
+        streamThread = newStreamThread(files.get(fileIndex));
+        if(data != null) {
+            currStep = STEP_HELLO;
+            Lg.f("StartData!!!");
+            byte[] hello = YModemUtil.getYModelData(data);
+            sendPackageData(hello);
+        }else{
+            packageErrorTimes = 0;
+            sendFileName();
+        }
+    }
+
+    private void sendFileName() {
+        currStep = STEP_FILE_NAME;
+        YModemFile file = files.get(fileIndex);
+        Lg.f("sendFileName " + file.getFileName());
+        try {
+            long fileByteSize = streamThread.getFileByteSize();
+            String md5 = headerMd5(file);
+            List<String> extensions = new ArrayList<>();
+            if (windowSize > 1) {
+                extensions.add(WINDOW_EXTENSION + windowSize);
+            }
+            resumeOffset = 0;
+            if (journalDirectory != null) {
+                if (journal != null) {
+                    journal.close();
+                }
+                journal = ResumeJournal.open(journalDirectory, journalKey, file.getFileName(),
+                        ResumeJournal.fingerprint(file.getFilePath(), fileByteSize));
+                long offset = journal.getOffset();
+                if (offset > 0 && streamThread.isCompressed()) {//Resuming needs the offsets of the file itself
+                    streamThread.setCompressed(false);
+                }
+                offset = streamThread.alignOffset(offset);
+                if (offset > 0 && offset < fileByteSize
+                        && fitsHeader(file, fileByteSize, md5, extensions, RESUME_EXTENSION + offset)) {
+                    resumeOffset = offset;
+                    extensions.add(RESUME_EXTENSION + resumeOffset);
+                    Lg.f("Offer to resume " + file.getFileName() + " at " + resumeOffset);
+                }
+            }
+            if (streamThread.isCompressed()) {
+                if (fitsHeader(file, fileByteSize, md5, extensions, DEFLATE_EXTENSION)) {
+                    extensions.add(DEFLATE_EXTENSION);
+                } else {
+                    streamThread.setCompressed(false);
+                }
+            }
+            patchOffered = false;
+            if (file.getDeltaPatch() != null && resumeOffset == 0) {
+                try {
+                    String delta = DELTA_EXTENSION + DeltaPatch.baseMarker(file.getDeltaPatch());
+                    if (fitsHeader(file, fileByteSize, md5, extensions, delta)) {
+                        extensions.add(delta);
+                        patchOffered = true;
+                    }
+                } catch (IOException e) {//Send the whole file
+                    e.printStackTrace();
+                }
+            }
+            responseDecoder.offer((resumeOffset > 0 ? ResponseDecoder.FLAG_RESUME : 0)
+                    | (streamThread.isCompressed() ? ResponseDecoder.FLAG_DEFLATE : 0)
+                    | (patchOffered ? ResponseDecoder.FLAG_DELTA : 0));
+            byte[] fileNamePackage = file.getPacketImage() != null && extensions.isEmpty()
+                    && (md5 == null || md5.equals(file.getFileMd5()))
+                    ? file.getPacketImage().getHeaderPackage()
+                    : YModemUtil.getFileNamePackage(file.getFileName(), fileByteSize
+                    , md5, extensions.toArray(new String[0]));
+            sendPackageData(fileNamePackage);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    //An offer is only made if its field fits whole into the 128 bytes of the header
+    private boolean fitsHeader(YModemFile file, long fileByteSize, String md5, List<String> extensions,
+                               String field) {
+        if (PackageEncoder.fitsFileName(file.getFileName(), fileByteSize, md5,
+                extensions.toArray(new String[0]), field)) {
+            return true;
+        }
+        Lg.f("No room for " + field + " in the header of " + file.getFileName());
+        return false;
+    }
+
+    //The md5 of the caller, else the one of a file digested before, the receiver checks the file against it.
+    //An empty md5 of the caller asks for none, the header stays the same from one transmission to the next.
+    private String headerMd5(YModemFile file) {
+        FileDigest digest = streamThread.getDigest();
+        String md5 = file.getFileMd5();
+        if (md5 == null && digest != null && digest.getMd5() != null) {
+            return digest.getMd5();
+        }
+        return md5;
+    }
+
+    private FileStreamThread newStreamThread(YModemFile file) {
+        FileStreamThread thread = new FileStreamThread(opener, file, blockSize, encodedImageCache, packagePool, this);
+        thread.setCompressed(compress);
+        thread.setDigest(digestAlgorithms, digestCache);
+        return thread;
+    }
+
+    //Batch: open the next file and encode its first packages while this one is finishing
+    private void prefetchNextFile() {
+        if (fileIndex + 1 < files.size() && nextStreamThread == null) {
+            FileStreamThread next = newStreamThread(files.get(fileIndex + 1));
+            nextStreamThread = next;
+            next.prefetch(PREFETCH_PACKAGES);
+        }
+    }
+
+    //Batch: move on to the next file, its header goes out on the 'C' (or 'G') following the ACK of EOT
+    private void startNextFile() {
+        fileIndex++;
+        streamThread = nextStreamThread != null ? nextStreamThread : newStreamThread(files.get(fileIndex));
+        nextStreamThread = null;
+        bytesSent = 0;
+        dropCurrSending();
+        streaming = false;
+        windowed = false;
+        compressed = false;
+        patched = false;
+        sendWindow.clear();
+        currStep = STEP_HELLO;
+        //If the 'C' gets lost, the timeout sends the file name package anyway
+        timerHelper.startTimer(timeoutListener, packageTimeout());
+    }
+
+    private void startSendFileData(boolean resume, boolean deflate, boolean delta) {
+        currStep = STEP_FILE_BODY;
+        payloadHandedOut = 0;
+        compressed = deflate && streamThread.isCompressed();
+        if (!compressed) {//Declined, the plain file goes out
+            streamThread.setCompressed(false);
+        }
+        patched = delta;
+        streamThread.setPatched(patched);
+        if (resume) {
+            Lg.f("Resume at " + resumeOffset);
+            streamThread.seek(resumeOffset);
+            payloadHandedOut = resumeOffset;
+            bytesSent = resumeOffset;
+        }
+        if (journal != null) {
+            journal.update(payloadHandedOut);
+        }
+        Lg.f("startSendFileData" + (streaming ? " in YModem-G mode" : "")
+                + (windowed ? " with a window of " + windowSize : "") + (compressed ? " deflated" : "")
+                + (patched ? " as a delta patch" : ""));
+        //With a transport YModem-G is paced by its write credits, the thread waits for the writes
+        boolean paced = streaming && transport != null;
+        streamThread.setStreaming(streaming && !paced);
+        streamThread.setWindowSize(paced ? transport.getWriteCredits() : windowed ? windowSize : 1);
+        sequenceShift = 0;
+        splitPackages.clear();
+        if (isAdaptive()) {
+            streamThread.setBlockSize(currentBlockSize);
+        }
+        fileTotal = streamThread.getFileByteSize();
+        //The size of a deflated file or a patch is known once it has been read
+        progressMeter.start(files.get(fileIndex).getFileName(), bytesSent, compressed || patched ? -1 : fileTotal);
+        streamThread.start();
+    }
+
+    //Callback from the data reading thread when a data package is ready
+    @Override
+    public synchronized void onDataReady(byte[] data) {
+        if (windowed) {//The window has to know the offset before it counts as handed out
+            sendWindowedPackage(data, payloadHandedOut);
+            payloadHandedOut += data.length - 5;
+            return;
+        }
+        payloadHandedOut += data.length - 5;
+        if (streaming) {
+            streamPackageData(data);
+        } else {
+            sendPackageData(shiftSequence(data));
+        }
+    }
+
+    //EOT and the null file name package are resent on silence like any other package
+    private void sendEOT() {
+        currStep = STEP_EOT;
+        Lg.f("sendEOT");
+        sendPackageData(YModemUtil.getEOT());
+    }
+
+    private void sendEND() {
+        currStep = STEP_END;
+        Lg.f("sendEND");
+        try {
+            sendPackageData(YModemUtil.getEnd());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void sendPackageData(byte[] packageData) {
+        if (listener != null && packageData != null) {
+            //Control and split packages go into a buffer of the pool as well, a resend reuses it
+            packageData = PackagePool.own(packagePool, packageData);
+            if (packageData != currSending) {
+                dropCurrSending();
+            }
+            currSending = packageData;
+            //Start the timer, it will be cancelled when reponse received,
+            // or trigger the timeout and resend the current package data
+            //启动计时器，当收到回复时将被取消，
+            //或触发超时并重新发送当前包数据
+            //Only a package sent for the first time tells the RTT (Karn's algorithm)
+            if (transportQueue != null) {//Not before the transport has written it, see onWritten()
+                sentAt = -1;
+                awaitingWrite = packageData;
+            } else {
+                sentAt = packageErrorTimes == 0 ? now() : -1;
+                timerHelper.startTimer(timeoutListener, packageTimeout());
+            }
+            deliver(packageData);
+        }
+    }
+
+    //YModem-G: no per-block ACK and no per-block timer, the receiver sends CAN on any error
+    private void streamPackageData(byte[] packageData) {
+        if (listener != null && packageData != null) {
+            deliver(packageData);
+            //Never resent, only the transport's reference is left
+            releasePackage(packageData);
+            bytesSent += packageData.length - 5;
+            reportProgress();
+        }
+    }
+
+    //A transport or a YModemBufferListener takes a reference of the package, it is a buffer of the pool
+    private void deliver(byte[] packageData) {
+        if (transportQueue != null) {
+            transportQueue.write(packageData);
+        } else if (packagePool != null) {
+            ((YModemBufferListener) listener).onDataReady(packagePool.retain(packageData));
+        } else {
+            listener.onDataReady(packageData);
+        }
+    }
+
+    //The transport has written a package, its timeout starts now
+    private void onWritten(byte[] packageData, boolean success) {
+        if (currStep == STEP_FILE_BODY && windowed) {
+            SendWindow.Entry entry = sendWindow.get(packageData[1] & 0xFF);
+            if (entry == null || entry.data != packageData || entry.sentAt >= 0) {//Acknowledged already
+                return;
+            }
+            if (success) {
+                entry.sentAt = now();
+                startWindowTimer();
+            } else {
+                resendWindowed(entry, "package " + entry.sequence + " write failed");
+            }
+        } else if (currStep == STEP_FILE_BODY && streaming) {
+            if (success) {
+                streamThread.keepReading();
+            } else {//Nothing is resent in YModem-G mode
+                stop();
+                if (listener != null) {
+                    listener.onFailed("Write failed in YModem-G mode");
+                }
+            }
+        } else if (packageData == awaitingWrite) {
+            awaitingWrite = null;
+            if (success && responseDecoder.isWaitingForFlags()) {//Answered already, the settle timer runs
+                return;
+            }
+            if (success) {
+                sentAt = packageErrorTimes == 0 ? now() : -1;
+                timerHelper.startTimer(timeoutListener, packageTimeout());
+            } else {
+                handlePackageFail("package write failed");
+            }
+        }
+    }
+
+    //Drop the reference of the engine, the package won't be resent any more
+    private void releasePackage(byte[] packageData) {
+        PackagePool.release(packagePool, packageData);
+    }
+
+    private void dropCurrSending() {
+        releasePackage(currSending);
+        currSending = null;
+    }
+
+    private byte[] shiftSequence(byte[] packageData) {
+        if (sequenceShift != 0) {//The CRC only covers the payload, the header can be renumbered in place
+            byte sequence = (byte) (packageData[1] + sequenceShift);
+            packageData[1] = sequence;
+            packageData[2] = (byte) ~sequence;
+        }
+        return packageData;
+    }
+
+    //The adaptive block size only applies to stop-and-wait
+    private boolean isAdaptive() {
+        return adaptiveSize && !streaming && !windowed;
+    }
+
+    //A run of clean ACKs at 128, go back to 1K blocks
+    private void onCleanAck() {
+        if (isAdaptive() && currentBlockSize < blockSize && ++cleanAcks >= ADAPTIVE_RAISE_ACKS) {
+            Lg.f("Adaptive block size back to " + blockSize);
+            currentBlockSize = blockSize;
+            cleanAcks = 0;
+            streamThread.setBlockSize(currentBlockSize);
+        }
+    }
+
+    //A 1K package keeps failing, resend its payload as 128 packages and read 128 blocks from now on
+    private boolean dropBlockSize() {
+        cleanAcks = 0;
+        if (!isAdaptive() || currStep != STEP_FILE_BODY || !splitPackages.isEmpty()
+                || currSending == null || currSending.length != blockSize + 5
+                || blockSize == SMALL_BLOCK_SIZE || packageErrorTimes < ADAPTIVE_DROP_FAILURES) {
+            return false;
+        }
+        try {
+            long offset = payloadHandedOut - blockSize;
+            //The offsets of a deflated stream don't tell its length, the padding is split up as well
+            int dataLength = compressed ? blockSize
+                    : (int) Math.min(blockSize, streamThread.getFileByteSize() - offset);
+            splitPackages.addAll(YModemUtil.splitDataPackage(currSending, dataLength, SMALL_BLOCK_SIZE));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        dropCurrSending();
+        Lg.f("Adaptive block size down to " + SMALL_BLOCK_SIZE);
+        currentBlockSize = SMALL_BLOCK_SIZE;
+        streamThread.setBlockSize(currentBlockSize);
+        sequenceShift += splitPackages.size() - 1;
+        packageErrorTimes = 0;
+        sendPackageData(splitPackages.poll());
+        return true;
+    }
+
+    //Sliding window: the package joins the window, its timeout is tracked by the window timer
+    private void sendWindowedPackage(byte[] packageData, long offset) {
+        if (listener != null && packageData != null) {
+            sendWindow.add(packageData, transportQueue != null ? -1 : now(), offset);
+            deliver(packageData);
+            startWindowTimer();
+        }
+    }
+
+    //Arm the timer for the oldest package in flight
+    private void startWindowTimer() {
+        timerHelper.stopTimer();
+        long deadline = sendWindow.nextDeadline(windowTimeout());
+        if (deadline >= 0) {
+            timerHelper.startTimer(timeoutListener, Math.max(0, deadline - now()));
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    //The phase of the session for the retry policy
+    private RetryPolicy.Phase phase() {
+        switch (currStep) {
+            case STEP_FILE_NAME:
+                return RetryPolicy.Phase.HEADER;
+            case STEP_FILE_BODY:
+                return RetryPolicy.Phase.DATA;
+            case STEP_EOT:
+                return RetryPolicy.Phase.EOT;
+            case STEP_END:
+                return RetryPolicy.Phase.END;
+            default:
+                return RetryPolicy.Phase.HANDSHAKE;
+        }
+    }
+
+    private long packageTimeout() {
+        return retryPolicy.timeout(phase(), rttEstimator.getTimeout(), backedOff && packageErrorTimes > 0, random);
+    }
+
+    //The packages of a window time out one by one, no jitter
+    private long windowTimeout() {
+        return Math.max(rttEstimator.getTimeout(), retryPolicy.getMinTimeout(RetryPolicy.Phase.DATA));
+    }
+
+    private void cancelDeadline() {
+        if (sessionDeadline != null) {
+            sessionDeadline.cancel();
+            sessionDeadline = null;
+        }
+    }
+
+    private void sampleRtt(long rtt) {
+        rttEstimator.sample(rtt);
+        if (listener != null) {
+            listener.onRttUpdated(rttEstimator.getSmoothedRtt(), rttEstimator.getRttVariance(),
+                    rttEstimator.getTimeout());
+        }
+    }
+
+    /**
+     * ==============================================================================
+     * Method for handling the response of a package, they return false if the response
+     * doesn't apply and the package in flight is still waited for
+     * ==============================================================================
+     */
+    private boolean handleData(int character) {
+        if (character == ST_C || character == ST_G) {//Receive "C" or "G" for "HELLO"
+            Lg.f("Received '" + (char) character + "'");
+            packageErrorTimes = 0;
+            streaming = character == ST_G;
+            sendFileName();
+            return true;
+        }
+        return handleOthers(character);
+    }
+
+    //The file name package was responsed
+    private boolean handleFileName(int response) {
+        if (response == ResponseDecoder.HEADER_ACK) {
+            //A trailing 'R' accepts the offered resume offset, a trailing 'Z' the deflated file
+            //and a trailing 'D' the delta patch
+            int flags = responseDecoder.flags();
+            boolean resume = (flags & ResponseDecoder.FLAG_RESUME) != 0 && resumeOffset > 0;
+            boolean deflate = (flags & ResponseDecoder.FLAG_DEFLATE) != 0 && streamThread.isCompressed();
+            boolean delta = (flags & ResponseDecoder.FLAG_DELTA) != 0 && patchOffered;
+            int accepted = responseDecoder.argument();
+            if (accepted == ST_C) {//Receive 'ACK C' for file name
+                Lg.f("Received 'ACK C'");
+                packageErrorTimes = 0;
+                streaming = false;
+                windowed = false;
+                startSendFileData(resume, deflate, delta);
+            } else if (accepted == ST_W && windowSize > 1) {//Receive 'ACK W', the window was accepted
+                Lg.f("Received 'ACK W'");
+                packageErrorTimes = 0;
+                streaming = false;
+                windowed = true;
+                startSendFileData(resume, deflate, delta);
+            } else if (accepted == ST_G) {//Receive 'ACK G' or 'G', stream the file data
+                Lg.f("Received 'G'");
+                packageErrorTimes = 0;
+                streaming = true;
+                startSendFileData(resume, deflate, delta);
+            } else {//e.g. 'ACK W' to a window which wasn't offered
+                Lg.f("Ignored 'ACK " + (char) accepted + "'");
+                return false;
+            }
+            return true;
+        } else if (response == ST_C) {//Receive 'C' for file name, this package should be resent
+            Lg.f("Received 'C'");
+            handlePackageFail("Received 'C' without 'ACK' after sent file name");
+            return true;
+        }
+        return handleOthers(response);
+    }
+
+    private boolean handleFileBody(int response) {
+        if (streaming) {
+            return handleStreamingBody(response);
+        } else if (windowed) {
+            return handleWindowedBody(response);
+        } else if (response == ACK && currSending != null) {//Receive ACK for file data
+            Lg.f("Received 'ACK'");
+            packageErrorTimes = 0;
+            bytesSent += currSending.length - 5;
+            dropCurrSending();
+            updateJournal(payloadHandedOut - (long) splitPackages.size() * SMALL_BLOCK_SIZE);
+            reportProgress();
+            onCleanAck();
+            if (!splitPackages.isEmpty()) {
+                sendPackageData(splitPackages.poll());
+            } else {
+                streamThread.keepReading();
+            }
+            return true;
+        } else if (response == ST_C) {
+            Lg.f("Received 'C'");
+            //Receive C for file data, the ymodem cannot handle this circumstance, transmission failed...
+            handlePackageFail("Received 'C' after sent file data");
+            return true;
+        }
+        return handleOthers(response);
+    }
+
+    //YModem-G has no retransmission, anything but CAN is unexpected during the file body
+    private boolean handleStreamingBody(int response) {
+        if (response == CAN) {
+            return handleOthers(CAN);
+        } else if (response == NAK) {
+            Lg.f("Received 'NAK' in YModem-G mode");
+            stop();
+            if (listener != null) {
+                listener.onFailed("Received NAK in YModem-G mode");
+            }
+            return true;
+        }
+        Lg.f("Ignored a response in YModem-G mode");
+        return false;
+    }
+
+    //Sliding window: responses are 'ACK seq' or 'NAK seq', the window timer is armed again in any case
+    private boolean handleWindowedBody(int response) {
+        if (response == CAN) {
+            return handleOthers(CAN);
+        }
+        int sequence = responseDecoder.argument();
+        boolean handled = response == ResponseDecoder.SEQUENCE_ACK ? handleWindowAck(sequence)
+                : response != ResponseDecoder.SEQUENCE_NAK || handleWindowNak(sequence);
+        if (!handled) {//Failed, the session has been stopped
+            return true;
+        }
+        if (sendWindow.takeDrained()) {
+            sendEOT();
+        } else {
+            startWindowTimer();
+        }
+        return true;
+    }
+
+    private boolean handleWindowAck(int sequence) {
+        long base = sendWindow.base();
+        SendWindow.Entry entry = sendWindow.remove(sequence);
+        if (entry == null) {//Duplicated ACK of a package which has been resent
+            return true;
+        }
+        if (entry.errorTimes == 0 && entry.sentAt >= 0) {
+            sampleRtt(now() - entry.sentAt);
+        }
+        bytesSent += entry.data.length - 5;
+        releasePackage(entry.data);
+        updateJournal(sendWindow.acknowledgedOffset(payloadHandedOut));
+        reportProgress();
+        //Slots behind a package still in flight stay taken, the sequence numbers must not wrap into it
+        streamThread.keepReading((int) (sendWindow.base() - base));
+        return true;
+    }
+
+    //onProgress() on every acknowledged package, onTransferProgress() when a report is due
+    private void reportProgress() {
+        if (listener == null) {
+            return;
+        }
+        try {
+            //The padding of the last package is no file data, a deflated one may even be larger than the file
+            listener.onProgress(Math.min(bytesSent, fileTotal), fileTotal);
+            TransferProgress progress = progressMeter.update(bytesSent);
+            if (progress != null) {
+                listener.onTransferProgress(progress);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void updateJournal(long acknowledged) {
+        if (journal != null && !compressed && !patched) {
+            journal.update(acknowledged);
+        }
+    }
+
+    private boolean handleWindowNak(int sequence) {
+        SendWindow.Entry entry = sendWindow.get(sequence);
+        return entry == null || resendWindowed(entry, "Received NAK for package " + sequence);
+    }
+
+    //Resend a single package of the window, false if it has failed too many times
+    private boolean resendWindowed(SendWindow.Entry entry, String reason) {
+        entry.errorTimes++;
+        Lg.f("Fail:" + reason + " for " + entry.errorTimes + " times");
+        if (entry.errorTimes > retryPolicy.getRetries(RetryPolicy.Phase.DATA)) {
+            stop();
+            if (listener != null) {
+                listener.onFailed(reason);
+            }
+            return false;
+        }
+        entry.sentAt = transportQueue != null ? -1 : now();
+        if (listener != null) {
+            deliver(entry.data);
+        }
+        return true;
+    }
+
+    private boolean handleEOT(int response) {
+        if (response == ACK) {
+            Lg.f("Received 'ACK'");
+            packageErrorTimes = 0;
+            dropCurrSending();
+            TransferProgress progress = progressMeter.finish();
+            if (progress != null && listener != null) {
+                listener.onTransferProgress(progress);
+            }
+            if (journal != null) {//The file is complete, nothing left to resume
+                journal.delete();
+                journal = null;
+            }
+            if (fileIndex + 1 < files.size()) {
+                startNextFile();
+            } else {
+                sendEND();
+            }
+        } else if (response == ST_C) {//As we haven't received ACK, we should resend EOT
+            handlePackageFail("Received 'C' after sent EOT");
+        } else if(response==NAK){ //如果是NAK的话 再次发送一次EOT数据
+            sendEOT();
+        }else{
+            return handleOthers(response);
+        }
+        return true;
+    }
+
+    private boolean handleEnd(int response) {
+        if (response == ACK) {//The last ACK represents that the transmission has been finished, but we should validate the file
+            Lg.f("Received 'ACK'");
+            packageErrorTimes = 0;
+            dropCurrSending();
+            cancelDeadline();
+            //发送已经成功，完全结束
+            if (listener != null) {
+                listener.onSuccess();
+            }
+        } else if (response == ResponseDecoder.MD5_CHECKED) {//The file data has been checked,Well Done!
+            Lg.f("Received 'MD5_OK'");
+            stop();
+            if (listener != null) {
+                listener.onSuccess();
+            }
+        } else if (response == ResponseDecoder.MD5_FAILED) {//Oops...Transmission Failed...
+            Lg.f("Received 'MD5_ERR'");
+            stop();
+            if (listener != null) {
+                listener.onFailed("MD5 check failed!!!");
+            }
+        } else {
+            return handleOthers(response);
+        }
+        return true;
+    }
+
+    private boolean handleOthers(int character) {
+        if (character == NAK) {//We need to resend this package as the terminal failed when checking the crc
+            Lg.f("Received 'NAK'");
+            //The receiver is there, no backoff
+            backedOff = false;
+            handlePackageFail("Received NAK");
+        } else if (character == CAN) {//Some big problem occurred, transmission failed...
+            Lg.f("Received 'CAN'");
+            if (listener != null) {
+                listener.onFailed("Received CAN");
+            }
+            stop();
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    //Handle a failed package data ,resend it right away up to the retries of the phase.
+    //处理失败的包数据
+    //If still failed, then the transmission failed.
+    private void handlePackageFail(String reason) {
+        packageErrorTimes++;
+        Lg.f("Fail:" + reason + " for " + packageErrorTimes + " times");
+        if (dropBlockSize()) {
+            return;
+        }
+        if (packageErrorTimes <= retryPolicy.getRetries(phase())) {
+            sendPackageData(currSending);
+        } else {
+            //Still, we stop the transmission, release the resources
+            stop();
+            if (listener != null) {
+                listener.onFailed(reason);
+            }
+        }
+    }
+
+    /* The InputStream data reading thread was done */
+    @Override
+    public synchronized void onFinish() {
+        if (compressed || patched) {
+            progressMeter.setTotal(payloadHandedOut);
+        }
+        FileDigest digest = streamThread.getDigest();
+        if (digest != null && listener != null) {
+            listener.onFileDigest(files.get(fileIndex).getFileName(), digest);
+        }
+        //Prefetch before EOT, the ACK of EOT switches over to the next file
+        prefetchNextFile();
+        //With a window the last packages may still be in flight, EOT goes after their ACK
+        if (!windowed || sendWindow.markReadFinished()) {
+            sendEOT();
+        }
+    }
+
+    //The session took longer than the retry policy allows
+    private final Runnable deadlineTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (YModem.this) {
+                if (running && sessionDeadline != null) {
+                    Lg.f("------ session deadline ------");
+                    stop();
+                    if (listener != null) {
+                        listener.onFailed("Session deadline of " + retryPolicy.getSessionDeadline() + " ms exceeded");
+                    }
+                }
+            }
+        }
+    };
+
+    //No more extensions came after the answer to the file name package, take it as it is
+    private final TimeOutHelper.ITimeOut settleListener = new TimeOutHelper.ITimeOut() {
+        @Override
+        public void onTimeOut() {
+            synchronized (YModem.this) {
+                if (running && currStep == STEP_FILE_NAME && responseDecoder.flush()) {
+                    onResponse(responseDecoder.takeResponse());
+                }
+            }
+        }
+    };
+
+    //The timeout listener
+    private final TimeOutHelper.ITimeOut timeoutListener = new TimeOutHelper.ITimeOut() {
+        @Override
+        public void onTimeOut() {
+            //On the scheduler thread, the responses may come in at the same time
+            synchronized (YModem.this) {
+                Lg.f("------ time out ------");
+                if (windowed && currStep == STEP_FILE_BODY) {
+                    List<SendWindow.Entry> expired = sendWindow.expired(now(), windowTimeout());
+                    if (!expired.isEmpty()) {
+                        rttEstimator.backOff(retryPolicy.getMultiplier());
+                    }
+                    for (SendWindow.Entry entry : expired) {
+                        if (!resendWindowed(entry, "package " + entry.sequence + " timeout...")) {
+                            return;
+                        }
+                    }
+                    startWindowTimer();
+                } else if (currStep == STEP_HELLO && currSending == null) {//Batch: the 'C' for the next file got lost
+                    rttEstimator.backOff(retryPolicy.getMultiplier());
+                    sendFileName();
+                } else if (currSending != null) {
+                    rttEstimator.backOff(retryPolicy.getMultiplier());
+                    backedOff = true;
+                    handlePackageFail("package timeout...");
+                }
+            }
+        }
+    };
+
+    public static class Builder {
+        private SourceOpener opener;
+        private String filePath;
+        private String fileNameString;
+        private String fileMd5String;
+        private final List<YModemFile> files = new ArrayList<>();
+        private Integer size;
+        private boolean adaptiveSize = false;
+        private int windowSize = 1;
+        private File journalDirectory;
+        private String journalKey;
+        private boolean compress = false;
+        private long timeoutFloor = DEFAULT_TIME_OUT_FLOOR;
+        private long timeoutCeiling = DEFAULT_TIME_OUT_CEILING;
+        private TimeoutScheduler scheduler;
+        private RetryPolicy retryPolicy;
+        private EncodedImageCache encodedImageCache;
+        private int digestAlgorithms = 0;
+        private DigestCache digestCache = DigestCache.getDefault();
+        private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+        private long progressBytes = 0;
+        private YModemTransport transport;
+        private YModemListener listener;
+
+        public Builder with(SourceOpener opener) {
+            this.opener = opener;
+            return this;
+        }
+
+        public Builder filePath(String filePath) {
+            this.filePath = filePath;
+            return this;
+        }
+
+        public Builder fileName(String fileName) {
+            this.fileNameString = fileName;
+            return this;
+        }
+
+        /**
+         * Add a file to the batch, it is sent after the one given by filePath()/fileName()
+         * and the files added before it
+         */
+        public Builder addFile(YModemFile file) {
+            this.files.add(file);
+            return this;
+        }
+
+        /**
+         * Send all of the files in one batch session
+         */
+        public Builder files(List<YModemFile> files) {
+            this.files.addAll(files);
+            return this;
+        }
+
+        public Builder sendSize(Integer size){
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Start with 1K packages, drop to 128 after repeated NAKs or timeouts and go back to 1K
+         * after a run of clean ACKs, sendSize() is ignored. Only applies to stop-and-wait.
+         */
+        public Builder adaptiveSize(boolean adaptiveSize) {
+            this.adaptiveSize = adaptiveSize;
+            return this;
+        }
+
+        /**
+         * Keep up to windowSize packages in flight, the receiver has to accept it with 'ACK W'
+         * and answer every package with 'ACK seq' or 'NAK seq'. 1 (default) is plain stop-and-wait.
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Journal the acknowledged offset of every file in the directory. When a transmission
+         * fails, the next one offers the terminal to resume at that offset ("R" header field),
+         * a terminal accepting it answers 'ACK C R' and the file is read from that offset on.
+         */
+        public Builder resumeJournal(File directory) {
+            return resumeJournal(directory, null);
+        }
+
+        /**
+         * {@link #resumeJournal(File)} for one of several peers, sessions sending the same file to
+         * different peers at the same time keep their own journals in the directory
+         *
+         * @param peerId the peer or session the files go to, e.g. the address of the device
+         */
+        public Builder resumeJournal(File directory, String peerId) {
+            this.journalDirectory = directory;
+            this.journalKey = peerId;
+            return this;
+        }
+
+        /**
+         * Offer every file deflated (zlib, "Z" header field), a terminal accepting it answers with
+         * a trailing 'Z' and inflates the packages as they come. The header keeps the size of the
+         * file itself. A file the journal can resume is sent plain.
+         */
+        public Builder compress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        /**
+         * Bounds of the package timeout in ms, between them it follows the measured round-trip
+         * time (200 and 20000 by default). Before the first measurement it is 6000.
+         */
+        public Builder timeoutBounds(long floor, long ceiling) {
+            this.timeoutFloor = floor;
+            this.timeoutCeiling = ceiling;
+            return this;
+        }
+
+        /**
+         * Where the package timeouts run, {@link ExecutorTimeoutScheduler#getDefault()} by default.
+         * Use a HandlerTimeoutScheduler (Android module) to have them on a Looper thread.
+         */
+        public Builder timeoutScheduler(TimeoutScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Resends, phase timeouts, backoff and the session deadline, {@link RetryPolicy#DEFAULT}
+         * by default. There are presets for BLE, serial ports and TCP.
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Take the encoded packages from a cache shared with the other transmissions,
+         * e.g. {@link EncodedImageCache#getDefault()}, instead of encoding the files again.
+         * The packages keep the block size of the session, adaptiveSize() only splits the failing ones.
+         */
+        public Builder encodedImageCache(EncodedImageCache cache) {
+            this.encodedImageCache = cache;
+            return this;
+        }
+
+        /**
+         * Digest the file data while it is read, 0 (none) by default. The digest goes to
+         * {@link YModemListener#onFileDigest}, with FileDigest.MD5 a known md5 goes into the header
+         * unless checkMd5() has been called, checkMd5("") keeps the header without one.
+         *
+         * @param algorithms FileDigest.MD5, SHA256 and CRC32 or'ed together
+         */
+        public Builder digest(int algorithms) {
+            this.digestAlgorithms = algorithms;
+            return this;
+        }
+
+        /**
+         * Digests of the files sent before, {@link DigestCache#getDefault()} by default, null to
+         * digest every time
+         */
+        public Builder digestCache(DigestCache cache) {
+            this.digestCache = cache;
+            return this;
+        }
+
+        /**
+         * How often {@link YModemListener#onTransferProgress} is called: when interval ms have passed
+         * or bytes have been acknowledged since the last call, and for the first and the last
+         * bytes of a file. 250 ms and no byte interval by default.
+         *
+         * @param bytes 0 to go by the time alone
+         */
+        public Builder progressInterval(long interval, long bytes) {
+            this.progressInterval = interval;
+            this.progressBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Write the packages into the transport and take its bytes in, onDataReady() of the callback
+         * is not called and onReceiveData() is not needed. The packages are held back while the
+         * transport has no write credits left, a package timer starts when it has been written.
+         * stop() leaves the transport open.
+         */
+        public Builder transport(YModemTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        public Builder checkMd5(String fileMd5String) {
+            this.fileMd5String = fileMd5String;
+            return this;
+        }
+
+        public Builder callback(YModemListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public YModem build() {
+            List<YModemFile> batch = new ArrayList<>();
+            if (filePath != null) {
+                batch.add(new YModemFile(filePath, fileNameString, fileMd5String));
+            }
+            batch.addAll(files);
+            return new YModem(opener, batch, size, adaptiveSize, windowSize, journalDirectory, journalKey,
+                    compress, timeoutFloor, timeoutCeiling, scheduler, retryPolicy, encodedImageCache,
+                    digestAlgorithms, digestCache, progressInterval, progressBytes, transport, listener);
+        }
+
+        /**
+         * The options of this builder for the files and the callback of another session,
+         * a {@link ZModem} falling back to ymodem
+         */
+        YModem build(SourceOpener opener, List<YModemFile> batch, YModemListener listener) {
+            return new YModem(this.opener != null ? this.opener : opener, batch, size, adaptiveSize,
+                    windowSize, journalDirectory, journalKey, compress, timeoutFloor, timeoutCeiling, scheduler, retryPolicy,
+                    encodedImageCache, digestAlgorithms, digestCache, progressInterval, progressBytes,
+                    transport, listener);
+        }
+
+    }
+
+}
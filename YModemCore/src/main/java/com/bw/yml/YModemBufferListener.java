@@ -0,0 +1,18 @@
+package com.bw.yml;
+
+/**
+ * Listener taking the packages out of a bounded pool instead of a new array per package.
+ * Every package has to be given back with {@link PooledPackage#release()} when the transport
+ * has written it, it may be chunked straight from {@link PooledPackage#buffer()} meanwhile.
+ */
+public interface YModemBufferListener extends YModemListener {
+
+    /* the data package has been encapsulated, release it when it has been written */
+    void onDataReady(PooledPackage data);
+
+    @Override
+    default void onDataReady(byte[] data) {
+        onDataReady(PooledPackage.wrap(data));
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.bw.yml;
+
+import java.io.File;
+
+/**
+ * One file of a ymodem batch session
+ */
+public class YModemFile {
+
+    private final String filePath;
+    private final String fileName;
+    private final String fileMd5;
+    private final PacketImage packetImage;
+    private final File deltaPatch;
+
+    /**
+     * @param filePath absolute path of the file, "assets://" and "file://" are supported
+     * @param fileName file name for sending to the terminal, without an md5 unless the session
+     *                 digests the file with FileDigest.MD5
+     */
+    public YModemFile(String filePath, String fileName) {
+        this(filePath, fileName, null);
+    }
+
+    /**
+     * @param fileMd5 md5 for terminal checking after transmission finished, "" for none
+     */
+    public YModemFile(String filePath, String fileName, String fileMd5) {
+        this(filePath, fileName, fileMd5, null);
+    }
+
+    /**
+     * @param deltaPatch patch of the file against the image installed on the terminal, made by
+     *                   {@link DeltaPatch#create(File, File, File)}. It is offered in the "D" header
+     *                   field, a terminal without that image gets the whole file.
+     */
+    public YModemFile(String filePath, String fileName, String fileMd5, File deltaPatch) {
+        this.filePath = filePath;
+        this.fileName = fileName;
+        this.fileMd5 = fileMd5;
+        this.packetImage = null;
+        this.deltaPatch = deltaPatch;
+    }
+
+    /**
+     * A file compiled by {@link PacketImage#compile}, its packages are sent without encoding them again
+     */
+    public YModemFile(PacketImage packetImage) {
+        this.filePath = packetImage.getImageFile().getAbsolutePath();
+        this.fileName = packetImage.getFileName();
+        this.fileMd5 = packetImage.getFileMd5();
+        this.packetImage = packetImage;
+        this.deltaPatch = null;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getFileMd5() {
+        return fileMd5;
+    }
+
+    public PacketImage getPacketImage() {
+        return packetImage;
+    }
+
+    public File getDeltaPatch() {
+        return deltaPatch;
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.bw.yml;
+
+/**
+ * Listener of the transmission process
+ */
+public interface YModemListener {
+
+    /* the data package has been encapsulated */
+    void onDataReady(byte[] data);
+
+    /* the file data acknowledged, without the package headers, on every acknowledged package */
+    void onProgress(long currentSent, long total);
+
+    /* the file has been correctly sent to the terminal */
+    void onSuccess();
+
+    /* the task has failed with several remedial measures like retrying some times*/
+    void onFailed(String reason);
+
+    /* the round-trip time has been measured again, all in ms, timeout is the one for the next package */
+    default void onRttUpdated(long smoothedRtt, long rttVariance, long timeout) {
+    }
+
+    /* coalesced progress with the throughput and the time left, see YModem.Builder.progressInterval() */
+    default void onTransferProgress(TransferProgress progress) {
+    }
+
+    /* with YModem.Builder.digest(), the file data has been read completely and digested, or its digest was cached, before its EOT */
+    default void onFileDigest(String fileName, FileDigest digest) {
+    }
+
+}
\ No newline at end of file
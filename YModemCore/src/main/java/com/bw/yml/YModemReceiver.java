@@ -0,0 +1,721 @@
+package com.bw.yml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The receiving side of the ymodem protocol, the peer of {@link YModem}.
+ * <p>
+ * Bytes from the sender may be handed to {@link #onReceiveData(byte[])} in pieces of any size,
+ * packages are put together incrementally in a single package buffer and their payload is written
+ * straight to the target, nothing more than one package (plus the out-of-order packages of a
+ * sliding window) is kept in memory. With {@link Builder#saveTo(File)} each file of a batch
+ * is written to its own preallocated {@link FileChannel}, trimmed to the size from its header.
+ * The responses are handed out through {@link YModemReceiverListener#onDataReady(byte[])}.
+ * <p>
+ * When the sender offers a sliding window ("W" header field) and this receiver allows one,
+ * it answers 'ACK W' and acknowledges every package with 'ACK seq' or 'NAK seq'.
+ * <p>
+ * When the sender offers to resume at an offset ("R" header field), {@link Builder#acceptResume(boolean)}
+ * is set and the partly received file is still in the directory, the offer is accepted with a trailing 'R'
+ * and the file is continued at that offset. The offset must not go past the data a journal next to the
+ * file ("&lt;name&gt;.received.ymj") records as written, the data is forced to the disk before the journal.
+ * <p>
+ * When the sender offers the file deflated ("Z" header field) and {@link Builder#acceptCompressed(boolean)}
+ * is set, the offer is accepted with a trailing 'Z' and the packages are inflated as they come in.
+ * <p>
+ * When the sender offers a {@link DeltaPatch} ("D" header field with the size and CRC32 of its base),
+ * {@link Builder#acceptDelta(boolean)} is set and the file in the directory is that base, the offer
+ * is accepted with a trailing 'D'. The patch is applied while it comes in, into a ".delta" file
+ * which replaces the base once the result matched the checksum of the patch.
+ * <p>
+ * The data of every file is digested while it is written ({@link Builder#digest(int)}) and handed to
+ * {@link YModemReceiverListener#onFileDigest}. If the header has an md5, a file which doesn't match
+ * it is cancelled at its EOT. A resumed file is only partly written here, it isn't digested.
+ * <p>
+ * With {@link Builder#transport(YModemTransport)} the responses are written into the transport and
+ * the bytes of the sender are taken from it.
+ */
+public class YModemReceiver {
+
+    private static final byte SOH = 0x01; /* Start Of Header with data size :128*/
+    private static final byte STX = 0x02; /* Start Of Header with data size : 1024*/
+    private static final byte EOT = 0x04; /* End Of Transmission */
+    private static final byte ACK = 0x06; /* ACKnowlege */
+    private static final byte NAK = 0x15; /* Negative AcKnowlege */
+    private static final byte CAN = 0x18; /* CANcel character */
+    private static final byte ST_C = 'C';
+    private static final byte ST_W = 'W';
+    private static final byte ST_R = 'R';
+    private static final byte ST_Z = 'Z';
+    private static final byte ST_D = 'D';
+    private static final String WINDOW_EXTENSION = "W";
+    private static final String RESUME_EXTENSION = "R";
+    private static final String JOURNAL_KEY = "received";
+    private static final String DEFLATE_EXTENSION = "Z";
+    private static final String DELTA_EXTENSION = "D";
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final int PACKAGE_OVERHEAD = 5;
+
+    private final File directory;
+    private final OutputStream output;
+    private final int windowSize;
+    private final boolean acceptResume;
+    private final boolean acceptCompressed;
+    private final boolean acceptDelta;
+    private final int digestAlgorithms;
+    private final YModemReceiverListener listener;
+    private final YModemTransport transport;
+    private final PackagePool responsePool;
+    private final TransportQueue transportQueue;
+    private final CRC16 crc16 = new CRC16();
+
+    //package being put together from the incoming bytes
+    private final byte[] packageBuffer = new byte[1024 + PACKAGE_OVERHEAD];
+    private final ByteBuffer packageView = ByteBuffer.wrap(packageBuffer);
+    private int packageLength = 0;
+    private int packageReceived = 0;
+    //a single CAN is line noise (e.g. a zmodem ZRQINIT), two in a row cancel
+    private boolean canReceived = false;
+
+    private boolean receivingFile = false;
+    private boolean windowed = false;
+    private String fileName;
+    private long fileSize;
+    private long bytesReceived;
+    //answer to the file name package, repeated if the sender didn't get it
+    private byte[] headerResponse;
+    private boolean bodyStarted;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    //offset up to which the file has been written, for resuming it, null if it can't be resumed
+    private ResumeJournal journal;
+    //sequence number of the next package to be written
+    private int expectedSequence;
+    //packages received ahead of expectedSequence, sliding window only
+    private final HashMap<Integer, byte[]> pending = new HashMap<>();
+    //inflates the payload of a deflated file, null for a plain one
+    private Inflater inflater;
+    private final byte[] inflated = new byte[4 * 1024];
+    //applies a delta patch to the base, null for a plain file
+    private DeltaPatch.Applier applier;
+    private RandomAccessFile deltaBase;
+    //digests the file data as it is written, null for a resumed file
+    private FileDigest.Hasher hasher;
+    //md5 from the header, empty if the sender didn't give one
+    private String expectedMd5;
+    private final OutputStream patchedOutput = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            writeData(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeData(b, off, len);
+        }
+    };
+
+    private YModemReceiver(File directory, OutputStream output, int windowSize,
+                           boolean acceptResume, boolean acceptCompressed, boolean acceptDelta,
+                           int digestAlgorithms, YModemTransport transport, YModemReceiverListener listener) {
+        this.directory = directory;
+        this.output = output;
+        this.windowSize = windowSize;
+        this.acceptResume = acceptResume;
+        this.acceptCompressed = acceptCompressed;
+        this.acceptDelta = acceptDelta;
+        this.digestAlgorithms = digestAlgorithms;
+        this.listener = listener;
+        this.transport = transport;
+        //Responses are written out of a few pooled buffers, one per write credit and a spare
+        this.responsePool = transport != null ? new PackagePool(transport.getWriteCredits() + 1) : null;
+        this.transportQueue = transport != null ? new TransportQueue(transport, responsePool, this, null) : null;
+        if (transport != null) {
+            transport.setReceiver(new YModemTransport.Receiver() {
+                @Override
+                public void onReceive(byte[] data) {
+                    onReceiveData(data);
+                }
+            });
+        }
+    }
+
+    /**
+     * Start the session by asking the sender for the file name package
+     */
+    public void start() {
+        send(ST_C);
+    }
+
+    /**
+     * Stop receiving and close the current file
+     */
+    public void stop() {
+        receivingFile = false;
+        packageLength = 0;
+        pending.clear();
+        hasher = null;
+        endInflater();
+        closeFile();
+        closeDeltaBase();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Method for the outer caller when received data from the sender
+     */
+    public void onReceiveData(byte[] data) {
+        if (data != null) {
+            onReceiveData(data, 0, data.length);
+        }
+    }
+
+    /**
+     * Method for the outer caller when received data from the sender, the bytes don't need to
+     * be aligned to the packages
+     */
+    public void onReceiveData(byte[] data, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            if (packageLength == 0) {
+                byte b = data[i++];
+                boolean cancel = b == CAN && canReceived;
+                canReceived = b == CAN && !cancel;
+                if (b == SOH || b == STX) {
+                    packageBuffer[0] = b;
+                    packageReceived = 1;
+                    packageLength = (b == SOH ? 128 : 1024) + PACKAGE_OVERHEAD;
+                } else if (b == EOT) {
+                    handleEOT();
+                } else if (cancel) {
+                    stop();
+                    fail("Received CAN");
+                }
+                continue;
+            }
+            int count = Math.min(packageLength - packageReceived, end - i);
+            System.arraycopy(data, i, packageBuffer, packageReceived, count);
+            int before = packageReceived;
+            packageReceived += count;
+            i += count;
+            if (before < 3 && packageReceived >= 3
+                    && (packageBuffer[1] & 0xFF) != (~packageBuffer[2] & 0xFF)) {
+                //Not a package start, look for one again after the byte taken for it
+                byte[] skipped = Arrays.copyOfRange(packageBuffer, 1, packageReceived);
+                packageLength = 0;
+                onReceiveData(skipped, 0, skipped.length);
+            } else if (packageReceived == packageLength) {
+                packageLength = 0;
+                handlePackage(packageReceived - PACKAGE_OVERHEAD);
+            }
+        }
+    }
+
+    private void handlePackage(int size) {
+        int sequence = packageBuffer[1] & 0xFF;
+        int crc = ((packageBuffer[3 + size] & 0xFF) << 8) | (packageBuffer[4 + size] & 0xFF);
+        if (crc != crc16.calcCRC(packageBuffer, 3, size)) {
+            Lg.f("YModemReceiver crc error of package " + sequence);
+            if (windowed && receivingFile) {
+                send(NAK, (byte) sequence);
+            } else {
+                send(NAK);
+            }
+            return;
+        }
+
+        try {
+            if (!receivingFile && sequence == 0) {
+                handleHeader(size);
+            } else if (receivingFile && sequence == 0 && !bodyStarted) {
+                //Our answer to the header got lost
+                send(headerResponse);
+            } else if (receivingFile && windowed) {
+                handleWindowedBlock(sequence, size);
+            } else if (receivingFile) {
+                handleBlock(sequence, size);
+            } else {
+                send(NAK);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            stop();
+            send(CAN, CAN);
+            fail("Write failed: " + e.getMessage());
+        }
+    }
+
+    private void handleHeader(int size) throws IOException {
+        closeFile();
+        if (packageBuffer[3] == 0) {//The null file name package closes the session
+            send(ACK);
+            if (listener != null) {
+                listener.onSuccess();
+            }
+            return;
+        }
+        String[] fields = new String(packageBuffer, 3, size, PackageEncoder.FILE_NAME_CHARSET).split("\0");
+        fileName = fields[0];
+        fileSize = fields.length > 1 ? parseSize(fields[1]) : -1;
+        expectedMd5 = fields.length > 2 ? fields[2].trim() : "";
+        boolean windowOffered = false;
+        boolean deflateOffered = false;
+        String deltaBaseMarker = null;
+        long resumeOffset = 0;
+        for (int i = 3; i < fields.length; i++) {
+            if (fields[i].equals(DEFLATE_EXTENSION)) {
+                deflateOffered = true;
+            } else if (fields[i].startsWith(DELTA_EXTENSION) && fields[i].length() > 1) {
+                deltaBaseMarker = fields[i].substring(1);
+            } else if (fields[i].startsWith(WINDOW_EXTENSION) && fields[i].length() > 1) {
+                windowOffered = true;
+            } else if (fields[i].startsWith(RESUME_EXTENSION) && fields[i].length() > 1) {
+                resumeOffset = parseSize(fields[i].substring(1));
+            }
+        }
+        if (acceptResume && directory != null && fileSize >= 0) {
+            journal = ResumeJournal.open(directory, JOURNAL_KEY, fileName,
+                    fileName + ":" + fileSize + ":" + expectedMd5);
+        }
+        boolean resume = canResume(resumeOffset);
+        closeDeltaBase();
+        boolean delta = !resume && isDeltaBase(deltaBaseMarker);
+        openFile(delta);
+        windowed = windowOffered && windowSize > 1;
+        endInflater();
+        if (deflateOffered && acceptCompressed && !resume) {
+            inflater = new Inflater();
+        }
+        if (journal != null && (inflater != null || delta)) {//Only the plain file data can be resumed
+            journal.delete();
+            journal = null;
+        } else if (journal != null && !resume) {//The file is written again from the start
+            journal.commitWritten(0, channel);
+        }
+        if (delta) {
+            deltaBase = new RandomAccessFile(baseFile(), "r");
+            applier = new DeltaPatch.Applier(deltaBase, patchedOutput);
+        }
+        //The md5 of the header is checked whatever else is digested
+        int algorithms = digestAlgorithms | (expectedMd5.isEmpty() ? 0 : FileDigest.MD5);
+        hasher = algorithms != 0 && !resume ? new FileDigest.Hasher(algorithms) : null;
+        receivingFile = true;
+        bytesReceived = resume ? resumeOffset : 0;
+        expectedSequence = 1;
+        pending.clear();
+        Lg.f("YModemReceiver file " + fileName + " of " + fileSize + " bytes"
+                + (windowed ? " with a sliding window" : "")
+                + (resume ? " resumed at " + resumeOffset : "") + (inflater != null ? " deflated" : "")
+                + (delta ? " as a delta patch" : ""));
+        if (listener != null) {
+            listener.onFileStart(fileName, fileSize);
+        }
+        bodyStarted = false;
+        byte[] response = new byte[5];
+        int length = 0;
+        response[length++] = ACK;
+        response[length++] = windowed ? ST_W : ST_C;
+        if (resume) {
+            response[length++] = ST_R;
+        }
+        if (inflater != null) {
+            response[length++] = ST_Z;
+        }
+        if (delta) {
+            response[length++] = ST_D;
+        }
+        headerResponse = Arrays.copyOf(response, length);
+        send(headerResponse);
+    }
+
+    //Only take the patch when the file in the directory is the base it was made against
+    private boolean isDeltaBase(String baseMarker) {
+        if (!acceptDelta || directory == null || baseMarker == null || !baseFile().isFile()) {
+            return false;
+        }
+        try {
+            return baseMarker.equals(DeltaPatch.marker(baseFile()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private File baseFile() {
+        return new File(directory, new File(fileName).getName());
+    }
+
+    private void closeDeltaBase() {
+        applier = null;
+        if (deltaBase != null) {
+            try {
+                deltaBase.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            deltaBase = null;
+        }
+    }
+
+    //Only resume when the data before the offset has been written, the file itself is preallocated
+    private boolean canResume(long resumeOffset) {
+        if (journal == null || resumeOffset <= 0 || resumeOffset >= fileSize) {
+            return false;
+        }
+        File target = baseFile();
+        return target.exists() && target.length() >= resumeOffset && journal.getOffset() >= resumeOffset;
+    }
+
+    private void handleBlock(int sequence, int size) throws IOException {
+        if (sequence == expectedSequence) {
+            write(packageBuffer, 3, size);
+            expectedSequence = (expectedSequence + 1) & 0xFF;
+            send(ACK);
+        } else if (sequence == ((expectedSequence - 1) & 0xFF)) {//Duplicated, our ACK got lost
+            send(ACK);
+        } else {
+            send(NAK);
+        }
+    }
+
+    private void handleWindowedBlock(int sequence, int size) throws IOException {
+        int distance = (sequence - expectedSequence) & 0xFF;
+        if (distance == 0) {
+            write(packageBuffer, 3, size);
+            expectedSequence = (expectedSequence + 1) & 0xFF;
+            byte[] next;
+            while ((next = pending.remove(expectedSequence)) != null) {
+                write(next, 0, next.length);
+                expectedSequence = (expectedSequence + 1) & 0xFF;
+            }
+        } else if (distance < 128) {//Ahead of a missing package, keep it until the gap is filled
+            pending.put(sequence, Arrays.copyOfRange(packageBuffer, 3, 3 + size));
+        }
+        //Anything behind expectedSequence has been written already, ACK it again
+        send(ACK, (byte) sequence);
+    }
+
+    private void write(byte[] block, int offset, int size) throws IOException {
+        bodyStarted = true;
+        if (inflater != null) {
+            inflate(block, offset, size);
+        } else {
+            store(block, offset, size);
+        }
+        if (listener != null) {
+            listener.onProgress(bytesReceived, fileSize);
+        }
+    }
+
+    private void inflate(byte[] block, int offset, int size) throws IOException {
+        if (inflater.finished()) {//CPMEOF padding behind the end of the stream
+            return;
+        }
+        inflater.setInput(block, offset, size);
+        try {
+            int length;
+            while (!inflater.finished() && (length = inflater.inflate(inflated)) > 0) {
+                store(inflated, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Bad deflated data: " + e.getMessage());
+        }
+    }
+
+    private void store(byte[] block, int offset, int size) throws IOException {
+        if (applier != null) {//The patched file comes out through patchedOutput
+            applier.write(block, offset, size);
+        } else {
+            writeData(block, offset, size);
+        }
+    }
+
+    //Write the file data at bytesReceived
+    private void writeData(byte[] block, int offset, int size) throws IOException {
+        int length = size;
+        if (fileSize >= 0) {//Drop the CPMEOF padding of the last package
+            length = (int) Math.min(length, fileSize - bytesReceived);
+        }
+        if (length > 0) {
+            if (channel != null) {
+                ByteBuffer buffer = block == packageBuffer ? packageView : ByteBuffer.wrap(block);
+                buffer.limit(offset + length).position(offset);
+                long position = bytesReceived;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } else if (output != null) {
+                output.write(block, offset, length);
+            }
+            if (hasher != null) {
+                hasher.update(block, offset, length);
+            }
+            bytesReceived += length;
+            if (journal != null) {
+                journal.updateWritten(bytesReceived, channel);
+            }
+        }
+    }
+
+    private void endInflater() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * The previous file has been closed by handleHeader(), its journal belongs to this one already
+     *
+     * @param delta the patched file goes next to the base, which is still read
+     */
+    private void openFile(boolean delta) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        //Never let the sender pick a path outside of the directory
+        File target = baseFile();
+        file = new RandomAccessFile(delta ? new File(target.getPath() + DELTA_SUFFIX) : target, "rw");
+        //Preallocate, the file never has to grow while the packages are written
+        file.setLength(Math.max(fileSize, 0));
+        channel = file.getChannel();
+    }
+
+    //The patched file takes the place of the base
+    private void replaceBase() {
+        closeDeltaBase();
+        File target = baseFile();
+        File patched = new File(target.getPath() + DELTA_SUFFIX);
+        if (!patched.renameTo(target) && (!target.delete() || !patched.renameTo(target))) {
+            Lg.f("YModemReceiver failed to replace " + target);
+        }
+    }
+
+    private void closeFile() {
+        if (file != null) {
+            try {
+                if (fileSize < 0) {
+                    channel.truncate(bytesReceived);
+                }
+                if (journal != null) {//Keep the journal for resuming next time
+                    journal.commitWritten(bytesReceived, channel);
+                }
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            file = null;
+            channel = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void handleEOT() {
+        if (receivingFile && fileSize >= 0 && bytesReceived < fileSize) {
+            //An EOT byte in what is left of a broken package, the sender resends the package
+            Lg.f("YModemReceiver ignored EOT at " + bytesReceived + " of " + fileSize + " bytes");
+            return;
+        }
+        if (receivingFile) {
+            Lg.f("YModemReceiver received EOT");
+            receivingFile = false;
+            windowed = false;
+            //A deflated stream or a patch tells where it ends
+            boolean complete = (inflater == null || inflater.finished())
+                    && (applier == null || applier.isFinished());
+            if (!complete) {
+                Lg.f("YModemReceiver " + fileName + " is incomplete");
+                stop();
+                send(CAN, CAN);
+                fail("Incomplete file " + fileName);
+                return;
+            }
+            FileDigest digest = hasher != null ? hasher.finish() : null;
+            hasher = null;
+            if (digest != null && !expectedMd5.isEmpty() && !digest.matchesMd5(expectedMd5)) {
+                Lg.f("YModemReceiver " + fileName + " doesn't match its md5: " + digest);
+                stop();
+                send(CAN, CAN);
+                fail("MD5 mismatch of " + fileName);
+                return;
+            }
+            if (digest != null && listener != null) {
+                listener.onFileDigest(fileName, digest);
+            }
+            endInflater();
+            if (journal != null) {//The file is complete, nothing left to resume
+                journal.delete();
+                journal = null;
+            }
+            closeFile();
+            if (applier != null) {
+                replaceBase();
+            }
+            try {
+                if (output != null) {
+                    output.flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (listener != null) {
+                listener.onFileReceived(fileName);
+            }
+        }
+        send(ACK, ST_C);
+    }
+
+    private static long parseSize(String field) {
+        //Sizes are plain decimal, anything after a space (modification time etc.) is ignored
+        String size = field.trim().split(" ")[0];
+        try {
+            return Long.parseLong(size);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void fail(String reason) {
+        if (listener != null) {
+            listener.onFailed(reason);
+        }
+    }
+
+    private void send(byte response) {
+        byte[] data = PackagePool.acquire(responsePool, 1);
+        data[0] = response;
+        sendResponse(data);
+    }
+
+    private void send(byte response, byte argument) {
+        byte[] data = PackagePool.acquire(responsePool, 2);
+        data[0] = response;
+        data[1] = argument;
+        sendResponse(data);
+    }
+
+    private void send(byte[] response) {
+        byte[] data = PackagePool.acquire(responsePool, response.length);
+        System.arraycopy(response, 0, data, 0, response.length);
+        sendResponse(data);
+    }
+
+    //A listener gets a new array as before, with a transport the queue holds the only reference left
+    private void sendResponse(byte[] data) {
+        if (transportQueue != null) {
+            transportQueue.write(data);
+        } else if (listener != null) {
+            listener.onDataReady(data);
+        }
+        PackagePool.release(responsePool, data);
+    }
+
+    public static class Builder {
+        private File directory;
+        private OutputStream output;
+        private int windowSize = 1;
+        private boolean acceptResume = false;
+        private boolean acceptCompressed = false;
+        private boolean acceptDelta = false;
+        private int digestAlgorithms = FileDigest.MD5;
+        private YModemTransport transport;
+        private YModemReceiverListener listener;
+
+        /**
+         * Write every received file into the directory, under the name from its header
+         */
+        public Builder saveTo(File directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * Write the received data into the stream instead, all files of a batch one after another
+         */
+        public Builder output(OutputStream output) {
+            this.output = output;
+            return this;
+        }
+
+        /**
+         * Accept a sliding window offered by the sender, 1 (default) refuses it
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Accept the offer of the sender to resume a file at an offset, only with {@link #saveTo(File)}.
+         * The written offset of every file is journaled in the directory.
+         */
+        public Builder acceptResume(boolean acceptResume) {
+            this.acceptResume = acceptResume;
+            return this;
+        }
+
+        /**
+         * Accept a deflated file offered by the sender, it takes an Inflater with its 32 KB window
+         */
+        public Builder acceptCompressed(boolean acceptCompressed) {
+            this.acceptCompressed = acceptCompressed;
+            return this;
+        }
+
+        /**
+         * Accept a delta patch against the file in the directory, only with {@link #saveTo(File)}
+         */
+        public Builder acceptDelta(boolean acceptDelta) {
+            this.acceptDelta = acceptDelta;
+            return this;
+        }
+
+        /**
+         * Digests of the received files for {@link YModemReceiverListener#onFileDigest},
+         * FileDigest.MD5 by default, 0 for none. The md5 of a header is checked in any case.
+         *
+         * @param algorithms FileDigest.MD5, SHA256 and CRC32 or'ed together
+         */
+        public Builder digest(int algorithms) {
+            this.digestAlgorithms = algorithms;
+            return this;
+        }
+
+        /**
+         * Write the responses into the transport and take the packages from it, onDataReady()
+         * of the callback is not called and onReceiveData() is not needed
+         */
+        public Builder transport(YModemTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        public Builder callback(YModemReceiverListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public YModemReceiver build() {
+            return new YModemReceiver(directory, output, windowSize, acceptResume, acceptCompressed, acceptDelta,
+                    digestAlgorithms, transport, listener);
+        }
+
+    }
+
+}
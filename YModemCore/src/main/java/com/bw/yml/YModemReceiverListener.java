@@ -0,0 +1,30 @@
+package com.bw.yml;
+
+/**
+ * Listener of the receiving process
+ */
+public interface YModemReceiverListener {
+
+    /* the response has to be sent back to the sender */
+    void onDataReady(byte[] data);
+
+    /* the file name package of a new file has been received */
+    void onFileStart(String fileName, long fileSize);
+
+    /*just the file data progress*/
+    void onProgress(long currentReceived, long total);
+
+    /* one file of the batch has been received completely */
+    void onFileReceived(String fileName);
+
+    /* the data of a file has been digested as it was written, before onFileReceived() */
+    default void onFileDigest(String fileName, FileDigest digest) {
+    }
+
+    /* the session has been closed by the sender with the null file name package */
+    void onSuccess();
+
+    /* the task has failed, the sender has been cancelled or the data is broken*/
+    void onFailed(String reason);
+
+}
@@ -0,0 +1,52 @@
+package com.bw.yml;
+
+/**
+ * The link a {@link YModem} or a {@link YModemReceiver} talks over, instead of
+ * {@link YModemListener#onDataReady(byte[])} going out and onReceiveData() coming in.
+ * <p>
+ * The engine writes at most {@link #getWriteCredits()} packages at a time and holds the others back
+ * until a write completes, so nothing piles up in the transport. The package timer of the sender
+ * starts when the last byte of the package has left, not when it was handed over.
+ * <p>
+ * Adapters: {@link StreamTransport} (TCP socket, serial port), {@link PipeTransport} (in memory) and,
+ * in the Android module, GattTransport (BLE characteristic pair) and RfcommTransport (RFCOMM socket).
+ */
+public interface YModemTransport {
+
+    /**
+     * Write the package, it must not block. The callback comes exactly once, on any thread,
+     * from inside this call only if the write fails right away. The package is not reused until then.
+     */
+    void write(PooledPackage data, WriteCallback callback);
+
+    /**
+     * @return number of writes which may be pending at once, at least 1
+     */
+    int getWriteCredits();
+
+    /**
+     * @return the largest piece of data which goes over the link in one go, the transport splits
+     * larger packages on its own
+     */
+    int getMtu();
+
+    /**
+     * Where the bytes from the other side go, set when the engine is built
+     */
+    void setReceiver(Receiver receiver);
+
+    /**
+     * Stop the threads of the transport and close the link, pending writes fail
+     */
+    void close();
+
+    interface WriteCallback {
+        /* the last byte has left, or the write failed */
+        void onWritten(boolean success);
+    }
+
+    interface Receiver {
+        void onReceive(byte[] data);
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Util for encapsulating data package of ymodem protocol
+ * <p>
+ * Created by leonxtp on 2017/9/16.
+ * Modified by rnd on 2019/10/28
+ */
+
+class YModemUtil {
+
+    /*This is my concrete ymodem start signal, customise it to your needs*/
+    //private static final String Data = "Data BOOTLOADER";
+    private static final byte EOT = 0x04; /* End Of Transmission */
+    //private static byte[] mInitBytes;
+
+    /*
+     * Get the first package data for hello with a terminal
+     */
+//    static byte[] getYModelData() {
+//        return Data.getBytes();
+//    }
+
+    /**
+     * Get the first package data for hello with a terminal
+     * 2024
+     * 3/13更新 修改成动态的 调用采用
+     * String customData = "Customized Data";
+     * byte[] dataBytes = getYModelData(customData);
+     */
+    static byte[] getYModelData(String dynamicData) {
+        return dynamicData.getBytes();
+    }
+
+
+    /**
+     * Get the file name package data
+     *
+     * @param fileNameString file name in String
+     * @param fileByteSize   file byte size
+     * @param fileMd5String  the md5 of the file in String
+     * @param extensions     optional fields appended after the md5, each one separated by NUL,
+     *                       receivers that don't know them stop reading at the md5
+     *
+     */
+    static byte[] getFileNamePackage(String fileNameString,
+                                            long fileByteSize,
+                                            String fileMd5String,
+                                            String... extensions) throws IOException {
+        byte[] packageData = new byte[PackageEncoder.packageLength(128)];
+        PackageEncoder.encodeFileName(fileNameString, fileByteSize, fileMd5String, extensions, packageData, 0);
+        return packageData;
+    }
+
+    /**
+     * Get a encapsulated package data block
+     *
+     * @param block      byte data array
+     * @param dataLength the actual content length in the block without 0 filled in it.
+     * @param sequence   the package serial number
+     * @return a encapsulated package data block
+     */
+    static byte[] getDataPackage(byte[] block, int dataLength, byte sequence) throws IOException {
+        // 包头类型：SOH (128字节) 或 STX (1024字节)，不足的数据填充 CPMEOF，最后是CRC校验
+        byte[] packageData = new byte[PackageEncoder.packageLength(block.length)];
+        PackageEncoder.encode(block, 0, dataLength, block.length, sequence, packageData, 0);
+        return packageData;
+    }
+
+
+    /**
+     * Split the payload of a package into smaller packages, numbered on from its sequence
+     *
+     * @param packageData an encapsulated package
+     * @param dataLength  the actual content length in the package, blocks of padding only are left out
+     * @param size        block size of the new packages, 128 for SOH
+     */
+    static List<byte[]> splitDataPackage(byte[] packageData, int dataLength, int size) throws IOException {
+        List<byte[]> packages = new ArrayList<>();
+        byte sequence = packageData[1];
+        int payload = packageData.length - 5;
+        for (int offset = 0; offset < payload && (offset == 0 || offset < dataLength); offset += size) {
+            byte[] split = new byte[PackageEncoder.packageLength(size)];
+            PackageEncoder.encode(packageData, 3 + offset, size, size, sequence++, split, 0);
+            packages.add(split);
+        }
+        return packages;
+    }
+
+    /**
+     * Get the EOT package
+     */
+    static byte[] getEOT() {
+        return new byte[]{EOT};
+    }
+
+    /**
+     * Get the Last package
+     */
+    static byte[] getEnd() throws IOException {
+        byte[] packageData = new byte[PackageEncoder.packageLength(128)];
+        PackageEncoder.encodeEnd(packageData, 0);
+        return packageData;
+    }
+
+    /**
+     * Get InputStream from Assets, you can customize it from the other sources
+     *
+     * @param fileAbsolutePath absolute path of the file in asstes
+     * @param blockSize        block size of the session, used for sizing the read buffer
+     */
+    static InputStream getInputStream(SourceOpener opener, String fileAbsolutePath, int blockSize) throws IOException {
+        return new InputStreamSource(blockSize).getStream(opener, fileAbsolutePath);
+    }
+
+}
@@ -0,0 +1,684 @@
+package com.bw.yml;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ZMODEM sender with the same transport callbacks as {@link YModem}: the data of a file is
+ * streamed in subpackets with a 32 bit CRC, without a turnaround per block. The receiver asks
+ * for the data again from a position with ZRPOS, which also resumes a file the receiver kept
+ * from an interrupted transmission (crash recovery).
+ * <p>
+ * The session starts with ZRQINIT. A peer answering 'C', 'G' or NAK, or not answering at all,
+ * is a ymodem receiver: the files are then sent by the {@link YModem} of {@link Builder#fallback}.
+ * <p>
+ * Created by the Builder like YModem, feed the responses of the terminal into {@link #onReceiveData(byte[])}.
+ */
+public class ZModem {
+
+    private static final int STEP_INIT = 0x00;
+    private static final int STEP_FILE = 0x01;
+    private static final int STEP_DATA = 0x02;
+    private static final int STEP_EOF = 0x03;
+    private static final int STEP_FIN = 0x04;
+    private static final int STEP_DONE = 0x05;
+    private int currStep = STEP_INIT;
+
+    private static final byte ST_C = 'C';
+    private static final byte ST_G = 'G';
+    private static final byte NAK = 0x15;
+    private static final byte[] RZ = {'r', 'z', '\r'};
+    private static final byte[] OVER_AND_OUT = {'O', 'O'};
+    //ZRQINIT sent before falling back to ymodem
+    private static final int MAX_INIT_TIMES = 3;
+    private static final int MAX_ERROR_TIMES = 10;
+    private static final int MAX_FIN_TIMES = 3;
+    private static final long DEFAULT_TIME_OUT = 6000;
+    private static final int DEFAULT_SUBPACKET_SIZE = 1024;
+    private static final int DEFAULT_WINDOW_SIZE = 32 * 1024;
+    private static final long DEFAULT_PROGRESS_INTERVAL = 250;
+
+    private final SourceOpener opener;
+    private final List<YModemFile> files;
+    private int fileIndex = 0;
+    private final YModemListener listener;
+    //coalesced reports with the rates for onTransferProgress()
+    private final ProgressMeter progressMeter;
+    private final TimeOutHelper timerHelper;
+    private final long timeout;
+    private final int subpacketSize;
+    private final int windowSize;
+    private final YModem.Builder fallbackBuilder;
+    private YModem fallback;
+
+    private final ZModemHeaderReader reader = new ZModemHeaderReader(new ZModemHeaderReader.Callback() {
+        @Override
+        public void onHeader(int type, long position, int flags) {
+            handleHeader(type, position, flags);
+        }
+
+        @Override
+        public void onOther(int b) {
+            handleOther(b);
+        }
+
+        @Override
+        public void onCancel() {
+            Lg.f("Received 'CAN'");
+            fail("Received CAN");
+        }
+    });
+    //negotiated by ZRINIT
+    private ZModemFrames frames;
+    private int effectiveWindow;
+    private int ackInterval;
+    private boolean overlapped;
+
+    //the file being sent, opened for its size and handed over to the data thread
+    private PackageSource source;
+    private long fileSize;
+    private DataThread dataThread;
+    //position up to which the receiver has confirmed the data
+    private long acknowledged = 0;
+    //the data thread starts over at restartPosition with a ZDATA header
+    private boolean restart = false;
+    private long restartPosition = 0;
+    private boolean eofSent = false;
+    //the last header frame, resent on timeout or ZNAK
+    private byte[] lastFrame;
+    private int initTimes = 0;
+    private int errorTimes = 0;
+    private long errorPosition = -1;
+
+    private ZModem(SourceOpener opener, List<YModemFile> files, int subpacketSize, int windowSize, long timeout,
+                   TimeoutScheduler scheduler, long progressInterval, long progressBytes,
+                   YModem.Builder fallbackBuilder, YModemListener listener) {
+        this.opener = opener;
+        this.files = files;
+        this.subpacketSize = subpacketSize;
+        this.windowSize = windowSize;
+        this.timeout = timeout;
+        this.timerHelper = new TimeOutHelper(scheduler != null ? scheduler : ExecutorTimeoutScheduler.getDefault());
+        this.fallbackBuilder = fallbackBuilder;
+        this.listener = listener;
+        this.progressMeter = new ProgressMeter(progressInterval, progressBytes);
+    }
+
+    /**
+     * Start the transmission
+     */
+    public synchronized void start() {
+        fileIndex = 0;
+        initTimes = 0;
+        currStep = STEP_INIT;
+        reader.reset();
+        Lg.f("ZModem start");
+        byte[] init = ZModemFrames.hexHeader(ZModemFrames.ZRQINIT, ZModemFrames.position(0));
+        byte[] frame = new byte[RZ.length + init.length];
+        System.arraycopy(RZ, 0, frame, 0, RZ.length);
+        System.arraycopy(init, 0, frame, RZ.length, init.length);
+        sendFrame(frame);
+    }
+
+    /**
+     * Stop the transmission when you don't need it or shut it down in an accident
+     */
+    public synchronized void stop() {
+        timerHelper.stopTimer();
+        timerHelper.unRegisterListener();
+        dataThread = null;
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+        notifyAll();
+        if (fallback != null) {
+            fallback.stop();
+        }
+    }
+
+    /**
+     * Method for the outer caller when received data from the terminal
+     */
+    public void onReceiveData(byte[] respData) {
+        YModem ymodem;
+        synchronized (this) {
+            ymodem = fallback;
+            if (ymodem == null) {
+                if (respData != null && respData.length > 0) {
+                    reader.feed(respData);
+                }
+                return;
+            }
+        }
+        ymodem.onReceiveData(respData);
+    }
+
+    /**
+     * @return true if the peer didn't answer ZRINIT and the files go by ymodem
+     */
+    public synchronized boolean isFallenBack() {
+        return fallback != null;
+    }
+
+    private void handleOther(int b) {
+        if (fallback == null && currStep == STEP_INIT && (b == ST_C || b == ST_G || b == NAK)) {
+            Lg.f("Received '" + (char) b + "' for ZRQINIT");
+            fallBack();
+        }
+    }
+
+    private void handleHeader(int type, long position, int flags) {
+        if (fallback != null || currStep == STEP_DONE) {
+            return;
+        }
+        timerHelper.stopTimer();
+        switch (type) {
+            case ZModemFrames.ZRINIT:
+                handleZRInit(position, flags);
+                break;
+            case ZModemFrames.ZRPOS:
+                handleZRPos(position);
+                break;
+            case ZModemFrames.ZACK:
+                handleZAck(position);
+                break;
+            case ZModemFrames.ZSKIP:
+                Lg.f("Received ZSKIP");
+                if (currStep == STEP_FILE) {
+                    nextFile();
+                }
+                break;
+            case ZModemFrames.ZNAK://The header got corrupted
+                Lg.f("Received ZNAK");
+                retry("Received ZNAK");
+                break;
+            case ZModemFrames.ZFIN:
+                handleZFin();
+                break;
+            case ZModemFrames.ZABORT:
+            case ZModemFrames.ZFERR:
+            case ZModemFrames.ZCAN:
+                Lg.f("Received abort " + type);
+                fail("Received abort " + type);
+                break;
+            default:
+                Lg.f("Ignored header " + type);
+                restartTimer();
+                break;
+        }
+    }
+
+    private void handleZRInit(long position, int flags) {
+        Lg.f("Received ZRINIT");
+        if (currStep == STEP_INIT) {
+            boolean crc32 = (flags & ZModemFrames.CANFC32) != 0;
+            //A receiver which can't read while writing to disk gets ZCRCW at every ack point
+            overlapped = (flags & ZModemFrames.CANFDX) != 0 && (flags & ZModemFrames.CANOVIO) != 0;
+            int receiverBuffer = (int) (position & 0xFFFF);
+            effectiveWindow = windowSize;
+            if (receiverBuffer > 0 && (effectiveWindow == 0 || receiverBuffer < effectiveWindow)) {
+                effectiveWindow = receiverBuffer;
+            }
+            ackInterval = effectiveWindow > 0 ? Math.max(subpacketSize, effectiveWindow / 4) : 0;
+            if (!overlapped && effectiveWindow > 0) {
+                ackInterval = effectiveWindow;
+            }
+            frames = new ZModemFrames(crc32, (flags & ZModemFrames.ESCCTL) != 0);
+            Lg.f("ZModem with " + (crc32 ? "CRC32" : "CRC16") + ", window " + effectiveWindow);
+            sendFile();
+        } else if (currStep == STEP_FILE) {//ZFILE got lost
+            retry("Received ZRINIT for ZFILE");
+        } else if (currStep == STEP_EOF) {//The file is complete
+            progress(fileSize);
+            nextFile();
+        } else {
+            restartTimer();
+        }
+    }
+
+    private void handleZRPos(long position) {
+        Lg.f("Received ZRPOS " + position);
+        if (currStep == STEP_FILE) {
+            errorTimes = 0;
+            errorPosition = -1;
+            startData(position);
+        } else if (currStep == STEP_DATA || currStep == STEP_EOF) {
+            //The same position again and again, the link doesn't get it through
+            if (position == errorPosition && ++errorTimes >= MAX_ERROR_TIMES) {
+                fail("ZRPOS " + position + " for " + errorTimes + " times");
+                return;
+            } else if (position != errorPosition) {
+                errorPosition = position;
+                errorTimes = 1;
+            }
+            reposition(position);
+        } else {
+            restartTimer();
+        }
+    }
+
+    private void handleZAck(long position) {
+        if (currStep == STEP_DATA && position > acknowledged && position <= fileSize) {
+            acknowledged = position;
+            errorTimes = 0;
+            errorPosition = -1;
+            progress(acknowledged);
+            notifyAll();
+        } else if (currStep == STEP_EOF) {
+            restartTimer();
+        }
+    }
+
+    private void handleZFin() {
+        Lg.f("Received ZFIN");
+        if (currStep == STEP_FIN) {
+            currStep = STEP_DONE;
+            deliver(OVER_AND_OUT);
+            stop();
+            if (listener != null) {
+                listener.onSuccess();
+            }
+        }
+    }
+
+    private void sendFile() {
+        closeFile();
+        YModemFile file = files.get(fileIndex);
+        Lg.f("sendFile " + file.getFileName());
+        try {
+            source = FileStreamThread.openSource(opener, file, subpacketSize, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail("Can't open " + file.getFilePath());
+            return;
+        }
+        fileSize = source.getFileSize();
+        //name, size, mtime and mode (octal), serial number, files left
+        String info = file.getFileName() + "\0" + fileSize + " 0 0 0 " + (files.size() - fileIndex);
+        byte[] infoBytes = (info + "\0").getBytes(Charset.forName("UTF-8"));
+        byte[] flags = new byte[4];
+        flags[ZModemFrames.ZF0] = ZModemFrames.ZCBIN;
+        currStep = STEP_FILE;
+        errorTimes = 0;
+        sendFrame(frames.binaryHeader(ZModemFrames.ZFILE, flags)
+                .dataSubpacket(infoBytes, 0, infoBytes.length, ZModemFrames.ZCRCW).take());
+    }
+
+    private void startData(long position) {
+        currStep = STEP_DATA;
+        acknowledged = Math.min(position, fileSize);
+        progressMeter.start(files.get(fileIndex).getFileName(), acknowledged, fileSize);
+        progress(acknowledged);
+        restart = true;
+        restartPosition = acknowledged;
+        eofSent = false;
+        dataThread = new DataThread(source);
+        source = null;
+        dataThread.start();
+    }
+
+    private void reposition(long position) {
+        currStep = STEP_DATA;
+        acknowledged = Math.min(position, fileSize);
+        restart = true;
+        restartPosition = acknowledged;
+        eofSent = false;
+        notifyAll();
+    }
+
+    private void nextFile() {
+        closeFile();
+        fileIndex++;
+        if (fileIndex < files.size()) {
+            sendFile();
+        } else {
+            currStep = STEP_FIN;
+            errorTimes = 0;
+            Lg.f("sendFIN");
+            sendFrame(ZModemFrames.hexHeader(ZModemFrames.ZFIN, ZModemFrames.position(0)));
+        }
+    }
+
+    //The data thread of the previous file quits, it closes its source
+    private void closeFile() {
+        dataThread = null;
+        notifyAll();
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+    }
+
+    //Resend the last header, up to MAX_ERROR_TIMES times
+    private void retry(String reason) {
+        if (++errorTimes >= MAX_ERROR_TIMES) {
+            fail(reason + " for " + errorTimes + " times");
+        } else if (currStep == STEP_DATA) {
+            reposition(acknowledged);
+        } else if (lastFrame != null) {
+            sendFrame(lastFrame);
+        }
+    }
+
+    private void fallBack() {
+        timerHelper.stopTimer();
+        if (fallbackBuilder == null) {
+            fail("The receiver doesn't answer ZRINIT");
+            return;
+        }
+        Lg.f("Fall back to YModem");
+        fallback = fallbackBuilder.build(opener, files, listener);
+        fallback.start(null);
+    }
+
+    private void fail(String reason) {
+        currStep = STEP_DONE;
+        stop();
+        if (listener != null) {
+            listener.onFailed(reason);
+        }
+    }
+
+    private void progress(long position) {
+        try {
+            if (listener != null) {
+                listener.onProgress(position, fileSize);
+                TransferProgress progress = progressMeter.update(position);
+                if (progress != null) {
+                    listener.onTransferProgress(progress);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void sendFrame(byte[] frame) {
+        lastFrame = frame;
+        restartTimer();
+        deliver(frame);
+    }
+
+    private void deliver(byte[] frame) {
+        if (listener != null) {
+            listener.onDataReady(frame);
+        }
+    }
+
+    private void restartTimer() {
+        timerHelper.startTimer(timeoutListener, timeout);
+    }
+
+    //The timeout listener
+    private final TimeOutHelper.ITimeOut timeoutListener = new TimeOutHelper.ITimeOut() {
+        @Override
+        public void onTimeOut() {
+            synchronized (ZModem.this) {
+                Lg.f("------ time out ------");
+                if (fallback != null) {
+                    return;
+                }
+                switch (currStep) {
+                    case STEP_INIT:
+                        if (++initTimes >= MAX_INIT_TIMES) {
+                            fallBack();
+                        } else {
+                            sendFrame(lastFrame);
+                        }
+                        break;
+                    case STEP_FIN://Every file has been confirmed, only the goodbye got lost
+                        if (++errorTimes >= MAX_FIN_TIMES) {
+                            currStep = STEP_DONE;
+                            stop();
+                            if (listener != null) {
+                                listener.onSuccess();
+                            }
+                        } else {
+                            sendFrame(lastFrame);
+                        }
+                        break;
+                    case STEP_FILE:
+                    case STEP_DATA:
+                    case STEP_EOF:
+                        retry("timeout");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    };
+
+    /**
+     * Streams the data subpackets of a file from the position of the last ZRPOS, as far ahead
+     * of the acknowledged position as the window allows
+     */
+    private class DataThread extends Thread {
+
+        private PackageSource fileSource;
+        private final byte[] buffer = new byte[subpacketSize];
+
+        DataThread(PackageSource fileSource) {
+            this.fileSource = fileSource;
+        }
+
+        @Override
+        public void run() {
+            try {
+                stream();
+            } catch (IOException e) {
+                e.printStackTrace();
+                synchronized (ZModem.this) {
+                    if (dataThread == this) {
+                        fail("Failed to read the file: " + e.getMessage());
+                    }
+                }
+            } finally {
+                if (fileSource != null) {
+                    fileSource.close();
+                }
+            }
+        }
+
+        private void stream() throws IOException {
+            long position = 0;
+            boolean header = false;
+            while (true) {
+                long start;
+                synchronized (ZModem.this) {
+                    while (dataThread == this && !restart
+                            && (eofSent || (effectiveWindow > 0 && position - acknowledged >= effectiveWindow))) {
+                        if (!eofSent) {//Waiting for ZACK, nothing comes without a timeout
+                            restartTimer();
+                        }
+                        try {
+                            ZModem.this.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (dataThread != this) {
+                        return;
+                    }
+                    if (restart) {
+                        restart = false;
+                        position = restartPosition;
+                        header = true;
+                    }
+                    start = position;
+                }
+                if (header) {
+                    seek(start);
+                }
+                int dataLength = 0;
+                int read;
+                while (dataLength < buffer.length
+                        && (read = fileSource.read(buffer, dataLength, buffer.length - dataLength)) > 0) {
+                    dataLength += read;
+                }
+                synchronized (ZModem.this) {
+                    if (dataThread != this || restart) {//Repositioned meanwhile, the data is not needed
+                        continue;
+                    }
+                    long end = start + dataLength;
+                    if (header) {
+                        frames.binaryHeader(ZModemFrames.ZDATA, ZModemFrames.position(start));
+                        header = false;
+                    }
+                    if (end >= fileSize) {
+                        frames.dataSubpacket(buffer, 0, dataLength, ZModemFrames.ZCRCE);
+                        frames.binaryHeader(ZModemFrames.ZEOF, ZModemFrames.position(end));
+                        currStep = STEP_EOF;
+                        eofSent = true;
+                        sendFrame(frames.take());
+                        Lg.f("sendEOF");
+                    } else {
+                        boolean ackPoint = ackInterval > 0 && start / ackInterval != end / ackInterval;
+                        byte frameEnd = !ackPoint ? ZModemFrames.ZCRCG
+                                : overlapped ? ZModemFrames.ZCRCQ : ZModemFrames.ZCRCW;
+                        deliver(frames.dataSubpacket(buffer, 0, dataLength, frameEnd).take());
+                    }
+                    position = end;
+                }
+            }
+        }
+
+        //A stream can't go back, it is opened again
+        private void seek(long position) throws IOException {
+            if (fileSource.getPosition() > position) {
+                fileSource.close();
+                fileSource = FileStreamThread.openSource(opener, files.get(fileIndex), subpacketSize, null);
+            }
+            fileSource.seek(position);
+        }
+    }
+
+    public static class Builder {
+        private SourceOpener opener;
+        private String filePath;
+        private String fileNameString;
+        private String fileMd5String;
+        private final List<YModemFile> files = new ArrayList<>();
+        private int subpacketSize = DEFAULT_SUBPACKET_SIZE;
+        private int windowSize = DEFAULT_WINDOW_SIZE;
+        private long timeout = DEFAULT_TIME_OUT;
+        private TimeoutScheduler scheduler;
+        private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+        private long progressBytes = 0;
+        private YModem.Builder fallback = new YModem.Builder();
+        private YModemListener listener;
+
+        public Builder with(SourceOpener opener) {
+            this.opener = opener;
+            return this;
+        }
+
+        public Builder filePath(String filePath) {
+            this.filePath = filePath;
+            return this;
+        }
+
+        public Builder fileName(String fileName) {
+            this.fileNameString = fileName;
+            return this;
+        }
+
+        /**
+         * Only used by the ymodem fallback, zmodem has no md5 field
+         */
+        public Builder checkMd5(String fileMd5String) {
+            this.fileMd5String = fileMd5String;
+            return this;
+        }
+
+        /**
+         * Add a file to the batch, it is sent after the one given by filePath()/fileName()
+         * and the files added before it
+         */
+        public Builder addFile(YModemFile file) {
+            this.files.add(file);
+            return this;
+        }
+
+        /**
+         * Send all of the files in one batch session
+         */
+        public Builder files(List<YModemFile> files) {
+            this.files.addAll(files);
+            return this;
+        }
+
+        /**
+         * Bytes of file data per subpacket, 1024 by default
+         */
+        public Builder sendSize(int size) {
+            this.subpacketSize = Math.max(32, Math.min(size, 8192));
+            return this;
+        }
+
+        /**
+         * Bytes sent ahead of the last ZACK, 32 KB by default, 0 streams the whole file without
+         * waiting. A smaller receiver buffer announced in ZRINIT takes precedence.
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = Math.max(0, windowSize);
+            return this;
+        }
+
+        /**
+         * Timeout of a response in ms, 6000 by default
+         */
+        public Builder timeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Where the timeouts run, {@link ExecutorTimeoutScheduler#getDefault()} by default
+         */
+        public Builder timeoutScheduler(TimeoutScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * How often {@link YModemListener#onTransferProgress} is called, see
+         * {@link YModem.Builder#progressInterval}. Not passed on to the fallback.
+         */
+        public Builder progressInterval(long interval, long bytes) {
+            this.progressInterval = interval;
+            this.progressBytes = bytes;
+            return this;
+        }
+
+        /**
+         * The ymodem session sending the files if the peer doesn't answer ZRINIT, it takes the
+         * files and the callback of this builder. Stop-and-wait with 1K packages by default,
+         * null fails the transmission instead.
+         */
+        public Builder fallback(YModem.Builder fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        public Builder callback(YModemListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public ZModem build() {
+            List<YModemFile> batch = new ArrayList<>();
+            if (filePath != null) {
+                batch.add(new YModemFile(filePath, fileNameString, fileMd5String));
+            }
+            batch.addAll(files);
+            return new ZModem(opener, batch, subpacketSize, windowSize, timeout, scheduler, progressInterval,
+                    progressBytes, fallback, listener);
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.bw.yml;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Encoder of zmodem headers and data subpackets. Binary frames are ZDLE escaped, the 32 bit
+ * CRC is used if the receiver announced CANFC32 in ZRINIT, the 16 bit one otherwise.
+ */
+class ZModemFrames {
+
+    static final byte ZPAD = '*';
+    static final byte ZDLE = 0x18;
+    static final byte ZBIN = 'A';
+    static final byte ZHEX = 'B';
+    static final byte ZBIN32 = 'C';
+
+    //Frame types
+    static final int ZRQINIT = 0;
+    static final int ZRINIT = 1;
+    static final int ZACK = 3;
+    static final int ZFILE = 4;
+    static final int ZSKIP = 5;
+    static final int ZNAK = 6;
+    static final int ZABORT = 7;
+    static final int ZFIN = 8;
+    static final int ZRPOS = 9;
+    static final int ZDATA = 10;
+    static final int ZEOF = 11;
+    static final int ZFERR = 12;
+    static final int ZCAN = 16;
+
+    //Ends of data subpackets: end of frame, go on, go on and ACK, wait for ACK
+    static final byte ZCRCE = 'h';
+    static final byte ZCRCG = 'i';
+    static final byte ZCRCQ = 'j';
+    static final byte ZCRCW = 'k';
+    static final byte ZRUB0 = 'l';
+    static final byte ZRUB1 = 'm';
+
+    //ZRINIT capabilities in ZF0
+    static final int CANFDX = 0x01;
+    static final int CANOVIO = 0x02;
+    static final int CANFC32 = 0x20;
+    static final int ESCCTL = 0x40;
+
+    //ZFILE conversion option in ZF0: binary transfer
+    static final int ZCBIN = 1;
+    //The flags are sent in reverse, ZF0 is the last of the four header bytes
+    static final int ZF0 = 3;
+
+    private static final byte XON = 0x11;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final boolean crc32;
+    private final boolean escapeControl;
+    private final CRC32 crc = new CRC32();
+    private byte[] out = new byte[2048];
+    private int length = 0;
+    //the last byte written, CR after '@' is escaped against telnet
+    private int last = 0;
+
+    /**
+     * @param crc32         32 bit CRC in binary headers and data subpackets
+     * @param escapeControl escape all the control characters (ESCCTL), not only the flow control ones
+     */
+    ZModemFrames(boolean crc32, boolean escapeControl) {
+        this.crc32 = crc32;
+        this.escapeControl = escapeControl;
+    }
+
+    /**
+     * @return position or flags in the four header bytes, ZP0 (the lowest byte) first
+     */
+    static byte[] position(long position) {
+        return new byte[]{(byte) position, (byte) (position >> 8), (byte) (position >> 16), (byte) (position >> 24)};
+    }
+
+    /**
+     * Hex header, used for the headers which may arrive before the CRC has been negotiated
+     */
+    static byte[] hexHeader(int type, byte[] data) {
+        byte[] header = new byte[type == ZACK || type == ZFIN ? 20 : 21];
+        header[0] = ZPAD;
+        header[1] = ZPAD;
+        header[2] = ZDLE;
+        header[3] = ZHEX;
+        int i = putHex(header, 4, type);
+        int crc16 = CRC16.update(0, new byte[]{(byte) type}, 0, 1);
+        crc16 = CRC16.update(crc16, data, 0, 4);
+        for (byte b : data) {
+            i = putHex(header, i, b);
+        }
+        i = putHex(header, i, crc16 >> 8);
+        i = putHex(header, i, crc16);
+        header[i++] = '\r';
+        header[i++] = (byte) 0x8A;
+        if (i < header.length) {//No XON after ZACK and ZFIN
+            header[i] = XON;
+        }
+        return header;
+    }
+
+    private static int putHex(byte[] dst, int i, int value) {
+        dst[i] = HEX[(value >> 4) & 0x0F];
+        dst[i + 1] = HEX[value & 0x0F];
+        return i + 2;
+    }
+
+    /**
+     * Start a frame with a binary header, data subpackets may follow before {@link #take()}
+     */
+    ZModemFrames binaryHeader(int type, byte[] data) {
+        put(ZPAD, false);
+        put(ZDLE, false);
+        put(crc32 ? ZBIN32 : ZBIN, false);
+        byte[] header = {(byte) type, data[0], data[1], data[2], data[3]};
+        for (byte b : header) {
+            put(b, true);
+        }
+        if (crc32) {
+            crc.reset();
+            crc.update(header, 0, header.length);
+            putCrc32((int) crc.getValue());
+        } else {
+            int crc16 = CRC16.update(0, header, 0, header.length);
+            put((byte) (crc16 >> 8), true);
+            put((byte) crc16, true);
+        }
+        return this;
+    }
+
+    /**
+     * Add a data subpacket of length bytes of data ended by frameEnd (ZCRCE, ZCRCG, ZCRCQ or ZCRCW)
+     */
+    ZModemFrames dataSubpacket(byte[] data, int offset, int length, byte frameEnd) {
+        for (int i = offset; i < offset + length; i++) {
+            put(data[i], true);
+        }
+        put(ZDLE, false);
+        put(frameEnd, false);
+        if (crc32) {
+            crc.reset();
+            crc.update(data, offset, length);
+            crc.update(frameEnd);
+            putCrc32((int) crc.getValue());
+        } else {
+            int crc16 = CRC16.update(0, data, offset, length);
+            crc16 = CRC16.update(crc16, new byte[]{frameEnd}, 0, 1);
+            put((byte) (crc16 >> 8), true);
+            put((byte) crc16, true);
+        }
+        if (frameEnd == ZCRCW) {
+            put(XON, false);
+        }
+        return this;
+    }
+
+    /**
+     * @return the frames added since the last call
+     */
+    byte[] take() {
+        byte[] frame = Arrays.copyOf(out, length);
+        length = 0;
+        return frame;
+    }
+
+    private void putCrc32(int value) {
+        for (int i = 0; i < 4; i++) {
+            put((byte) (value >> (8 * i)), true);
+        }
+    }
+
+    private void put(byte b, boolean escape) {
+        if (length + 2 > out.length) {
+            out = Arrays.copyOf(out, out.length * 2);
+        }
+        if (escape && mustEscape(b & 0xFF)) {
+            out[length++] = ZDLE;
+            b ^= 0x40;
+        }
+        out[length++] = b;
+        last = b & 0xFF;
+    }
+
+    private boolean mustEscape(int b) {
+        switch (b) {
+            case ZDLE:
+            case 0x10:
+            case 0x90:
+            case 0x11:
+            case 0x91:
+            case 0x13:
+            case 0x93:
+                return true;
+            case 0x0D:
+            case 0x8D:
+                return escapeControl || (last & 0x7F) == '@';
+            default:
+                return escapeControl && (b & 0x60) == 0;
+        }
+    }
+
+}
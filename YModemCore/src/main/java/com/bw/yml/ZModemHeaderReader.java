@@ -0,0 +1,179 @@
+package com.bw.yml;
+
+import java.util.zip.CRC32;
+
+/**
+ * Incremental parser of the zmodem headers sent by the receiver. Responses may come in any
+ * pieces, hex and binary (16 and 32 bit CRC) headers are understood. Bytes outside of a header
+ * are handed out as they are, so a ymodem receiver answering with 'C' can be recognized.
+ */
+class ZModemHeaderReader {
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_PAD = 1;
+    private static final int STATE_ZDLE = 2;
+    private static final int STATE_HEX = 3;
+    private static final int STATE_BINARY = 4;
+    //five CAN in a row abort the session
+    private static final int CANCEL_COUNT = 5;
+
+    private final Callback callback;
+    private int state = STATE_IDLE;
+    private int format;
+    //header bytes collected so far: type, four data bytes and the CRC
+    private final byte[] header = new byte[9];
+    private int length = 0;
+    private int expected;
+    private boolean escaped = false;
+    //hex digit waiting for the second one, -1 if none
+    private int highNibble = -1;
+    private int cancels = 0;
+
+    ZModemHeaderReader(Callback callback) {
+        this.callback = callback;
+    }
+
+    void reset() {
+        state = STATE_IDLE;
+        cancels = 0;
+    }
+
+    void feed(byte[] data) {
+        for (byte b : data) {
+            feed(b & 0xFF);
+        }
+    }
+
+    private void feed(int b) {
+        if (b == ZModemFrames.ZDLE && state != STATE_BINARY) {
+            if (++cancels >= CANCEL_COUNT) {
+                cancels = 0;
+                state = STATE_IDLE;
+                callback.onCancel();
+                return;
+            }
+        } else {
+            cancels = 0;
+        }
+        switch (state) {
+            case STATE_IDLE:
+                if (b == ZModemFrames.ZPAD) {
+                    state = STATE_PAD;
+                } else {
+                    callback.onOther(b);
+                }
+                break;
+            case STATE_PAD:
+                if (b == ZModemFrames.ZDLE) {
+                    state = STATE_ZDLE;
+                } else if (b != ZModemFrames.ZPAD) {
+                    state = STATE_IDLE;
+                    callback.onOther(b);
+                }
+                break;
+            case STATE_ZDLE:
+                startHeader(b);
+                break;
+            case STATE_HEX:
+                readHex(b);
+                break;
+            case STATE_BINARY:
+                readBinary(b);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void startHeader(int b) {
+        format = b;
+        length = 0;
+        escaped = false;
+        highNibble = -1;
+        if (b == ZModemFrames.ZHEX) {
+            state = STATE_HEX;
+            expected = 7;
+        } else if (b == ZModemFrames.ZBIN) {
+            state = STATE_BINARY;
+            expected = 7;
+        } else if (b == ZModemFrames.ZBIN32) {
+            state = STATE_BINARY;
+            expected = 9;
+        } else {
+            state = STATE_IDLE;
+        }
+    }
+
+    private void readHex(int b) {
+        int digit = Character.digit(b, 16);
+        if (digit < 0) {//Line noise, wait for the next header
+            state = STATE_IDLE;
+            return;
+        }
+        if (highNibble < 0) {
+            highNibble = digit;
+            return;
+        }
+        header[length++] = (byte) (highNibble << 4 | digit);
+        highNibble = -1;
+        if (length == expected) {
+            state = STATE_IDLE;
+            int crc16 = CRC16.update(0, header, 0, 5);
+            deliver(crc16 == ((header[5] & 0xFF) << 8 | (header[6] & 0xFF)));
+        }
+    }
+
+    private void readBinary(int b) {
+        if (escaped) {
+            escaped = false;
+            if (b == ZModemFrames.ZRUB0) {
+                b = 0x7F;
+            } else if (b == ZModemFrames.ZRUB1) {
+                b = 0xFF;
+            } else {
+                b ^= 0x40;
+            }
+        } else if (b == ZModemFrames.ZDLE) {
+            escaped = true;
+            return;
+        }
+        header[length++] = (byte) b;
+        if (length == expected) {
+            state = STATE_IDLE;
+            if (format == ZModemFrames.ZBIN) {
+                int crc16 = CRC16.update(0, header, 0, 5);
+                deliver(crc16 == ((header[5] & 0xFF) << 8 | (header[6] & 0xFF)));
+            } else {
+                CRC32 crc = new CRC32();
+                crc.update(header, 0, 5);
+                long received = (header[5] & 0xFFL) | (header[6] & 0xFFL) << 8
+                        | (header[7] & 0xFFL) << 16 | (header[8] & 0xFFL) << 24;
+                deliver(crc.getValue() == received);
+            }
+        }
+    }
+
+    private void deliver(boolean crcOk) {
+        if (!crcOk) {
+            Lg.f("ZModem header with a bad CRC");
+            return;
+        }
+        long position = (header[1] & 0xFFL) | (header[2] & 0xFFL) << 8
+                | (header[3] & 0xFFL) << 16 | (header[4] & 0xFFL) << 24;
+        callback.onHeader(header[0] & 0xFF, position, header[1 + ZModemFrames.ZF0] & 0xFF);
+    }
+
+    interface Callback {
+        /**
+         * @param position the four data bytes as a position, ZP0 the lowest byte
+         * @param flags    ZF0, the capabilities of ZRINIT
+         */
+        void onHeader(int type, long position, int flags);
+
+        /* a byte outside of any header */
+        void onOther(int b);
+
+        void onCancel();
+    }
+
+}
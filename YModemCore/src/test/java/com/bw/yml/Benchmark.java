@@ -0,0 +1,694 @@
+package com.bw.yml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plain JVM benchmarks of the protocol core, YModem against YModemReceiver over a
+ * {@link PipeTransport}, TCP on the loopback interface or a {@link SimulatedLink}. Not a test,
+ * run it with {@code gradlew :YModemCore:benchmark [-Psuites=window,crc]}, or the main with the
+ * names of the suites. Without any all of them run, which takes a few minutes.
+ * <p>
+ * The simulated links run in real time, so their figures hold on a busy machine as well. The
+ * engine figures depend on the machine and want a few runs.
+ */
+public final class Benchmark {
+
+    private static final String[] SUITES = {
+            "stream", "window", "adaptive", "rtt", "timers", "sources", "encoder", "pool", "crc",
+            "deflate", "delta", "receiver"
+    };
+
+    //seconds, a session taking longer has stalled
+    private static final long SESSION_LIMIT = 120;
+    //the receiver takes the last response of the sender some time after it is done
+    private static final long RECEIVER_GRACE = 10;
+
+    //keeps the results of the CRC loops alive
+    private static volatile int sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final File directory;
+    private int sessions = 0;
+    //directory of the receiver of the next session
+    private File received;
+
+    private Benchmark(File directory) {
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Loopback.quiet();
+        File directory = Files.createTempDirectory("ymodem-benchmark").toFile();
+        try {
+            Benchmark benchmark = new Benchmark(directory);
+            for (String suite : args.length > 0 ? args : SUITES) {
+                System.out.println("== " + suite);
+                benchmark.run(suite);
+                System.out.println();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private void run(String suite) throws Exception {
+        switch (suite) {
+            case "stream":
+                stream();
+                break;
+            case "window":
+                window();
+                break;
+            case "adaptive":
+                adaptive();
+                break;
+            case "rtt":
+                rtt();
+                break;
+            case "timers":
+                timers();
+                break;
+            case "sources":
+                sources();
+                break;
+            case "encoder":
+                encoder();
+                break;
+            case "pool":
+                pool();
+                break;
+            case "crc":
+                crc();
+                break;
+            case "deflate":
+                deflate();
+                break;
+            case "delta":
+                delta();
+                break;
+            case "receiver":
+                receiver();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown suite " + suite + ", one of " + Arrays.toString(SUITES));
+        }
+    }
+
+    /**
+     * Pipe and TCP adapters, 1K blocks, 4 MB
+     */
+    private void stream() throws Exception {
+        File source = Loopback.randomFile(directory, "stream.bin", 4 * 1024 * 1024, 1);
+        for (int window : new int[]{1, 8}) {
+            //Warm up
+            pipe(source, window);
+            System.out.println(String.format("pipe          w=%-2d %6.1f MB/s", window, mbPerSecond(source, pipe(source, window))));
+        }
+        for (int window : new int[]{1, 8}) {
+            tcp(source, window);
+            System.out.println(String.format("TCP loopback  w=%-2d %6.1f MB/s", window, mbPerSecond(source, tcp(source, window))));
+        }
+    }
+
+    private double pipe(File source, int window) throws Exception {
+        PipeTransport pipe = new PipeTransport();
+        try {
+            return transfer(new YModem.Builder().filePath(source.getPath()).fileName(source.getName()).windowSize(window),
+                    newReceiver().windowSize(window), pipe, pipe.peer());
+        } finally {
+            pipe.close();
+        }
+    }
+
+    private double tcp(File source, int window) throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+            Socket accepted = server.accept();
+            StreamTransport sender = StreamTransport.forSocket(client);
+            StreamTransport receiver = StreamTransport.forSocket(accepted);
+            try {
+                return transfer(new YModem.Builder().filePath(source.getPath()).fileName(source.getName()).windowSize(window),
+                        newReceiver().windowSize(window), sender, receiver);
+            } finally {
+                sender.close();
+                receiver.close();
+            }
+        }
+    }
+
+    /**
+     * Stop-and-wait against sliding windows, 128 KB in 1K blocks, lost writes in both directions
+     */
+    private void window() throws Exception {
+        File source = Loopback.randomFile(directory, "window.bin", 128 * 1024, 2);
+        System.out.println("rtt    loss  w=1          w=8          w=32");
+        for (long delay : new long[]{5, 25}) {
+            for (double loss : new double[]{0, 0.02}) {
+                StringBuilder line = new StringBuilder(String.format("%-2d ms  %-4s", delay * 2, percent(loss)));
+                for (int window : new int[]{1, 8, 32}) {
+                    double seconds = transfer(new YModem.Builder().filePath(source.getPath()).fileName(source.getName())
+                                    .windowSize(window),
+                            newReceiver().windowSize(window),
+                            new SimulatedLink.Builder().delay(delay).loss(loss).seed(window));
+                    line.append(String.format("  %-11s", kbPerSecond(source, seconds)));
+                }
+                System.out.println(trimEnd(line));
+            }
+        }
+        File small = Loopback.randomFile(directory, "small.bin", 32 * 1024, 3);
+        for (int blockSize : new int[]{128, 1024}) {
+            double seconds = transfer(new YModem.Builder().filePath(small.getPath()).fileName(small.getName())
+                            .sendSize(blockSize),
+                    newReceiver(), new SimulatedLink.Builder().delay(5));
+            System.out.println(String.format("stop-and-wait, 10 ms rtt, %4d byte blocks: %.2f s, %.1f ms per package",
+                    blockSize, seconds, seconds * 1000 / (small.length() / blockSize)));
+        }
+    }
+
+    /**
+     * Fixed and adaptive block size on a 20 KB/s link with 30 ms rtt and random bit errors, 32 KB
+     */
+    private void adaptive() throws Exception {
+        File source = Loopback.randomFile(directory, "adaptive.bin", 32 * 1024, 4);
+        System.out.println("bit errors  fixed 1K     fixed 128    adaptive");
+        for (double bitErrors : new double[]{0, 2e-5, 1e-4}) {
+            StringBuilder line = new StringBuilder(String.format("%-10s", bitErrors));
+            for (int mode = 0; mode < 3; mode++) {
+                double seconds = transfer(new YModem.Builder().filePath(source.getPath()).fileName(source.getName())
+                                .sendSize(mode == 1 ? 128 : 1024)
+                                .adaptiveSize(mode == 2),
+                        newReceiver(),
+                        new SimulatedLink.Builder().rate(20 * 1024).delay(15).bitErrors(bitErrors).seed(mode));
+                line.append(String.format("  %-11s", kbPerSecond(source, seconds)));
+            }
+            System.out.println(trimEnd(line));
+        }
+    }
+
+    /**
+     * A fixed 6000 ms package timeout against the one from the rtt, 50 KB/s link with 30 ms rtt and 3%
+     * of the writes lost, 64 KB
+     */
+    private void rtt() throws Exception {
+        File source = Loopback.randomFile(directory, "rtt.bin", 64 * 1024, 5);
+        for (int window : new int[]{1, 8}) {
+            StringBuilder line = new StringBuilder(String.format("w=%-2d", window));
+            for (boolean fixed : new boolean[]{true, false}) {
+                YModem.Builder sender = new YModem.Builder().filePath(source.getPath()).fileName(source.getName())
+                        .windowSize(window);
+                if (fixed) {
+                    sender.timeoutBounds(6000, 6000);
+                }
+                double seconds = transfer(sender, newReceiver().windowSize(window),
+                        new SimulatedLink.Builder().rate(50 * 1024).delay(15).loss(0.03).seed(window));
+                line.append(String.format("  %s %s", fixed ? "fixed 6000 ms" : "from the rtt", time(seconds)));
+            }
+            System.out.println(trimEnd(line));
+        }
+    }
+
+    /**
+     * Starting and cancelling timeouts of the shared scheduler
+     */
+    private void timers() {
+        TimeoutScheduler scheduler = ExecutorTimeoutScheduler.getDefault();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        TimeoutScheduler.Cancellable[] armed = new TimeoutScheduler.Cancellable[5000];
+        for (int round = 0; round < 60; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < armed.length; i++) {
+                armed[i] = scheduler.schedule(task, 60000);
+            }
+            for (TimeoutScheduler.Cancellable cancellable : armed) {
+                cancellable.cancel();
+            }
+            if (round == 59) {
+                System.out.println(String.format("%d timeouts armed at once: %d ns per start and cancel",
+                        armed.length, (System.nanoTime() - start) / armed.length));
+            }
+        }
+    }
+
+    /**
+     * The packages of a 4 MB file from the mapped file, a packet image and the cache of encodings
+     */
+    private void sources() throws Exception {
+        File source = Loopback.randomFile(directory, "sources.bin", 4 * 1024 * 1024, 6);
+        for (int blockSize : new int[]{128, 1024}) {
+            File imageFile = new File(directory, "sources." + blockSize + ".img");
+            long start = System.nanoTime();
+            PacketImage.compile(null, source.getPath(), source.getName(), "", blockSize, imageFile);
+            long compile = System.nanoTime() - start;
+            PacketImage image = PacketImage.open(imageFile);
+            EncodedImageCache cache = new EncodedImageCache(64 * 1024 * 1024);
+            long mapped = 0;
+            long imaged = 0;
+            long hit = 0;
+            long miss = 0;
+            for (int round = 0; round < 5; round++) {
+                mapped = drain(new MappedFileSource(source.getPath()), blockSize);
+                imaged = drain(image.newSource(), blockSize);
+                cache.clear();
+                start = System.nanoTime();
+                PackageSource cached = cache.newSource(null, source.getPath(), blockSize);
+                miss = System.nanoTime() - start + drain(cached, blockSize);
+                start = System.nanoTime();
+                cached = cache.newSource(null, source.getPath(), blockSize);
+                hit = System.nanoTime() - start + drain(cached, blockSize);
+            }
+            System.out.println(String.format("%4d byte blocks: encoded while read %s, packet image %s (compiled in %s),"
+                            + " cache miss %s, cache hit %s", blockSize, millis(mapped), millis(imaged), millis(compile),
+                    millis(miss), millis(hit)));
+        }
+    }
+
+    private static long drain(PackageSource source, int blockSize) throws IOException {
+        long start = System.nanoTime();
+        try {
+            byte sequence = 1;
+            while (source.next(blockSize, sequence++, null) != null) {
+            }
+        } finally {
+            source.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Bytes allocated and time per package of the array building helpers and of the encoder
+     */
+    private void encoder() throws IOException {
+        int packages = 200000;
+        for (int blockSize : new int[]{128, 1024}) {
+            byte[] block = new byte[blockSize];
+            new Random(7).nextBytes(block);
+            byte[] packageData = new byte[PackageEncoder.packageLength(blockSize)];
+            for (int round = 0; round < 3; round++) {
+                long allocated = allocated();
+                long start = System.nanoTime();
+                for (int i = 0; i < packages; i++) {
+                    YModemUtil.getDataPackage(block, blockSize - 3, (byte) i);
+                }
+                long helper = System.nanoTime() - start;
+                long helperBytes = allocated() - allocated;
+                allocated = allocated();
+                start = System.nanoTime();
+                for (int i = 0; i < packages; i++) {
+                    PackageEncoder.encode(block, 0, blockSize - 3, blockSize, (byte) i, packageData, 0);
+                }
+                long encoder = System.nanoTime() - start;
+                long encoderBytes = allocated() - allocated;
+                if (round == 2) {
+                    System.out.println(String.format("%4d byte blocks: getDataPackage %d B/package %d ns,"
+                                    + " encoder into a reused array %d B/package %d ns", blockSize,
+                            helperBytes / packages, helper / packages, encoderBytes / packages, encoder / packages));
+                }
+            }
+        }
+        byte[] header = new byte[PackageEncoder.packageLength(128)];
+        String[] extensions = {"W8", "Z"};
+        for (int round = 0; round < 3; round++) {
+            long allocated = allocated();
+            for (int i = 0; i < packages; i++) {
+                PackageEncoder.encodeFileName("firmware-été.bin", 3221225572L, "", extensions, header, 0);
+            }
+            if (round == 2) {
+                System.out.println(String.format("file name package into a reused array %d B/package",
+                        (allocated() - allocated) / packages));
+            }
+        }
+    }
+
+    /**
+     * Bytes allocated per package on its way from the pool through the queue of the transport
+     */
+    private void pool() {
+        final int packages = 200000;
+        final PackagePool pool = new PackagePool(8);
+        final YModemTransport.WriteCallback[] pending = new YModemTransport.WriteCallback[1];
+        YModemTransport transport = new YModemTransport() {
+            @Override
+            public void write(PooledPackage data, WriteCallback callback) {
+                pending[0] = callback;
+            }
+
+            @Override
+            public int getWriteCredits() {
+                return 1;
+            }
+
+            @Override
+            public int getMtu() {
+                return 1029;
+            }
+
+            @Override
+            public void setReceiver(Receiver receiver) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Object lock = new Object();
+        TransportQueue queue = new TransportQueue(transport, pool, lock, null);
+        for (int round = 0; round < 3; round++) {
+            long allocated = allocated();
+            for (int i = 0; i < packages; i++) {
+                byte[] packageData = pool.acquire(1029);
+                PackageEncoder.encodeInPlace(packageData, 0, 1021, 1024, (byte) i);
+                synchronized (lock) {
+                    queue.write(packageData);
+                }
+                //The link is done with it and the package is acknowledged
+                pending[0].onWritten(true);
+                pool.release(packageData);
+            }
+            if (round == 2) {
+                System.out.println(String.format("1K packages through the pool and the transport queue: %d B/package",
+                        (allocated() - allocated) / packages));
+            }
+        }
+    }
+
+    /**
+     * CRC16 against the byte-wise table loop it replaced
+     */
+    private void crc() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = CRC16.crc16_byte(0, (byte) i);
+        }
+        System.out.println("length   byte-wise    update heap  update direct");
+        for (int length : new int[]{128, 1024, 64 * 1024}) {
+            byte[] data = new byte[length];
+            new Random(length).nextBytes(data);
+            ByteBuffer direct = ByteBuffer.allocateDirect(length);
+            direct.put(data);
+            int rounds = 64 * 1024 * 1024 / length;
+            long byteWise = 0;
+            long heap = 0;
+            long directTime = 0;
+            for (int warmUp = 0; warmUp < 3; warmUp++) {
+                long start = System.nanoTime();
+                for (int round = 0; round < rounds; round++) {
+                    int crc = 0;
+                    for (int i = 0; i < length; i++) {
+                        crc = ((crc << 8) ^ table[((crc >> 8) ^ data[i]) & 0xff]) & 0xffff;
+                    }
+                    sink += crc;
+                }
+                byteWise = (System.nanoTime() - start) / rounds;
+                start = System.nanoTime();
+                for (int round = 0; round < rounds; round++) {
+                    sink += CRC16.update(0, data, 0, length);
+                }
+                heap = (System.nanoTime() - start) / rounds;
+                start = System.nanoTime();
+                for (int round = 0; round < rounds; round++) {
+                    sink += CRC16.update(0, direct, 0, length);
+                }
+                directTime = (System.nanoTime() - start) / rounds;
+            }
+            System.out.println(String.format("%-7d  %-11s  %-11s  %s", length, nanos(byteWise), nanos(heap),
+                    nanos(directTime)));
+        }
+    }
+
+    /**
+     * Plain and deflated text on a 20 KB/s link with 30 ms rtt, 192 KB
+     */
+    private void deflate() throws Exception {
+        File source = textFile("deflate.txt", 192 * 1024);
+        System.out.println("mode        loss  plain    deflated");
+        for (double loss : new double[]{0, 0.02}) {
+            for (int mode = 0; mode < 3; mode++) {
+                StringBuilder line = new StringBuilder(String.format("%-10s  %-4s",
+                        mode == 0 ? "stop-wait" : mode == 1 ? "window 8" : "adaptive", percent(loss)));
+                for (boolean compress : new boolean[]{false, true}) {
+                    double seconds = transfer(new YModem.Builder().filePath(source.getPath()).fileName(source.getName())
+                                    .windowSize(mode == 1 ? 8 : 1)
+                                    .adaptiveSize(mode == 2)
+                                    .compress(compress),
+                            newReceiver().windowSize(8).acceptCompressed(true),
+                            new SimulatedLink.Builder().rate(20 * 1024).delay(15).loss(loss).seed(mode));
+                    line.append(String.format("  %-7s", time(seconds)));
+                }
+                System.out.println(trimEnd(line));
+            }
+        }
+    }
+
+    /**
+     * Size, creation and sending of a patch against the image on the terminal, 20 KB/s link with 30 ms
+     * rtt and a window of 8
+     */
+    private void delta() throws Exception {
+        byte[] base = new byte[4 * 1024 * 1024];
+        new Random(8).nextBytes(base);
+        byte[] target = edited(base);
+        File baseFile = new File(directory, "delta-base.bin");
+        File targetFile = new File(directory, "delta-target.bin");
+        File patchFile = new File(directory, "delta.patch");
+        Files.write(baseFile.toPath(), base);
+        Files.write(targetFile.toPath(), target);
+        long create = 0;
+        long apply = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            DeltaPatch.create(baseFile, targetFile, patchFile);
+            create = System.nanoTime() - start;
+            start = System.nanoTime();
+            DeltaPatch.apply(baseFile, Files.newInputStream(patchFile.toPath()), new NullOutput());
+            apply = System.nanoTime() - start;
+        }
+        System.out.println(String.format("4 MB image, 20 changed bytes and 20 inserted blocks: patch %d bytes (%.2f%%),"
+                        + " created in %s, applied in %s", patchFile.length(), patchFile.length() * 100.0 / target.length,
+                millis(create), millis(apply)));
+
+        //Over the link, a 256 KB image
+        base = Arrays.copyOf(base, 256 * 1024);
+        target = edited(base);
+        Files.write(baseFile.toPath(), base);
+        Files.write(targetFile.toPath(), target);
+        DeltaPatch.create(baseFile, targetFile, patchFile);
+        for (int mode = 0; mode < 3; mode++) {
+            File terminal = new File(directory, "terminal" + mode);
+            terminal.mkdir();
+            Files.write(new File(terminal, "firmware.bin").toPath(), base);
+            double seconds = transfer(new YModem.Builder()
+                            .addFile(new YModemFile(targetFile.getPath(), "firmware.bin", null, mode > 0 ? patchFile : null))
+                            .windowSize(8)
+                            .compress(mode == 2),
+                    new YModemReceiver.Builder().saveTo(terminal).windowSize(8).acceptCompressed(true).acceptDelta(true),
+                    new SimulatedLink.Builder().rate(20 * 1024).delay(15));
+            if (!Arrays.equals(target, Files.readAllBytes(new File(terminal, "firmware.bin").toPath()))) {
+                throw new IllegalStateException("The terminal didn't get the target");
+            }
+            System.out.println(String.format("256 KB image, %-19s %s",
+                    mode == 0 ? "whole file:" : mode == 1 ? "patch:" : "patch and deflate:", time(seconds)));
+        }
+    }
+
+    private static byte[] edited(byte[] base) {
+        Random random = new Random(base.length);
+        byte[] target = base.clone();
+        for (int i = 0; i < 20; i++) {
+            target[random.nextInt(target.length)]++;
+        }
+        for (int i = 0; i < 20; i++) {
+            byte[] insert = new byte[random.nextInt(200) + 1];
+            random.nextBytes(insert);
+            int at = random.nextInt(target.length);
+            byte[] longer = new byte[target.length + insert.length];
+            System.arraycopy(target, 0, longer, 0, at);
+            System.arraycopy(insert, 0, longer, at, insert.length);
+            System.arraycopy(target, at, longer, at + insert.length, target.length - at);
+            target = longer;
+        }
+        return target;
+    }
+
+    /**
+     * The receiver fed encoded 1K packages in fragments, 64 MB written to a file
+     */
+    private void receiver() throws Exception {
+        int packages = 64 * 1024;
+        byte[] block = new byte[1024];
+        new Random(9).nextBytes(block);
+        //One package per sequence number, the stream repeats them
+        byte[][] encoded = new byte[256][];
+        for (int i = 0; i < 256; i++) {
+            encoded[i] = YModemUtil.getDataPackage(block, 1024, (byte) i);
+        }
+        long fileSize = (long) packages * 1024;
+        byte[] header = new byte[PackageEncoder.packageLength(128)];
+        PackageEncoder.encodeFileName("received.bin", fileSize, "", null, header, 0);
+        for (int fragment : new int[]{20, 244, 4096}) {
+            double seconds = 0;
+            for (int round = 0; round < 2; round++) {
+                File received = new File(directory, "received" + fragment);
+                received.mkdir();
+                Loopback.Receiver listener = new Loopback.Receiver();
+                YModemReceiver receiver = new YModemReceiver.Builder().saveTo(received).callback(listener).build();
+                receiver.onReceiveData(header);
+                long start = System.nanoTime();
+                byte[] chunk = new byte[fragment];
+                int filled = 0;
+                for (int i = 1; i <= packages; i++) {
+                    byte[] packageData = encoded[i & 0xff];
+                    for (int offset = 0; offset < packageData.length; ) {
+                        int length = Math.min(fragment - filled, packageData.length - offset);
+                        System.arraycopy(packageData, offset, chunk, filled, length);
+                        offset += length;
+                        filled += length;
+                        if (filled == fragment) {
+                            receiver.onReceiveData(chunk, 0, filled);
+                            filled = 0;
+                        }
+                    }
+                }
+                receiver.onReceiveData(chunk, 0, filled);
+                seconds = (System.nanoTime() - start) / 1e9;
+                receiver.stop();
+                delete(received);
+            }
+            System.out.println(String.format("%4d byte fragments: %.0f MB/s", fragment, fileSize / 1048576.0 / seconds));
+        }
+    }
+
+    /**
+     * Send with the builders over the two ends until both sides are done
+     *
+     * @return seconds from the start to the end of both sides, NaN if the session failed or stalled
+     */
+    private double transfer(YModem.Builder sender, YModemReceiver.Builder receiver,
+                            YModemTransport senderEnd, YModemTransport receiverEnd) throws Exception {
+        Loopback.Sender senderListener = new Loopback.Sender();
+        Loopback.Receiver receiverListener = new Loopback.Receiver();
+        YModemReceiver yModemReceiver = receiver.transport(receiverEnd).callback(receiverListener).build();
+        YModem yModem = sender.transport(senderEnd).callback(senderListener).build();
+        long start = System.nanoTime();
+        yModem.start(null);
+        //A receiver left waiting by a failed sender never finishes
+        boolean finished = senderListener.done.await(SESSION_LIMIT, TimeUnit.SECONDS)
+                && senderListener.failure == null
+                && receiverListener.done.await(RECEIVER_GRACE, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        yModem.stop();
+        yModemReceiver.stop();
+        if (received != null) {
+            delete(received);
+            received = null;
+        }
+        if (!finished || receiverListener.failure != null) {
+            return Double.NaN;
+        }
+        return elapsed / 1e9;
+    }
+
+    private double transfer(YModem.Builder sender, YModemReceiver.Builder receiver, SimulatedLink.Builder link)
+            throws Exception {
+        SimulatedLink simulated = link.build();
+        try {
+            return transfer(sender, receiver, simulated.a(), simulated.b());
+        } finally {
+            simulated.close();
+        }
+    }
+
+    //A receiver saving into a directory of its own, deleted after the session
+    private YModemReceiver.Builder newReceiver() {
+        received = new File(directory, "session" + sessions++);
+        received.mkdir();
+        return new YModemReceiver.Builder().saveTo(received);
+    }
+
+    private File textFile(String name, int size) throws IOException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(10);
+        String[] words = {"package", "transfer", "block", "sequence", "window", "receiver", "timeout", "the", "a",
+                "of", "and", "is", "crc", "header", "firmware", "image", "0x1f", "42", "\n"};
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        File file = new File(directory, name);
+        Files.write(file.toPath(), text.substring(0, size).getBytes("UTF-8"));
+        return file;
+    }
+
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //The columns are padded behind their values
+    private static String trimEnd(CharSequence line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return line.subSequence(0, end).toString();
+    }
+
+    private static String time(double seconds) {
+        return Double.isNaN(seconds) ? "failed" : String.format("%.2f s", seconds);
+    }
+
+    private static String kbPerSecond(File file, double seconds) {
+        return Double.isNaN(seconds) ? "failed" : String.format("%.1f KB/s", file.length() / 1024.0 / seconds);
+    }
+
+    private static double mbPerSecond(File file, double seconds) {
+        return file.length() / 1048576.0 / seconds;
+    }
+
+    private static String percent(double share) {
+        return String.format("%.0f%%", share * 100);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f ms", nanos / 1e6);
+    }
+
+    private static String nanos(long nanos) {
+        return nanos < 10000 ? nanos + " ns" : String.format("%.1f us", nanos / 1e3);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static final class NullOutput extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.bw.yml;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * CRC-16/XMODEM: polynomial 0x1021, initial value 0, no reflection
+ */
+public class CRC16Test {
+
+    private final CRC16 crc16 = new CRC16();
+
+    //One byte at a time, the way the tables are built
+    private static int bitwise(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x1021) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+
+    @Test
+    public void checkValue() {
+        assertEquals(0x31C3, crc16.calcCRC("123456789".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0, crc16.calcCRC(new byte[0]));
+    }
+
+    @Test
+    public void everyLengthAndOffsetMatchesBitwise() {
+        byte[] data = new byte[1100];
+        new Random(16).nextBytes(data);
+        for (int offset = 0; offset < 9; offset++) {
+            for (int length = 0; length <= 40; length++) {
+                assertEquals(bitwise(data, offset, length), crc16.calcCRC(data, offset, length));
+            }
+            assertEquals(bitwise(data, offset, 1024), crc16.calcCRC(data, offset, 1024));
+        }
+    }
+
+    @Test
+    public void directBuffersInBothByteOrders() {
+        byte[] data = new byte[1029];
+        new Random(3).nextBytes(data);
+        int expected = bitwise(data, 3, 1024);
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length).order(order);
+            direct.put(data).position(7);
+            assertEquals(expected, crc16.calcCRC(direct, 3, 1024));
+            assertEquals(7, direct.position());
+        }
+        assertEquals(expected, crc16.calcCRC(ByteBuffer.wrap(data), 3, 1024));
+    }
+
+    @Test
+    public void updateContinuesAndCombineJoins() {
+        byte[] data = new byte[3000];
+        new Random(7).nextBytes(data);
+        int whole = crc16.calcCRC(data, 0, data.length);
+        int first = CRC16.update(0, data, 0, 1234);
+        assertEquals(whole, CRC16.update(first, data, 1234, data.length - 1234));
+        int second = crc16.calcCRC(data, 1234, data.length - 1234);
+        assertEquals(whole, CRC16.combine(first, second, data.length - 1234));
+        assertEquals(first, CRC16.combine(first, 0, 0));
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.bw.yml;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Dozens of sessions at once in one process, none of them may see the state of another one.
+ * Sessions waiting on their links must not wait on each other either, so on links with a delay
+ * the aggregate throughput grows with the number of sessions.
+ */
+public class ConcurrentSessionTest {
+
+    private static final int SESSIONS = 32;
+    private static final int SIZE = 32 * 1024;
+    //one way, like a BLE connection interval
+    private static final long DELAY = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    @Test
+    public void sessionsOverPipesAtOnce() throws Exception {
+        File[] sources = new File[SESSIONS];
+        File[] directories = new File[SESSIONS];
+        Loopback.Sender[] senders = new Loopback.Sender[SESSIONS];
+        Loopback.Receiver[] receivers = new Loopback.Receiver[SESSIONS];
+        PipeTransport[] pipes = new PipeTransport[SESSIONS];
+        YModem[] ymodems = new YModem[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            sources[i] = Loopback.randomFile(folder.getRoot(), "image" + i + ".bin", SIZE + i * 7777, i);
+            directories[i] = folder.newFolder("received" + i);
+            senders[i] = new Loopback.Sender();
+            receivers[i] = new Loopback.Receiver();
+            pipes[i] = new PipeTransport();
+            //Every other session with a sliding window, the others stop-and-wait with their own block size
+            int windowSize = i % 2 == 0 ? 8 : 1;
+            new YModemReceiver.Builder()
+                    .saveTo(directories[i])
+                    .windowSize(windowSize)
+                    .transport(pipes[i].peer())
+                    .callback(receivers[i])
+                    .build();
+            ymodems[i] = new YModem.Builder()
+                    .filePath(sources[i].getPath())
+                    .fileName(sources[i].getName())
+                    .sendSize(i % 3 == 0 ? 128 : 1024)
+                    .windowSize(windowSize)
+                    .transport(pipes[i])
+                    .callback(senders[i])
+                    .build();
+        }
+        for (YModem ymodem : ymodems) {
+            ymodem.start(null);
+        }
+        for (int i = 0; i < SESSIONS; i++) {
+            senders[i].assertSucceeded();
+            receivers[i].assertSucceeded();
+            ymodems[i].stop();
+            pipes[i].close();
+            Loopback.assertSameContent(sources[i], new File(directories[i], sources[i].getName()));
+        }
+    }
+
+    @Test
+    public void aggregateThroughputScales() throws Exception {
+        double single = throughput(1);
+        double aggregate = throughput(SESSIONS);
+        System.out.println(String.format("Stop-and-wait, %d ms each way: 1 session %.1f KB/s, %d sessions %.1f KB/s (%.1fx)",
+                DELAY, single / 1024, SESSIONS, aggregate / 1024, aggregate / single));
+        assertTrue("Sessions waited on each other", aggregate > single * SESSIONS / 4);
+    }
+
+    /**
+     * @return bytes per second of all sessions together
+     */
+    private double throughput(int sessions) throws Exception {
+        File[] sources = new File[sessions];
+        File[] directories = new File[sessions];
+        Loopback.Sender[] senders = new Loopback.Sender[sessions];
+        Loopback.Receiver[] receivers = new Loopback.Receiver[sessions];
+        SimulatedLink[] links = new SimulatedLink[sessions];
+        YModem[] ymodems = new YModem[sessions];
+        for (int i = 0; i < sessions; i++) {
+            sources[i] = Loopback.randomFile(folder.getRoot(), "timed" + sessions + "-" + i + ".bin", SIZE, i);
+            directories[i] = folder.newFolder("timed" + sessions + "-" + i);
+            senders[i] = new Loopback.Sender();
+            receivers[i] = new Loopback.Receiver();
+            links[i] = new SimulatedLink.Builder().delay(DELAY).build();
+            new YModemReceiver.Builder()
+                    .saveTo(directories[i])
+                    .transport(links[i].b())
+                    .callback(receivers[i])
+                    .build();
+            ymodems[i] = new YModem.Builder()
+                    .filePath(sources[i].getPath())
+                    .fileName(sources[i].getName())
+                    .transport(links[i].a())
+                    .callback(senders[i])
+                    .build();
+        }
+        long start = System.nanoTime();
+        for (YModem ymodem : ymodems) {
+            ymodem.start(null);
+        }
+        for (int i = 0; i < sessions; i++) {
+            senders[i].assertSucceeded();
+            receivers[i].assertSucceeded();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i < sessions; i++) {
+            ymodems[i].stop();
+            links[i].close();
+            Loopback.assertSameContent(sources[i], new File(directories[i], sources[i].getName()));
+        }
+        return (double) sessions * SIZE * 1000000000L / elapsed;
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.bw.yml;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Files offered deflated ("Z" header field), inflated by the receiver as they come
+ */
+public class DeflateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    @Test
+    public void acceptedOfferIsSentDeflated() throws Exception {
+        File source = compressibleFile(300 * 1024);
+        long sent = transfer(source, true, 1);
+        assertTrue("Sent " + sent + " of " + source.length(), sent < source.length() / 2);
+    }
+
+    @Test
+    public void deflatedThroughAWindow() throws Exception {
+        File source = compressibleFile(300 * 1024);
+        long sent = transfer(source, true, 8);
+        assertTrue("Sent " + sent + " of " + source.length(), sent < source.length() / 2);
+    }
+
+    @Test
+    public void declinedOfferIsSentPlain() throws Exception {
+        File source = compressibleFile(100 * 1024);
+        assertEquals(source.length(), transfer(source, false, 1));
+    }
+
+    //Log lines with a few random fields, about a fifth of it survives deflate
+    private File compressibleFile(int size) throws Exception {
+        File file = new File(folder.getRoot(), "log.txt");
+        Random random = new Random(size);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < size) {
+            text.append("2026-10-17 sensor ").append(random.nextInt(16)).append(" value ")
+                    .append(random.nextInt(1000)).append(" status ok\n");
+        }
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(text.substring(0, size).getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+
+    /**
+     * @return bytes of file data the sender counted at the end, the deflated stream if it was accepted
+     */
+    private long transfer(File source, boolean accept, int windowSize) throws Exception {
+        File directory = folder.newFolder();
+        final TransferProgress[] last = new TransferProgress[1];
+        Loopback.Sender sender = new Loopback.Sender() {
+            @Override
+            public void onTransferProgress(TransferProgress progress) {
+                last[0] = progress;
+            }
+        };
+        Loopback.Receiver receiver = new Loopback.Receiver();
+        PipeTransport pipe = new PipeTransport();
+        new YModemReceiver.Builder()
+                .saveTo(directory)
+                .acceptCompressed(accept)
+                .windowSize(windowSize)
+                .transport(pipe.peer())
+                .callback(receiver)
+                .build();
+        YModem ymodem = new YModem.Builder()
+                .filePath(source.getPath())
+                .fileName(source.getName())
+                .compress(true)
+                .windowSize(windowSize)
+                .transport(pipe)
+                .callback(sender)
+                .build();
+        ymodem.start(null);
+        sender.assertSucceeded();
+        receiver.assertSucceeded();
+        ymodem.stop();
+        pipe.close();
+        Loopback.assertSameContent(source, new File(directory, source.getName()));
+        return last[0].getTotal();
+    }
+
+}
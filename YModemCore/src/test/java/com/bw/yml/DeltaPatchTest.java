@@ -0,0 +1,133 @@
+package com.bw.yml;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Patches of an image against the one installed on the terminal
+ */
+public class DeltaPatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    //The base with a few bytes changed, a block inserted and the tail cut off
+    private static byte[] newVersion(byte[] base) {
+        byte[] insert = new byte[3000];
+        new Random(9).nextBytes(insert);
+        byte[] target = new byte[base.length + insert.length - 5000];
+        System.arraycopy(base, 0, target, 0, 100000);
+        System.arraycopy(insert, 0, target, 100000, insert.length);
+        System.arraycopy(base, 100000, target, 100000 + insert.length, target.length - 100000 - insert.length);
+        for (int i = 5000; i < target.length; i += 40000) {
+            target[i]++;
+        }
+        return target;
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void patchIsSmallAndRestoresTheTarget() throws Exception {
+        byte[] base = random(600 * 1024, 1);
+        byte[] target = newVersion(base);
+        byte[] patch = DeltaPatch.create(base, target, 1);
+        assertTrue("Patch of " + patch.length + " bytes", patch.length < target.length / 20);
+        assertArrayEquals(target, apply(base, patch));
+    }
+
+    @Test
+    public void patchDoesNotDependOnTheThreads() throws Exception {
+        byte[] base = random(700 * 1024, 2);
+        byte[] target = newVersion(base);
+        assertArrayEquals(DeltaPatch.create(base, target, 1), DeltaPatch.create(base, target, 4));
+    }
+
+    @Test
+    public void patchOfAnotherBaseIsRefused() throws Exception {
+        byte[] base = random(200 * 1024, 3);
+        byte[] patch = DeltaPatch.create(base, newVersion(base), 1);
+        try {
+            apply(random(200 * 1024, 4), patch);
+            fail("Applied to the wrong base");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void receiverAppliesThePatchToItsFile() throws Exception {
+        byte[] base = random(300 * 1024, 5);
+        byte[] target = newVersion(base);
+        File directory = folder.newFolder("terminal");
+        write(new File(directory, "firmware.bin"), base);
+        File targetFile = new File(folder.getRoot(), "firmware.bin");
+        write(targetFile, target);
+        File patch = new File(folder.getRoot(), "firmware.patch");
+        DeltaPatch.create(new File(directory, "firmware.bin"), targetFile, patch);
+
+        Loopback.Sender sender = new Loopback.Sender();
+        Loopback.Receiver receiver = new Loopback.Receiver();
+        PipeTransport pipe = new PipeTransport();
+        new YModemReceiver.Builder()
+                .saveTo(directory)
+                .acceptDelta(true)
+                .transport(pipe.peer())
+                .callback(receiver)
+                .build();
+        YModem ymodem = new YModem.Builder()
+                .addFile(new YModemFile(targetFile.getPath(), "firmware.bin", null, patch))
+                .transport(pipe)
+                .callback(sender)
+                .build();
+        ymodem.start(null);
+        sender.assertSucceeded();
+        receiver.assertSucceeded();
+        ymodem.stop();
+        pipe.close();
+        assertArrayEquals(target, Files.readAllBytes(new File(directory, "firmware.bin").toPath()));
+        assertTrue(Arrays.asList(directory.list()).toString(), directory.list().length == 1);
+    }
+
+    private static byte[] apply(byte[] base, byte[] patch) throws IOException {
+        File baseFile = File.createTempFile("base", ".bin");
+        try {
+            write(baseFile, base);
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            DeltaPatch.apply(baseFile, new ByteArrayInputStream(patch), target);
+            return target.toByteArray();
+        } finally {
+            baseFile.delete();
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+    }
+
+}
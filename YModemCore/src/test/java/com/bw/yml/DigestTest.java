@@ -0,0 +1,112 @@
+package com.bw.yml;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * The file data is digested on both ends while it goes through, the receiver checks it against
+ * the md5 of the header
+ */
+public class DigestTest {
+
+    private static final int ALL = FileDigest.MD5 | FileDigest.SHA256 | FileDigest.CRC32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    @Test
+    public void bothEndsDigestTheFile() throws Exception {
+        File source = Loopback.randomFile(folder.getRoot(), "fw.bin", 100 * 1024 + 3, 31);
+        byte[] data = Files.readAllBytes(source.toPath());
+        final FileDigest[] digests = new FileDigest[2];
+        Loopback.Sender sender = new Loopback.Sender() {
+            @Override
+            public void onFileDigest(String fileName, FileDigest digest) {
+                digests[0] = digest;
+            }
+        };
+        Loopback.Receiver receiver = new Loopback.Receiver() {
+            @Override
+            public void onFileDigest(String fileName, FileDigest digest) {
+                digests[1] = digest;
+            }
+        };
+        PipeTransport pipe = new PipeTransport();
+        new YModemReceiver.Builder()
+                .saveTo(folder.newFolder("received"))
+                .digest(ALL)
+                .transport(pipe.peer())
+                .callback(receiver)
+                .build();
+        YModem ymodem = new YModem.Builder()
+                .filePath(source.getPath())
+                .fileName(source.getName())
+                .digest(ALL)
+                .digestCache(null)
+                .transport(pipe)
+                .callback(sender)
+                .build();
+        ymodem.start(null);
+        sender.assertSucceeded();
+        receiver.assertSucceeded();
+        ymodem.stop();
+        pipe.close();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        for (FileDigest digest : digests) {
+            assertNotNull(digest);
+            assertEquals(data.length, digest.getLength());
+            assertEquals(hex("MD5", data), digest.getMd5());
+            assertEquals(hex("SHA-256", data), digest.getSha256());
+            assertEquals(crc.getValue(), digest.getCrc32());
+        }
+    }
+
+    @Test
+    public void wrongMd5CancelsTheSession() throws Exception {
+        File source = Loopback.randomFile(folder.getRoot(), "fw.bin", 20 * 1024, 32);
+        Loopback.Sender sender = new Loopback.Sender();
+        Loopback.Receiver receiver = new Loopback.Receiver();
+        PipeTransport pipe = new PipeTransport();
+        new YModemReceiver.Builder()
+                .saveTo(folder.newFolder("received"))
+                .transport(pipe.peer())
+                .callback(receiver)
+                .build();
+        YModem ymodem = new YModem.Builder()
+                .filePath(source.getPath())
+                .fileName(source.getName())
+                .checkMd5("0123456789abcdef0123456789abcdef")
+                .transport(pipe)
+                .callback(sender)
+                .build();
+        ymodem.start(null);
+        sender.awaitFailure();
+        ymodem.stop();
+        pipe.close();
+        assertFalse(receiver.failure == null);
+    }
+
+    private static String hex(String algorithm, byte[] data) throws Exception {
+        int digits = "MD5".equals(algorithm) ? 32 : 64;
+        return String.format("%0" + digits + "x", new BigInteger(1, MessageDigest.getInstance(algorithm).digest(data)));
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.bw.yml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link YModem} and a {@link YModemReceiver} talking over a {@link PipeTransport} in the test
+ */
+final class Loopback {
+
+    private static final long TIMEOUT = 60;
+
+    private Loopback() {
+    }
+
+    /**
+     * Keep the lines of the library out of the test output
+     */
+    static void quiet() {
+        Lg.setPrinter(new Lg.Printer() {
+            @Override
+            public void print(int priority, String tag, String msg, Throwable throwable) {
+            }
+        });
+    }
+
+    static File randomFile(File directory, String name, int size, long seed) throws IOException {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        File file = new File(directory, name);
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+        return file;
+    }
+
+    static void assertSameContent(File expected, File actual) throws IOException {
+        assertTrue(actual + " is missing", actual.isFile());
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+    }
+
+    /**
+     * Callback of the sender which remembers how the session ended
+     */
+    static class Sender implements YModemListener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String failure;
+
+        @Override
+        public void onDataReady(byte[] data) {
+        }
+
+        @Override
+        public void onProgress(long currentSent, long total) {
+        }
+
+        @Override
+        public void onSuccess() {
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(String reason) {
+            failure = reason;
+            done.countDown();
+        }
+
+        void assertSucceeded() throws InterruptedException {
+            assertTrue("The sender didn't finish", done.await(TIMEOUT, TimeUnit.SECONDS));
+            assertNull(failure);
+        }
+
+        void awaitFailure() throws InterruptedException {
+            assertTrue("The sender didn't finish", done.await(TIMEOUT, TimeUnit.SECONDS));
+            assertTrue("The sender didn't fail", failure != null);
+        }
+    }
+
+    /**
+     * Callback of the receiver which remembers how the session ended
+     */
+    static class Receiver implements YModemReceiverListener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String failure;
+
+        @Override
+        public void onDataReady(byte[] data) {
+        }
+
+        @Override
+        public void onFileStart(String fileName, long fileSize) {
+        }
+
+        @Override
+        public void onProgress(long currentReceived, long total) {
+        }
+
+        @Override
+        public void onFileReceived(String fileName) {
+        }
+
+        @Override
+        public void onSuccess() {
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(String reason) {
+            failure = reason;
+            done.countDown();
+        }
+
+        void assertSucceeded() throws InterruptedException {
+            assertTrue("The receiver didn't finish", done.await(TIMEOUT, TimeUnit.SECONDS));
+            assertNull(failure);
+        }
+    }
+
+}
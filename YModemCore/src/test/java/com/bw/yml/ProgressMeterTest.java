@@ -0,0 +1,75 @@
+package com.bw.yml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressMeterTest {
+
+    //The interval is far longer than the test, only the first and the last report go out
+    @Test
+    public void reportsWithinTheIntervalAreCoalesced() {
+        ProgressMeter meter = new ProgressMeter(60000, 0);
+        meter.start("fw.bin", 0, 1000);
+        TransferProgress first = meter.update(10);
+        assertNotNull(first);
+        assertFalse(first.isComplete());
+        for (int bytes = 20; bytes < 1000; bytes += 10) {
+            assertNull(meter.update(bytes));
+        }
+        TransferProgress last = meter.update(1000);
+        assertNotNull(last);
+        assertTrue(last.isComplete());
+        assertEquals(0, last.getEta());
+        assertNull(meter.update(1000));
+        assertNull(meter.finish());
+    }
+
+    @Test
+    public void byteIntervalReportsBeforeTheTime() {
+        ProgressMeter meter = new ProgressMeter(60000, 100);
+        meter.start("fw.bin", 0, 1000);
+        assertNotNull(meter.update(10));
+        assertNull(meter.update(60));
+        TransferProgress progress = meter.update(120);
+        assertNotNull(progress);
+        assertEquals(120, progress.getBytes());
+    }
+
+    //The padding of the last package or a larger deflated stream never goes past the file
+    @Test
+    public void bytesAreClippedToTheTotal() {
+        ProgressMeter meter = new ProgressMeter(0, 0);
+        meter.start("fw.bin", 0, 1000);
+        TransferProgress progress = meter.update(1024);
+        assertEquals(1000, progress.getBytes());
+        assertTrue(progress.isComplete());
+    }
+
+    @Test
+    public void unknownTotalIsTakenAtTheEnd() {
+        ProgressMeter meter = new ProgressMeter(0, 0);
+        meter.start("fw.bin", 0, -1);
+        TransferProgress progress = meter.update(500);
+        assertEquals(-1, progress.getTotal());
+        assertEquals(-1, progress.getEta());
+        TransferProgress last = meter.finish();
+        assertEquals(500, last.getTotal());
+        assertTrue(last.isComplete());
+    }
+
+    //A resumed offset is no progress of this transmission
+    @Test
+    public void resumedBytesDontCountTowardsTheRate() throws Exception {
+        ProgressMeter meter = new ProgressMeter(0, 0);
+        meter.start("fw.bin", 900, 1000);
+        Thread.sleep(20);
+        TransferProgress progress = meter.update(910);
+        assertTrue(String.valueOf(progress.getAverageRate()), progress.getAverageRate() < 10 * 1000 / 20 + 1);
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.bw.yml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Responses split over several notifications or several of them in one
+ */
+public class ResponseDecoderTest {
+
+    private static final byte ACK = 0x06;
+    private static final byte NAK = 0x15;
+
+    private final ResponseDecoder decoder = new ResponseDecoder();
+
+    //Decode one notification, every response completed by it
+    private List<Integer> decode(int mode, byte... data) {
+        List<Integer> responses = new ArrayList<>();
+        int offset = 0;
+        while (offset < data.length) {
+            offset = decoder.decode(data, offset, data.length, mode);
+            int response = decoder.takeResponse();
+            if (response != ResponseDecoder.NONE) {
+                responses.add(response);
+            }
+        }
+        return responses;
+    }
+
+    @Test
+    public void headerAnswerSplitAfterAck() {
+        decoder.offer(0);
+        assertTrue(decode(ResponseDecoder.MODE_HEADER, ACK).isEmpty());
+        assertEquals(ResponseDecoder.HEADER_ACK, (int) decode(ResponseDecoder.MODE_HEADER, (byte) 'C').get(0));
+        assertEquals('C', decoder.argument());
+        assertEquals(0, decoder.flags());
+    }
+
+    @Test
+    public void offeredFlagsInTheirOwnNotifications() {
+        decoder.offer(ResponseDecoder.FLAG_RESUME | ResponseDecoder.FLAG_DEFLATE);
+        assertTrue(decode(ResponseDecoder.MODE_HEADER, ACK, (byte) 'W').isEmpty());
+        assertTrue(decoder.isWaitingForFlags());
+        assertTrue(decode(ResponseDecoder.MODE_HEADER, (byte) 'R').isEmpty());
+        List<Integer> responses = decode(ResponseDecoder.MODE_HEADER, (byte) 'Z');
+        assertEquals(1, responses.size());
+        assertEquals(ResponseDecoder.HEADER_ACK, (int) responses.get(0));
+        assertEquals('W', decoder.argument());
+        assertEquals(ResponseDecoder.FLAG_RESUME | ResponseDecoder.FLAG_DEFLATE, decoder.flags());
+    }
+
+    @Test
+    public void flagWhichWasNotOfferedIsNotTaken() {
+        decoder.offer(ResponseDecoder.FLAG_DELTA);
+        decode(ResponseDecoder.MODE_HEADER, ACK, (byte) 'C');
+        assertTrue(decoder.isWaitingForFlags());
+        assertTrue(decoder.flush());
+        assertEquals(ResponseDecoder.HEADER_ACK, decoder.takeResponse());
+        assertEquals(0, decoder.flags());
+    }
+
+    @Test
+    public void coalescedAcksOfTheBody() {
+        List<Integer> responses = decode(ResponseDecoder.MODE_BODY, ACK, ACK, NAK, ACK);
+        assertEquals(4, responses.size());
+        assertEquals(ACK, (int) responses.get(0));
+        assertEquals(ACK, (int) responses.get(1));
+        assertEquals(NAK, (int) responses.get(2));
+        assertEquals(ACK, (int) responses.get(3));
+    }
+
+    @Test
+    public void repeatedHeaderAnswerDuringTheBodyIsSkipped() {
+        List<Integer> responses = decode(ResponseDecoder.MODE_BODY, ACK, (byte) 'C', ACK);
+        assertEquals(1, responses.size());
+        assertEquals(ACK, (int) responses.get(0));
+    }
+
+    @Test
+    public void sequenceNumbersSplitFromTheirAck() {
+        assertTrue(decode(ResponseDecoder.MODE_SEQUENCE, ACK).isEmpty());
+        List<Integer> responses = decode(ResponseDecoder.MODE_SEQUENCE, (byte) 5, NAK);
+        assertEquals(1, responses.size());
+        assertEquals(ResponseDecoder.SEQUENCE_ACK, (int) responses.get(0));
+        assertEquals(5, decoder.argument());
+        responses = decode(ResponseDecoder.MODE_SEQUENCE, (byte) 200);
+        assertEquals(ResponseDecoder.SEQUENCE_NAK, (int) responses.get(0));
+        assertEquals(200, decoder.argument());
+    }
+
+    @Test
+    public void md5AnswerInPieces() {
+        assertTrue(decode(ResponseDecoder.MODE_END, (byte) 'M', (byte) 'D').isEmpty());
+        assertTrue(decode(ResponseDecoder.MODE_END, (byte) '5', (byte) '_').isEmpty());
+        assertEquals(ResponseDecoder.MD5_FAILED,
+                (int) decode(ResponseDecoder.MODE_END, (byte) 'E', (byte) 'R', (byte) 'R').get(0));
+        assertEquals(ResponseDecoder.MD5_CHECKED,
+                (int) decode(ResponseDecoder.MODE_END, (byte) 'M', (byte) 'D', (byte) '5', (byte) '_',
+                        (byte) 'O', (byte) 'K').get(0));
+    }
+
+    @Test
+    public void resetDropsAHalfResponse() {
+        decode(ResponseDecoder.MODE_SEQUENCE, ACK);
+        decoder.reset();
+        assertTrue(decode(ResponseDecoder.MODE_SEQUENCE, (byte) 7).isEmpty());
+        assertFalse(decoder.isWaitingForFlags());
+    }
+
+}
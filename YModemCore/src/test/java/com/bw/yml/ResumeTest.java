@@ -0,0 +1,180 @@
+package com.bw.yml;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A transfer stopped half way and started again, with the journals of both sides
+ */
+public class ResumeTest {
+
+    private static final int SIZE = 64 * 1024;
+    private static final long STOP_AT = 32 * 1024;
+    private static final String PEER = "AA:BB:CC:DD:EE:FF";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    @Test
+    public void secondSessionContinuesAtTheJournaledOffset() throws Exception {
+        File source = Loopback.randomFile(folder.getRoot(), "image.bin", SIZE, 1);
+        File journals = folder.newFolder("journals");
+        File directory = folder.newFolder("received");
+        interruptedSession(source, null, journals, directory, 1);
+        long firstProgress = session(source, null, journals, directory, 1);
+        assertTrue("Started over at " + firstProgress, firstProgress > STOP_AT / 2);
+        Loopback.assertSameContent(source, new File(directory, source.getName()));
+        assertFalse("The journal of the receiver stayed", new File(directory, "image.bin.received.ymj").exists());
+    }
+
+    //The target is preallocated, its length tells nothing about what has been written
+    @Test
+    public void offerPastTheJournalOfTheReceiverIsDeclined() throws Exception {
+        File source = Loopback.randomFile(folder.getRoot(), "image.bin", SIZE, 2);
+        File journals = folder.newFolder("journals");
+        File directory = folder.newFolder("received");
+        interruptedSession(source, null, journals, directory, 1);
+        assertTrue(new File(directory, "image.bin.received.ymj").delete());
+        long firstProgress = session(source, null, journals, directory, 1);
+        assertTrue("Resumed at " + firstProgress, firstProgress < STOP_AT / 2);
+        Loopback.assertSameContent(source, new File(directory, source.getName()));
+    }
+
+    //80 characters of name, an md5 and the window leave no room for the resume offset, it must not arrive cut off
+    @Test
+    public void longNameAndMd5AreNotResumedAtACutOffset() throws Exception {
+        char[] name = new char[80];
+        Arrays.fill(name, 'f');
+        File source = Loopback.randomFile(folder.getRoot(), new String(name), SIZE, 3);
+        String md5 = String.format("%032x", new BigInteger(1,
+                MessageDigest.getInstance("MD5").digest(Files.readAllBytes(source.toPath()))));
+        File journals = folder.newFolder("journals");
+        File directory = folder.newFolder("received");
+        interruptedSession(source, md5, journals, directory, 8);
+        long firstProgress = session(source, md5, journals, directory, 8);
+        assertTrue("Resumed at " + firstProgress, firstProgress < STOP_AT / 2);
+        Loopback.assertSameContent(source, new File(directory, source.getName()));
+    }
+
+    @Test
+    public void headerLeavesOutFieldsWhichDoNotFit() {
+        char[] name = new char[79];
+        Arrays.fill(name, 'f');
+        String md5 = "0123456789abcdef0123456789abcdef";
+        String[] extensions = {"W8", "R204800", "X"};
+        assertFalse(PackageEncoder.fitsFileName(new String(name), 409600, md5, new String[]{"W8"}, "R204800"));
+        assertArrayEquals(new String[]{new String(name), "409600", md5, "W8", "X"},
+                headerFields(new String(name), 409600, md5, extensions));
+
+        //No room for the md5, its place stays empty for the fields after it
+        char[] longer = new char[100];
+        Arrays.fill(longer, 'g');
+        assertArrayEquals(new String[]{new String(longer), "409600", "", "X"},
+                headerFields(new String(longer), 409600, md5, new String[]{"X"}));
+    }
+
+    private static String[] headerFields(String fileName, long fileSize, String md5, String[] extensions) {
+        byte[] header = new byte[PackageEncoder.packageLength(128)];
+        assertEquals(header.length, PackageEncoder.encodeFileName(fileName, fileSize, md5, extensions, header, 0));
+        int end = 3 + 128;
+        while (end > 3 && header[end - 1] == 0) {
+            end--;
+        }
+        return new String(header, 3, end - 3, StandardCharsets.UTF_8).split("\0", -1);
+    }
+
+    //Stop both sides once STOP_AT bytes have been acknowledged
+    private void interruptedSession(File source, String md5, File journals, File directory, int windowSize)
+            throws Exception {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final YModem[] ymodem = new YModem[1];
+        Loopback.Sender sender = new Loopback.Sender() {
+            @Override
+            public void onProgress(long currentSent, long total) {
+                if (currentSent >= STOP_AT && stopped.getCount() > 0) {
+                    ymodem[0].stop();
+                    stopped.countDown();
+                }
+            }
+        };
+        PipeTransport pipe = new PipeTransport();
+        YModemReceiver receiver = receiver(directory, windowSize, pipe, new Loopback.Receiver());
+        ymodem[0] = sender(source, md5, journals, windowSize, pipe, sender);
+        ymodem[0].start(null);
+        assertTrue(stopped.await(60, TimeUnit.SECONDS));
+        //Let the last package written reach the receiver
+        Thread.sleep(200);
+        receiver.stop();
+        pipe.close();
+    }
+
+    /**
+     * @return the first progress of the sender, the offset it resumed at plus a package
+     */
+    private long session(File source, String md5, File journals, File directory, int windowSize)
+            throws Exception {
+        final long[] firstProgress = {-1};
+        Loopback.Sender sender = new Loopback.Sender() {
+            @Override
+            public void onProgress(long currentSent, long total) {
+                if (firstProgress[0] < 0) {
+                    firstProgress[0] = currentSent;
+                }
+            }
+        };
+        Loopback.Receiver receiverListener = new Loopback.Receiver();
+        PipeTransport pipe = new PipeTransport();
+        receiver(directory, windowSize, pipe, receiverListener);
+        YModem ymodem = sender(source, md5, journals, windowSize, pipe, sender);
+        ymodem.start(null);
+        sender.assertSucceeded();
+        receiverListener.assertSucceeded();
+        ymodem.stop();
+        pipe.close();
+        return firstProgress[0];
+    }
+
+    private static YModemReceiver receiver(File directory, int windowSize, PipeTransport pipe,
+                                           Loopback.Receiver listener) {
+        return new YModemReceiver.Builder()
+                .saveTo(directory)
+                .windowSize(windowSize)
+                .acceptResume(true)
+                .transport(pipe.peer())
+                .callback(listener)
+                .build();
+    }
+
+    private static YModem sender(File source, String md5, File journals, int windowSize, PipeTransport pipe,
+                                 Loopback.Sender listener) {
+        return new YModem.Builder()
+                .addFile(new YModemFile(source.getPath(), source.getName(), md5))
+                .windowSize(windowSize)
+                .resumeJournal(journals, PEER)
+                .transport(pipe)
+                .callback(listener)
+                .build();
+    }
+
+}
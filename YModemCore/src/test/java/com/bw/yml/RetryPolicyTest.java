@@ -0,0 +1,96 @@
+package com.bw.yml;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(23);
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    //A low RTT measured on the data must not hurry the other phases
+    @Test
+    public void defaultKeepsSixSecondsOutsideOfTheData() {
+        RetryPolicy policy = RetryPolicy.DEFAULT;
+        for (RetryPolicy.Phase phase : RetryPolicy.Phase.values()) {
+            assertEquals(5, policy.getRetries(phase));
+            long expected = phase == RetryPolicy.Phase.DATA ? 200 : 6000;
+            assertEquals(phase.name(), expected, policy.timeout(phase, 200, false, random));
+        }
+        assertEquals(0, policy.getSessionDeadline());
+    }
+
+    @Test
+    public void rttAboveTheMinimumIsTaken() {
+        assertEquals(9000, RetryPolicy.DEFAULT.timeout(RetryPolicy.Phase.EOT, 9000, false, random));
+        assertEquals(9000, RetryPolicy.DEFAULT.timeout(RetryPolicy.Phase.DATA, 9000, false, random));
+    }
+
+    @Test
+    public void jitterOnlyAfterSilenceAndWithinItsBounds() {
+        RetryPolicy policy = RetryPolicy.BLE;
+        assertEquals(4000, policy.timeout(RetryPolicy.Phase.DATA, 4000, false, random));
+        boolean spread = false;
+        for (int i = 0; i < 1000; i++) {
+            long timeout = policy.timeout(RetryPolicy.Phase.DATA, 4000, true, random);
+            assertTrue(String.valueOf(timeout), timeout >= 3000 && timeout <= 5000);
+            spread |= timeout != 4000;
+        }
+        assertTrue(spread);
+        //The jitter never goes below the minimum of the phase
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.timeout(RetryPolicy.Phase.END, 4000, true, random) >= 5000);
+        }
+    }
+
+    @Test
+    public void builderStartsFromAPreset() {
+        RetryPolicy policy = new RetryPolicy.Builder(RetryPolicy.SERIAL)
+                .phase(RetryPolicy.Phase.DATA, 3, 500)
+                .sessionDeadline(-1)
+                .build();
+        assertEquals(3, policy.getRetries(RetryPolicy.Phase.DATA));
+        assertEquals(500, policy.getMinTimeout(RetryPolicy.Phase.DATA));
+        assertEquals(RetryPolicy.SERIAL.getRetries(RetryPolicy.Phase.HEADER), policy.getRetries(RetryPolicy.Phase.HEADER));
+        assertEquals(RetryPolicy.SERIAL.getMultiplier(), policy.getMultiplier(), 0);
+        assertEquals(0, policy.getSessionDeadline());
+    }
+
+    //Nobody answers the handshake, the deadline ends the session long before the resends would
+    @Test
+    public void sessionDeadlineEndsASilentSession() throws Exception {
+        File source = Loopback.randomFile(folder.getRoot(), "fw.bin", 4096, 24);
+        Loopback.Sender sender = new Loopback.Sender();
+        PipeTransport pipe = new PipeTransport();
+        YModem ymodem = new YModem.Builder()
+                .filePath(source.getPath())
+                .fileName(source.getName())
+                .retryPolicy(new RetryPolicy.Builder(RetryPolicy.DEFAULT).sessionDeadline(300).build())
+                .transport(pipe)
+                .callback(sender)
+                .build();
+        long start = System.nanoTime();
+        ymodem.start(null);
+        sender.awaitFailure();
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        ymodem.stop();
+        pipe.close();
+        assertTrue(elapsed + " ms", elapsed < 6000);
+    }
+
+}
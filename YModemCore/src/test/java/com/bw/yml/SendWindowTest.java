@@ -0,0 +1,170 @@
+package com.bw.yml;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Transfers over a link which corrupts or loses packages and responses, long enough for the
+ * sequence numbers to wrap around while packages are resent, or around a package whose ACK got lost
+ */
+public class SendWindowTest {
+
+    //Resends come quickly, no phase waits longer than the RTT says
+    private static final RetryPolicy LOSSY = new RetryPolicy.Builder()
+            .phase(RetryPolicy.Phase.HANDSHAKE, 20, 0)
+            .phase(RetryPolicy.Phase.HEADER, 20, 0)
+            .phase(RetryPolicy.Phase.DATA, 20, 0)
+            .phase(RetryPolicy.Phase.EOT, 20, 0)
+            .phase(RetryPolicy.Phase.END, 20, 0)
+            .backOff(1.5, 0)
+            .build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FaultyLink link;
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    @After
+    public void tearDown() {
+        if (link != null) {
+            link.close();
+        }
+    }
+
+    //Only the corrupted packages are resent, the window goes on past them
+    @Test
+    public void windowResendsCorruptedPackagesAcrossSequenceWrap() throws Exception {
+        transfer(300 * 1024, 8, 0, 0.02, 200);
+    }
+
+    @Test
+    public void stopAndWaitResendsCorruptedPackages() throws Exception {
+        transfer(32 * 1024, 1, 0, 0.05, 200);
+    }
+
+    //A lost ACK takes long to time out while the other packages fly, the window must not slide past it
+    @Test
+    public void windowSurvivesLossAcrossSequenceWrap() throws Exception {
+        transfer(300 * 1024, 8, 0.02, 0, 300);
+    }
+
+    @Test
+    public void stopAndWaitSurvivesLoss() throws Exception {
+        transfer(64 * 1024, 1, 0.05, 0, 20);
+    }
+
+    @Test
+    public void windowOnACleanLink() throws Exception {
+        transfer(300 * 1024, 16, 0, 0, 20);
+    }
+
+    private void transfer(int size, int windowSize, double loss, double corruption, long timeoutFloor)
+            throws Exception {
+        File source = Loopback.randomFile(folder.getRoot(), "image.bin", size, size);
+        File directory = folder.newFolder("received");
+        link = new FaultyLink(loss, corruption, 42);
+        Loopback.Sender sender = new Loopback.Sender() {
+            @Override
+            public void onDataReady(byte[] data) {
+                link.toReceiver(data);
+            }
+        };
+        Loopback.Receiver receiver = new Loopback.Receiver() {
+            @Override
+            public void onDataReady(byte[] data) {
+                link.toSender(data);
+            }
+        };
+        link.receiver = new YModemReceiver.Builder()
+                .saveTo(directory)
+                .windowSize(windowSize)
+                .callback(receiver)
+                .build();
+        link.sender = new YModem.Builder()
+                .filePath(source.getPath())
+                .fileName(source.getName())
+                .windowSize(windowSize)
+                .timeoutBounds(timeoutFloor, 1000)
+                .retryPolicy(LOSSY)
+                .callback(sender)
+                .build();
+        link.sender.start(null);
+        sender.assertSucceeded();
+        receiver.assertSucceeded();
+        link.sender.stop();
+        Loopback.assertSameContent(source, new File(directory, source.getName()));
+    }
+
+    //Each direction on its own thread, a write is dropped as a whole or a byte of a package is flipped
+    private static class FaultyLink {
+        private final ExecutorService toReceiver = Executors.newSingleThreadExecutor();
+        private final ExecutorService toSender = Executors.newSingleThreadExecutor();
+        private final Random random;
+        private final double loss;
+        private final double corruption;
+        volatile YModem sender;
+        volatile YModemReceiver receiver;
+
+        FaultyLink(double loss, double corruption, long seed) {
+            this.loss = loss;
+            this.corruption = corruption;
+            this.random = new Random(seed);
+        }
+
+        //A copy of the bytes as they arrive, null if the write got lost
+        private synchronized byte[] transmit(byte[] data) {
+            if (random.nextDouble() < loss) {
+                return null;
+            }
+            //The sender resends the same array
+            byte[] copy = data.clone();
+            if (copy.length > 5 && random.nextDouble() < corruption) {//The receiver sees a CRC error
+                copy[3 + random.nextInt(copy.length - 5)] ^= 0x10;
+            }
+            return copy;
+        }
+
+        void toReceiver(byte[] data) {
+            final byte[] copy = transmit(data);
+            if (copy != null) {
+                toReceiver.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        receiver.onReceiveData(copy);
+                    }
+                });
+            }
+        }
+
+        void toSender(byte[] data) {
+            final byte[] copy = transmit(data);
+            if (copy != null) {
+                toSender.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sender.onReceiveData(copy);
+                    }
+                });
+            }
+        }
+
+        void close() {
+            toReceiver.shutdownNow();
+            toSender.shutdownNow();
+        }
+    }
+
+}
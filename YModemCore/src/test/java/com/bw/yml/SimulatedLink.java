@@ -0,0 +1,184 @@
+package com.bw.yml;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two {@link YModemTransport} ends of a link with a byte rate, a one-way delay, lost writes and
+ * bit errors, for the tests and {@link Benchmark}. A write completes when its last byte has been
+ * clocked out at the rate, the other end gets it one delay later. Both directions run on one
+ * thread, the receivers are called on it.
+ */
+final class SimulatedLink {
+
+    private static final int WRITE_CREDITS = 4;
+    private static final int MTU = 64 * 1024;
+
+    private final ScheduledThreadPoolExecutor clock;
+    private final long delayNanos;
+    private final long bytesPerSecond;
+    private final double loss;
+    private final double bitErrorRate;
+    private final Random random;
+    private final End a;
+    private final End b;
+
+    private SimulatedLink(Builder builder) {
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(builder.delay);
+        this.bytesPerSecond = builder.bytesPerSecond;
+        this.loss = builder.loss;
+        this.bitErrorRate = builder.bitErrorRate;
+        this.random = new Random(builder.seed);
+        this.clock = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SimulatedLink");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.a = new End();
+        this.b = new End();
+        a.peer = b;
+        b.peer = a;
+    }
+
+    End a() {
+        return a;
+    }
+
+    End b() {
+        return b;
+    }
+
+    void close() {
+        clock.shutdownNow();
+    }
+
+    //A copy of the bytes as they arrive, null if the write got lost
+    private synchronized byte[] transmit(PooledPackage data) {
+        byte[] bytes = new byte[data.length()];
+        data.buffer().get(bytes);
+        if (loss > 0 && random.nextDouble() < loss) {
+            return null;
+        }
+        if (bitErrorRate > 0) {
+            for (int i = 0; i < bytes.length; i++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    if (random.nextDouble() < bitErrorRate) {
+                        bytes[i] ^= 1 << bit;
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    final class End implements YModemTransport {
+        private End peer;
+        private volatile Receiver receiver;
+        //when the last byte written so far has left, guarded by the link
+        private long busyUntil = 0;
+
+        @Override
+        public void write(PooledPackage data, final WriteCallback callback) {
+            final byte[] bytes = transmit(data);
+            long now = System.nanoTime();
+            long left;
+            synchronized (SimulatedLink.this) {
+                long start = Math.max(now, busyUntil);
+                busyUntil = start + (bytesPerSecond > 0 ? data.length() * 1000000000L / bytesPerSecond : 0);
+                left = busyUntil;
+            }
+            clock.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onWritten(true);
+                }
+            }, left - now, TimeUnit.NANOSECONDS);
+            if (bytes != null) {
+                clock.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        Receiver target = peer.receiver;
+                        if (target != null) {
+                            target.onReceive(bytes);
+                        }
+                    }
+                }, left - now + delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public int getWriteCredits() {
+            return WRITE_CREDITS;
+        }
+
+        @Override
+        public int getMtu() {
+            return MTU;
+        }
+
+        @Override
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void close() {
+            SimulatedLink.this.close();
+        }
+    }
+
+    static class Builder {
+        private long delay = 0;
+        private long bytesPerSecond = 0;
+        private double loss = 0;
+        private double bitErrorRate = 0;
+        private long seed = 1;
+
+        /**
+         * One-way delay, the round trip takes twice as long plus the time on the wire
+         */
+        Builder delay(long millis) {
+            this.delay = millis;
+            return this;
+        }
+
+        /**
+         * Bytes per second in each direction, 0 for no limit
+         */
+        Builder rate(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Share of the writes which never arrive
+         */
+        Builder loss(double loss) {
+            this.loss = loss;
+            return this;
+        }
+
+        /**
+         * Chance of every bit to arrive flipped
+         */
+        Builder bitErrors(double bitErrorRate) {
+            this.bitErrorRate = bitErrorRate;
+            return this;
+        }
+
+        Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        SimulatedLink build() {
+            return new SimulatedLink(this);
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.bw.yml;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * The core on a plain JVM: files come from the file system or from a {@link SourceOpener} in
+ * place of the assets of an Android app
+ */
+public class SourceOpenerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        Loopback.quiet();
+    }
+
+    @Test
+    public void assetsComeFromTheOpener() throws Exception {
+        final File source = Loopback.randomFile(folder.getRoot(), "fw.bin", 50 * 1024 + 7, 21);
+        final String[] opened = new String[1];
+        SourceOpener opener = new SourceOpener() {
+            @Override
+            public InputStream open(String uri) throws IOException {
+                opened[0] = uri;
+                return new FileInputStream(source);
+            }
+        };
+        File directory = folder.newFolder("received");
+        Loopback.Sender sender = new Loopback.Sender();
+        Loopback.Receiver receiver = new Loopback.Receiver();
+        PipeTransport pipe = new PipeTransport();
+        new YModemReceiver.Builder()
+                .saveTo(directory)
+                .transport(pipe.peer())
+                .callback(receiver)
+                .build();
+        YModem ymodem = new YModem.Builder()
+                .with(opener)
+                .filePath("assets://fw.bin")
+                .fileName("fw.bin")
+                .transport(pipe)
+                .callback(sender)
+                .build();
+        ymodem.start(null);
+        sender.assertSucceeded();
+        receiver.assertSucceeded();
+        ymodem.stop();
+        pipe.close();
+        assertEquals("assets://fw.bin", opened[0]);
+        Loopback.assertSameContent(source, new File(directory, "fw.bin"));
+    }
+
+    @Test
+    public void assetsWithoutAnOpenerFail() {
+        try {
+            YModemUtil.getInputStream(null, "assets://fw.bin", 1024).close();
+            fail("Opened an asset without an opener");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void filePathsNeedNoOpener() throws Exception {
+        File source = Loopback.randomFile(folder.getRoot(), "plain.bin", 3000, 22);
+        InputStream input = YModemUtil.getInputStream(null, "file://" + source.getPath(), 1024);
+        try {
+            assertEquals(3000, input.available());
+        } finally {
+            input.close();
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.bw.yml;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens "assets://" paths from the assets of the app, what with(Context) of the builders used to do
+ */
+public class AssetsOpener implements SourceOpener {
+
+    private final Context context;
+
+    public AssetsOpener(Context context) {
+        //The application context, the transfer may outlive an activity
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+    }
+
+    @Override
+    public InputStream open(String uri) throws IOException {
+        return context.getAssets().open(SourceScheme.ASSETS.crop(uri));
+    }
+
+}
@@ -0,0 +1,232 @@
+package com.bw.yml;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A BLE characteristic pair: packages are written to one characteristic in chunks of the ATT
+ * payload (MTU - 3), the bytes of the other side come in as notifications of the other one.
+ * <p>
+ * Android allows a single GATT operation at a time, the next chunk goes out from
+ * {@link #onCharacteristicWrite(BluetoothGattCharacteristic, int)}. The app keeps its
+ * BluetoothGattCallback and forwards onCharacteristicWrite(), onCharacteristicChanged() and
+ * onMtuChanged() of the characteristics to this transport while it is in use.
+ */
+public class GattTransport implements YModemTransport {
+
+    //ATT header of a write
+    private static final int ATT_OVERHEAD = 3;
+    private static final int DEFAULT_MTU = 23;
+    //one package being chunked, the next one waiting so its first chunk follows the last one
+    private static final int WRITE_CREDITS = 2;
+
+    private final BluetoothGatt gatt;
+    private final BluetoothGattCharacteristic writeCharacteristic;
+    private final BluetoothGattCharacteristic notifyCharacteristic;
+    private volatile int mtu = DEFAULT_MTU;
+    private volatile Receiver receiver;
+    //guarded by this
+    private final ArrayDeque<Write> queue = new ArrayDeque<>();
+    //finished writes, reused for the next packages
+    private final ArrayDeque<Write> spare = new ArrayDeque<>();
+    private Write current;
+    //a chunk of current is on its way
+    private boolean writing = false;
+    private boolean closed = false;
+    //chunk arrays by their length, reused: the stack copies the value when the write starts
+    private byte[][] chunks = new byte[0][];
+
+    /**
+     * Without a response the writes are only flow controlled by the stack, which is what the
+     * throughput needs. A characteristic without that property is written with a response.
+     */
+    public GattTransport(BluetoothGatt gatt, BluetoothGattCharacteristic writeCharacteristic,
+                         BluetoothGattCharacteristic notifyCharacteristic) {
+        this.gatt = gatt;
+        this.writeCharacteristic = writeCharacteristic;
+        this.notifyCharacteristic = notifyCharacteristic;
+        if ((writeCharacteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0) {
+            writeCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        }
+    }
+
+    /**
+     * The MTU the link agreed on, from onMtuChanged() after gatt.requestMtu(). Takes effect
+     * with the next package.
+     */
+    public void setMtu(int mtu) {
+        this.mtu = Math.max(DEFAULT_MTU, mtu);
+    }
+
+    /**
+     * Forwarded from BluetoothGattCallback, the chunk has been written (or taken by the stack)
+     */
+    public void onCharacteristicWrite(BluetoothGattCharacteristic characteristic, int status) {
+        if (characteristic != writeCharacteristic && !characteristic.getUuid().equals(writeCharacteristic.getUuid())) {
+            return;
+        }
+        Write done = null;
+        boolean success = status == BluetoothGatt.GATT_SUCCESS;
+        synchronized (this) {
+            if (!writing) {//A write of the app itself
+                return;
+            }
+            writing = false;
+            if (!success || current.offset >= current.data.length()) {
+                done = current;
+                current = null;
+            }
+        }
+        finish(done, success);
+        writeNext();
+    }
+
+    /**
+     * Forwarded from BluetoothGattCallback, bytes from the other side
+     */
+    public void onCharacteristicChanged(BluetoothGattCharacteristic characteristic) {
+        Receiver target = receiver;
+        if (target != null && (characteristic == notifyCharacteristic
+                || characteristic.getUuid().equals(notifyCharacteristic.getUuid()))) {
+            byte[] value = characteristic.getValue();
+            if (value != null && value.length > 0) {
+                target.onReceive(value);
+            }
+        }
+    }
+
+    @Override
+    public void write(PooledPackage data, WriteCallback callback) {
+        synchronized (this) {
+            Write write = spare.poll();
+            queue.add((write != null ? write : new Write()).reset(data, callback));
+        }
+        writeNext();
+    }
+
+    //Start the next chunk unless one is on its way, completions are called out of the lock
+    private void writeNext() {
+        while (true) {
+            Write failed;
+            synchronized (this) {
+                if (writing) {
+                    return;
+                }
+                if (current == null) {
+                    current = queue.poll();
+                    if (current == null) {
+                        return;
+                    }
+                    current.chunk = Math.max(1, mtu - ATT_OVERHEAD);
+                }
+                if (!closed && writeChunk(current)) {
+                    writing = true;
+                    return;
+                }
+                failed = current;
+                current = null;
+            }
+            finish(failed, false);
+        }
+    }
+
+    private boolean writeChunk(Write write) {
+        int length = Math.min(write.chunk, write.data.length() - write.offset);
+        byte[] chunk = chunk(length);
+        write.buffer.position(write.offset);
+        write.buffer.get(chunk);
+        try {
+            writeCharacteristic.setValue(chunk);
+            if (!gatt.writeCharacteristic(writeCharacteristic)) {
+                Lg.f("GATT write rejected");
+                return false;
+            }
+        } catch (SecurityException e) {
+            e.printStackTrace();
+            return false;
+        }
+        write.offset += length;
+        return true;
+    }
+
+    //Only the last chunk of a package has another length, after the first packages nothing is allocated
+    private byte[] chunk(int length) {
+        if (length >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, length + 1);
+        }
+        if (chunks[length] == null) {
+            chunks[length] = new byte[length];
+        }
+        return chunks[length];
+    }
+
+    private void finish(Write write, boolean success) {
+        if (write != null) {
+            WriteCallback callback = write.callback;
+            synchronized (this) {
+                write.reset(null, null);
+                spare.push(write);
+            }
+            callback.onWritten(success);
+        }
+    }
+
+    @Override
+    public int getWriteCredits() {
+        return WRITE_CREDITS;
+    }
+
+    @Override
+    public int getMtu() {
+        return mtu - ATT_OVERHEAD;
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Fail the pending writes, the connection itself belongs to the app
+     */
+    @Override
+    public void close() {
+        Write[] failed;
+        synchronized (this) {
+            closed = true;
+            failed = queue.toArray(new Write[0]);
+            queue.clear();
+            writing = false;
+            if (current != null) {
+                failed = Arrays.copyOf(failed, failed.length + 1);
+                failed[failed.length - 1] = current;
+                current = null;
+            }
+        }
+        for (Write write : failed) {
+            finish(write, false);
+        }
+    }
+
+    private static class Write {
+        PooledPackage data;
+        ByteBuffer buffer;
+        WriteCallback callback;
+        int offset;
+        //chunk size, fixed for the package
+        int chunk;
+
+        Write reset(PooledPackage data, WriteCallback callback) {
+            this.data = data;
+            this.buffer = data != null ? data.buffer() : null;
+            this.callback = callback;
+            offset = 0;
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.bw.yml;
+
+import android.os.Handler;
+
+/**
+ * Timeouts posted to a Handler, they run on its Looper thread like the callbacks of the
+ * versions before the {@link TimeoutScheduler}
+ */
+public class HandlerTimeoutScheduler implements TimeoutScheduler {
+
+    private final Handler handler;
+
+    public HandlerTimeoutScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public Cancellable schedule(final Runnable task, long delay) {
+        handler.postDelayed(task, delay);
+        return new Cancellable() {
+            @Override
+            public void cancel() {
+                //Only this task, the handler may be shared with other work
+                handler.removeCallbacks(task);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.bw.yml;
+
+import android.util.Log;
+
+/**
+ * Lines of {@link Lg} to logcat, picked up by Lg on its own when this module is on the classpath
+ */
+public class LogcatPrinter implements Lg.Printer {
+
+    @Override
+    public void print(int priority, String tag, String msg, Throwable throwable) {
+        if (priority >= Lg.ASSERT) {
+            Log.wtf(tag, msg, throwable);
+        } else if (throwable != null) {
+            Log.println(priority, tag, msg + '\n' + Log.getStackTraceString(throwable));
+        } else {
+            Log.println(priority, tag, msg);
+        }
+    }
+
+}
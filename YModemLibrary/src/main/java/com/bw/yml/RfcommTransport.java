@@ -0,0 +1,27 @@
+package com.bw.yml;
+
+import android.bluetooth.BluetoothSocket;
+import android.os.Build;
+
+import java.io.IOException;
+
+/**
+ * RFCOMM socket of a connected Bluetooth device, like ConnectThread of the demo
+ */
+public class RfcommTransport extends StreamTransport {
+
+    //the RFCOMM frame size Android usually negotiates, before API 23 it can't be asked for
+    private static final int RFCOMM_MTU = 990;
+
+    public RfcommTransport(BluetoothSocket socket) throws IOException {
+        super(socket.getInputStream(), socket.getOutputStream(), socket, mtuOf(socket));
+    }
+
+    private static int mtuOf(BluetoothSocket socket) {
+        if (Build.VERSION.SDK_INT >= 23 && socket.getMaxTransmitPacketSize() > 0) {
+            return socket.getMaxTransmitPacketSize();
+        }
+        return RFCOMM_MTU;
+    }
+
+}
@@ -23,6 +23,9 @@ import android.os.HandlerThread;
 import android.os.Looper;
 import androidx.core.content.ContextCompat;
 
+import com.bw.yml.AssetsOpener;
+import com.bw.yml.GattTransport;
+import com.bw.yml.TransferProgress;
 import com.bw.yml.YModem;
 import com.bw.yml.YModemListener;
 
@@ -32,8 +35,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * BLE OTA升级管理器
@@ -149,7 +150,7 @@ public class BleOtaManager {
     
     // OTA升级相关
     private static final long SCAN_PERIOD = 10000; // 10秒扫描时间
-    private static final int MAX_PACKET_SIZE = 20; // BLE MTU限制
+    private static final int REQUEST_MTU = 247; // 请求的MTU，分包大小为MTU-3
     
     // 错误编号定义
     public static final class ErrorCode {
@@ -227,9 +228,9 @@ public class BleOtaManager {
     // YModem相关
     private YModem yModem;
     
-    // BLE写入队列管理
-    private ConcurrentLinkedQueue<byte[]> writeQueue = new ConcurrentLinkedQueue<>();
-    private AtomicBoolean isWriting = new AtomicBoolean(false);
+    // BLE传输，分包、写入队列和写入完成都由GattTransport处理
+    private GattTransport gattTransport;
+    private int negotiatedMtu = 23;
     
     /**
      * OTA升级回调接口
@@ -238,7 +239,7 @@ public class BleOtaManager {
         /**
          * 进度更新
          * @param currentSent 已发送字节数
-         * @param total 总字节数
+         * @param total 总字节数，未知时为-1
          */
         void onProgress(int currentSent, int total);
         
@@ -360,6 +361,10 @@ public class BleOtaManager {
             yModem.stop();
             yModem = null;
         }
+        if (gattTransport != null) {
+            gattTransport.close();
+            gattTransport = null;
+        }
         
         // 断开BLE连接
         disconnectDevice();
@@ -413,8 +418,7 @@ public class BleOtaManager {
         targetDevice = null;
         writeCharacteristic = null;
         notifyCharacteristic = null;
-        writeQueue.clear();
-        isWriting.set(false);
+        negotiatedMtu = 23;
     }
     
     /**
@@ -824,10 +828,10 @@ public class BleOtaManager {
                 android.util.Log.w(TAG, "BLE收到消息,长度" + data.length + "->" + hexData);
                 updateStatus("收到消息,长度" + data.length + "->" + hexData);
                 
-                // 传递给YModem处理
-                if (yModem != null) {
+                // 经由GattTransport传递给YModem处理
+                if (yModem != null && gattTransport != null) {
                     android.util.Log.d(TAG, "BLE数据传递给YModem处理：" + hexData);
-                    yModem.onReceiveData(data);
+                    gattTransport.onCharacteristicChanged(characteristic);
                 } else {
                     android.util.Log.w(TAG, "YModem为null，数据暂时忽略：" + hexData);
                 }
@@ -858,9 +862,25 @@ public class BleOtaManager {
                 updateStatus("数据发送失败，状态码：" + status + "，长度：" + dataLength);
             }
             
-            // 重置写入标志并继续处理队列
-            isWriting.set(false);
-            processWriteQueue();
+            // 写入完成，GattTransport继续写下一个分包
+            if (gattTransport != null) {
+                gattTransport.onCharacteristicWrite(characteristic, status);
+            }
+        }
+        
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            super.onMtuChanged(gatt, mtu, status);
+            
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                negotiatedMtu = mtu;
+                updateStatus("MTU协商成功：" + mtu);
+                if (gattTransport != null) {
+                    gattTransport.setMtu(mtu);
+                }
+            } else {
+                updateStatus("MTU协商失败，状态码：" + status + "，使用默认MTU");
+            }
         }
         
         @Override
@@ -869,6 +889,14 @@ public class BleOtaManager {
             
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 updateStatus("BLE通知描述符写入成功，设备已完全就绪");
+                // 请求更大的MTU，每次写入可以带MTU-3字节
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    try {
+                        gatt.requestMtu(REQUEST_MTU);
+                    } catch (SecurityException e) {
+                        android.util.Log.w(TAG, "请求MTU失败：权限不足 - " + e.getMessage());
+                    }
+                }
             } else {
                 updateStatus("BLE通知描述符写入失败，状态码：" + status);
             }
@@ -903,10 +931,6 @@ public class BleOtaManager {
         writeCharacteristic = null;
         notifyCharacteristic = null;
         
-        // 清空写入队列
-        writeQueue.clear();
-        isWriting.set(false);
-        
         android.util.Log.d(TAG, "BLE设备连接断开完成，所有相关资源已清理");
     }
     
@@ -985,6 +1009,10 @@ public class BleOtaManager {
             yModem.stop();
             yModem = null;
         }
+        if (gattTransport != null) {
+            gattTransport.close();
+            gattTransport = null;
+        }
         if (firmwareFileName == null) {
             failWithReason(ErrorCode.FIRMWARE_COPY_FAILED, "OTA文件准备失败，无法开始传输");
             return;
@@ -998,40 +1026,47 @@ public class BleOtaManager {
         updateStatus("准备传输文件：" + fileName);
         
         try {
+            // 数据包写完最后一个分包后YModem才开始计时
+            gattTransport = new GattTransport(bluetoothGatt, writeCharacteristic, notifyCharacteristic);
+            gattTransport.setMtu(negotiatedMtu);
+            android.util.Log.d(TAG, "BLE分包大小：" + gattTransport.getMtu() + "字节");
+            
             yModem = new YModem.Builder()
-                    .with(context)
+                    .with(new AssetsOpener(context))
                     .filePath(firmwareFileName)
                     .fileName(fileName)
                     .checkMd5("")
                     .sendSize(128)
+                    .transport(gattTransport)
                     .callback(new YModemListener() {
                         @Override
                         public void onDataReady(byte[] data) {
-                            final int dataLength = data.length;
-                            
-                            android.util.Log.d(TAG, "YModem要求发送数据：" + dataLength + "字节");
-                            updateStatus("YModem要求发送数据：" + dataLength + "字节");
-                            
-                            // 通过BLE发送数据
-                            sendDataViaBle(data);
+                            // 数据包经由GattTransport发送，不会回调这里
+                        }
+                        
+                        @Override
+                        public void onProgress(long currentSent, long total) {
+                            // 每个ACK都会回调，进度改由onTransferProgress按时间合并后更新UI
                         }
                         
                         @Override
-                        public void onProgress(int currentSent, int total) {
-                            // 修复进度计算：确保不超过100%
-                            // YModem协议会发送额外的包头、校验等数据，导致currentSent可能超过total
-                            final int adjustedCurrentSent = Math.min(currentSent, total);
-                            final int finalTotal = total;
+                        public void onTransferProgress(TransferProgress progress) {
+                            // 最多每250ms一次，只计文件数据，不含包头和校验
+                            final int currentSent = (int) progress.getBytes();
+                            // 压缩或差分传输时总大小未知(-1)，交给界面显示不确定进度
+                            final int total = progress.getTotal() > 0 ? (int) progress.getTotal() : -1;
                             
-                            android.util.Log.d(TAG, "YModem传输进度：" + adjustedCurrentSent + "/" + finalTotal + 
-                                " (原始：" + currentSent + "/" + total + ")");
+                            android.util.Log.d(TAG, "YModem传输进度：" + currentSent + "/" + total
+                                    + "，速度：" + progress.getInstantRate() + " B/s"
+                                    + "，平均：" + progress.getAverageRate() + " B/s"
+                                    + "，剩余：" + progress.getEta() + " ms");
                             
                             // 回调进度更新
                             if (otaCallback != null) {
                                 mainHandler.post(new Runnable() {
                                     @Override
                                     public void run() {
-                                        otaCallback.onProgress(adjustedCurrentSent, finalTotal);
+                                        otaCallback.onProgress(currentSent, total);
                                     }
                                 });
                             }
@@ -1083,107 +1118,6 @@ public class BleOtaManager {
         }
     }
     
-    /**
-     * 通过BLE发送数据（分包发送以适应BLE MTU限制）
-     */
-    private void sendDataViaBle(byte[] data) {
-        if (bluetoothGatt == null || writeCharacteristic == null) {
-            android.util.Log.e(TAG, "BLE连接未建立，无法发送数据");
-            updateStatus("BLE连接未建立，无法发送数据");
-            return;
-        }
-        
-        // 添加调试日志
-        android.util.Log.d(TAG, "准备发送BLE数据：" + data.length + "字节");
-        
-        if (data.length <= MAX_PACKET_SIZE) {
-            // 数据小于等于最大包大小，直接发送
-            writeQueue.offer(data);
-            processWriteQueue();
-        } else {
-            // 数据太大，需要分包发送
-            android.util.Log.d(TAG, "数据需要分包，原始大小：" + data.length + "字节，分包大小：" + MAX_PACKET_SIZE + "字节");
-            
-            for (int i = 0; i < data.length; i += MAX_PACKET_SIZE) {
-                int end = Math.min(i + MAX_PACKET_SIZE, data.length);
-                byte[] packet = new byte[end - i];
-                System.arraycopy(data, i, packet, 0, end - i);
-                
-                android.util.Log.d(TAG, "分包 " + (i/MAX_PACKET_SIZE + 1) + "：" + packet.length + "字节");
-                
-                writeQueue.offer(packet);
-            }
-            processWriteQueue();
-        }
-    }
-    
-    /**
-     * 处理BLE写入队列
-     */
-    @SuppressLint("MissingPermission")
-    private void processWriteQueue() {
-        if (isWriting.get() || writeQueue.isEmpty()) {
-            return;
-        }
-        
-        if (bluetoothGatt == null || writeCharacteristic == null) {
-            android.util.Log.e(TAG, "BLE连接丢失，清空写入队列");
-            writeQueue.clear();
-            isWriting.set(false);
-            return;
-        }
-        
-        // 检查权限
-        String permissionError = checkBluetoothPermissionsDetailed();
-        if (permissionError != null) {
-            android.util.Log.e(TAG, "写入数据时权限检查失败：" + permissionError);
-            writeQueue.clear();
-            isWriting.set(false);
-            failWithReason(ErrorCode.PERMISSION_RUNTIME_REVOKED, "数据传输失败：" + permissionError);
-            return;
-        }
-        
-        if (isWriting.compareAndSet(false, true)) {
-            byte[] data = writeQueue.poll();
-            if (data != null) {
-                android.util.Log.d(TAG, "从队列发送BLE数据：" + data.length + "字节");
-                
-                // 分包发送的数据需要小间隔确保接收方能够处理
-                if (data.length <= 20) {
-                    try {
-                        // 小包直接发送
-                        writeCharacteristic.setValue(data);
-                        boolean success = bluetoothGatt.writeCharacteristic(writeCharacteristic);
-                        
-                        if (!success) {
-                            android.util.Log.e(TAG, "BLE写入失败：" + data.length + "字节");
-                            updateStatus("写入失败：" + data.length + "字节");
-                            isWriting.set(false);
-                            // 可以选择重试或继续处理队列
-                            processWriteQueue();
-                        }
-                    } catch (SecurityException e) {
-                        android.util.Log.e(TAG, "BLE写入权限错误：" + e.getMessage());
-                        isWriting.set(false);
-                        failWithReason(ErrorCode.PERMISSION_RUNTIME_REVOKED, "数据写入失败：权限不足 - " + e.getMessage());
-                    } catch (Exception e) {
-                        android.util.Log.e(TAG, "BLE写入异常：" + e.getMessage());
-                        isWriting.set(false);
-                        failWithReason(ErrorCode.BLE_WRITE_FAILED, "数据写入失败：" + e.getMessage());
-                    }
-                } else {
-                    // 大包不应该出现在这里，记录错误
-                    android.util.Log.e(TAG, "队列中出现大包数据，跳过：" + data.length + "字节");
-                    isWriting.set(false);
-                    processWriteQueue();
-                }
-                // 成功的情况下，在onCharacteristicWrite回调中会重置isWriting标志
-            } else {
-                isWriting.set(false);
-            }
-        }
-    }
-    
     /**
      * 将16进制字符串转换为字节数组
      */
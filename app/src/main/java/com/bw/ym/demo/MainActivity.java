@@ -297,6 +297,13 @@ public class MainActivity extends AppCompatActivity {
      */
     private void updateProgress(int currentSent, int total) {
         if (progressBar != null && tvProgressText != null) {
+            if (total <= 0) {
+                // 总大小未知，只显示已发送字节数
+                progressBar.setIndeterminate(true);
+                tvProgressText.setText(currentSent + " 字节");
+                return;
+            }
+            progressBar.setIndeterminate(false);
             int progressPercent = (int) ((float) currentSent / total * 100);
             progressBar.setProgress(progressPercent);
             tvProgressText.setText(progressPercent + "% (" + currentSent + "/" + total + " 字节)");
@@ -308,6 +315,7 @@ public class MainActivity extends AppCompatActivity {
      */
     private void resetProgress() {
         if (progressBar != null && tvProgressText != null) {
+            progressBar.setIndeterminate(false);
             progressBar.setProgress(0);
             tvProgressText.setText("0%");
         }